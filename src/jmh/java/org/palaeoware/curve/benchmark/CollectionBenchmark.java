@@ -0,0 +1,101 @@
+package org.palaeoware.curve.benchmark;
+
+import static org.palaeoware.curve.benchmark.PluginAccess.*;
+
+import java.util.concurrent.TimeUnit;
+import ij.gui.Overlay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class: CollectionBenchmark
+ * Updates of an image holding many curves of ten segments each, as on a composite plate. Editing
+ * the active curve should cost about the same whatever the number of curves, as only that curve is
+ * analysed again; the rest of the cost is publishing, checking and drawing every curve. Analysing
+ * every curve, as after the options change, is done in parallel on the collection's fork-join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CollectionBenchmark {
+    private static final int SEGMENTS = 10;
+
+    @Param({"1", "10", "100", "500"})
+    public int curves;
+
+    @Param({"256"})
+    public int probeNumber;
+
+    private Object collection;
+    private Object movingPoint;
+    private double pointX;
+    private double pointY;
+    private boolean moved = false;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object options = (Object) NEW_OPTIONS.invokeExact();
+        SET_PROBE_NUMBER.invokeExact(options, probeNumber);
+        collection = (Object) NEW_COLLECTION.invokeExact(options);
+
+        Object active = null;
+        for (int i = 0; i < curves; i++) {
+            double[] coordinates = createCurveCoordinates(SEGMENTS, i + 1L);
+            // Stack the curves down the plate
+            for (int j = 1; j < coordinates.length; j += 2) {
+                coordinates[j] += i * 100;
+            }
+            Object list = createList(options, coordinates);
+            active = (Object) COLLECTION_ADD.invokeExact(collection, list);
+
+            if (i == curves - 1) {
+                pointX = coordinates[2];
+                pointY = coordinates[3];
+                movingPoint = (Object) INSIDE_CONTROL_POINT.invokeExact(list, pointX, pointY);
+            }
+        }
+        COLLECTION_SET_ACTIVE.invokeExact(collection, active);
+
+        // Analyse and draw everything once, as the first update after the curves are added would
+        Object request = (Object) COLLECTION_PUBLISH.invokeExact(collection);
+        Object frames = (Object) COLLECTION_ANALYSE.invokeExact(request);
+        Overlay overlay = (Overlay) COLLECTION_DRAW.invokeExact(collection, request, frames);
+    }
+
+    /**
+     * A whole update after a control point of the active curve has moved
+     */
+    @Benchmark
+    public Overlay editActive() throws Throwable {
+        moved = !moved;
+        MOVE_POINT.invokeExact(movingPoint, pointX + (moved ? 3.0 : 0.0), pointY);
+        return update();
+    }
+
+    /**
+     * A whole update with every curve analysed again
+     */
+    @Benchmark
+    public Overlay analyseAll() throws Throwable {
+        COLLECTION_INVALIDATE.invokeExact(collection);
+        return update();
+    }
+
+    private Overlay update() throws Throwable {
+        Object request = (Object) COLLECTION_PUBLISH.invokeExact(collection);
+        Object frames = (Object) COLLECTION_ANALYSE.invokeExact(request);
+        return (Overlay) COLLECTION_DRAW.invokeExact(collection, request, frames);
+    }
+}
@@ -0,0 +1,27 @@
+package org.palaeoware.curve.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Class: CurveBenchmarks
+ * Main class of target/benchmarks.jar. Takes the usual JMH command line options, and always adds
+ * the GC profiler so that the allocation rate (gc.alloc.rate.norm) is reported for every benchmark.
+ *
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar                                   # everything
+ * java -jar target/benchmarks.jar HitTest -p segments=500           # one class and size
+ * java -jar target/benchmarks.jar -rf json -rff before.json         # save results to compare later
+ */
+public class CurveBenchmarks {
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,71 @@
+package org.palaeoware.curve.benchmark;
+
+import static org.palaeoware.curve.benchmark.PluginAccess.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class: HitTestBenchmark
+ * Finding the control point under the mouse with BezierSegmentList.insideControlPoint(). Half of
+ * the test points are on a control point and half are somewhere near the curve.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HitTestBenchmark {
+    private static final int TESTS = 1024;
+
+    @Param({"1", "10", "100", "500"})
+    public int segments;
+
+    private Object list;
+    private double[] testX = new double[TESTS];
+    private double[] testY = new double[TESTS];
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object options = (Object) NEW_OPTIONS.invokeExact();
+        double[] coordinates = createCurveCoordinates(segments, 1L);
+        list = createList(options, coordinates);
+
+        Random random = new Random(2L);
+        for (int i = 0; i < TESTS; i++) {
+            int point = random.nextInt(coordinates.length / 2) * 2;
+            if ((i & 1) == 0) {
+                testX[i] = coordinates[point] + random.nextDouble() - 0.5;
+                testY[i] = coordinates[point + 1] + random.nextDouble() - 0.5;
+            } else {
+                testX[i] = coordinates[point] + ((random.nextDouble() - 0.5) * 100);
+                testY[i] = coordinates[point + 1] + ((random.nextDouble() - 0.5) * 100);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TESTS)
+    public int insideControlPoint() throws Throwable {
+        int hits = 0;
+        for (int i = 0; i < TESTS; i++) {
+            if ((Object) INSIDE_CONTROL_POINT.invokeExact(list, testX[i], testY[i]) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,173 @@
+package org.palaeoware.curve.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+/**
+ * Class: PluginAccess
+ * The plugin classes are in the default package, which JMH does not allow benchmarks to be in and
+ * which code in a named package can not refer to. They are looked up here once by name as method
+ * handles, with the plugin types replaced by Object. The handles are static final, so the JIT
+ * compiler inlines them the same as a direct call and the measurements are not affected.
+ */
+final class PluginAccess {
+    static final MethodHandle NEW_OPTIONS = constructor("OptionsStore");
+    static final MethodHandle SET_PROBE_NUMBER = method("OptionsStore", "setProbeNumber", int.class);
+
+    static final MethodHandle NEW_LIST = constructor("BezierSegmentList", type("OptionsStore"));
+    static final MethodHandle ADD_SEGMENTS = method("BezierSegmentList", "addSegments", double[].class);
+    static final MethodHandle GET_SEGMENT = method("BezierSegmentList", "getSegment", int.class);
+    static final MethodHandle LIST_CURVE_COORDINATES = method("BezierSegmentList", "getCurveCoordinates");
+    static final MethodHandle LIST_CURVE_KAPPAS = method("BezierSegmentList", "getCurveKappas");
+    static final MethodHandle SAMPLE_CURVE = method("BezierSegmentList", "sampleCurve", type("SampledCurve"));
+    static final MethodHandle INSIDE_CONTROL_POINT = method("BezierSegmentList", "insideControlPoint", double.class, double.class);
+    static final MethodHandle PUBLISH = method("BezierSegmentList", "publish");
+
+    static final MethodHandle CURVE_KAPPA = method("BezierSegment", "getCurveKappa", double.class);
+    static final MethodHandle SEGMENT_CURVE_COORDINATES = method("BezierSegment", "getCurveCoordinates");
+    static final MethodHandle SEGMENT_CURVE_KAPPAS = method("BezierSegment", "getCurveKappas");
+
+    static final MethodHandle MOVE_POINT = method("BezierControlPoint", "movePoint", double.class, double.class);
+
+    static final MethodHandle NEW_TOOL = constructor("Palaeo_Curve_Tool");
+    static final MethodHandle GET_TOOL_OPTIONS = getter("Palaeo_Curve_Tool", "optionsStore");
+    static final MethodHandle UPDATE_OVERLAY = method("CurveOverlay", "update", type("CurveFrame"));
+
+    static final MethodHandle NEW_ENTRY = constructor("CurveEntry", type("OptionsStore"), type("BezierSegmentList"));
+    static final MethodHandle GET_ENTRY_OVERLAY = method("CurveEntry", "getCurveOverlay");
+    static final MethodHandle ANALYSE = method("CurveEntry", "analyse", type("CurveSnapshot"), int.class);
+
+    static final MethodHandle NEW_COLLECTION = constructor("CurveCollection", type("OptionsStore"));
+    static final MethodHandle COLLECTION_ADD = method("CurveCollection", "add", type("BezierSegmentList"));
+    static final MethodHandle COLLECTION_SET_ACTIVE = method("CurveCollection", "setActive", type("CurveEntry"));
+    static final MethodHandle COLLECTION_INVALIDATE = method("CurveCollection", "invalidate");
+    static final MethodHandle COLLECTION_PUBLISH = method("CurveCollection", "publish");
+    static final MethodHandle COLLECTION_ANALYSE = method("CurveCollection", "analyse", type("CurveCollection$Request"));
+    static final MethodHandle COLLECTION_DRAW = method("CurveCollection", "draw", type("CurveCollection$Request"), type("CurveFrame[]"));
+
+    private PluginAccess() {
+    }
+
+    /**
+     * Returns the packed control point coordinates of a smooth wavy curve, eight per segment. The
+     * same seed always gives the same curve, so runs can be compared.
+     * @param segments
+     * @param seed
+     * @return double[]
+     */
+    static double[] createCurveCoordinates(int segments, long seed) {
+        Random random = new Random(seed);
+        double[] coordinates = new double[segments * 8];
+        double x = 20, y = 500;
+        double handleX = 10, handleY = -30;
+
+        for (int j = 0; j < segments; j++) {
+            int i = j * 8;
+            double endX = x + 30 + (random.nextDouble() * 20);
+            double endY = y + ((random.nextDouble() - 0.5) * 80);
+            double nextHandleX = 5 + (random.nextDouble() * 10);
+            double nextHandleY = (random.nextDouble() - 0.5) * 60;
+
+            coordinates[i] = x;
+            coordinates[i + 1] = y;
+            // Mirror the handle of the previous segment so the curve is smooth at the joins
+            coordinates[i + 2] = x + handleX;
+            coordinates[i + 3] = y + handleY;
+            coordinates[i + 4] = endX - nextHandleX;
+            coordinates[i + 5] = endY - nextHandleY;
+            coordinates[i + 6] = endX;
+            coordinates[i + 7] = endY;
+
+            x = endX;
+            y = endY;
+            handleX = nextHandleX;
+            handleY = nextHandleY;
+        }
+        return coordinates;
+    }
+
+    /**
+     * Creates a BezierSegmentList holding a curve from createCurveCoordinates()
+     * @param options OptionsStore
+     * @param coordinates
+     * @return BezierSegmentList
+     * @throws Throwable
+     */
+    static Object createList(Object options, double[] coordinates) throws Throwable {
+        Object list = (Object) NEW_LIST.invokeExact(options);
+        ADD_SEGMENTS.invokeExact(list, coordinates);
+        return list;
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            if (name.endsWith("[]")) {
+                return Array.newInstance(type(name.substring(0, name.length() - 2)), 0).getClass();
+            }
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The plugin class " + name + " was not found", e);
+        }
+    }
+
+    private static MethodHandle constructor(String className, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return erase(MethodHandles.lookup().unreflectConstructor(constructor));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The plugin class " + className + " has changed", e);
+        }
+    }
+
+    private static MethodHandle method(String className, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return erase(MethodHandles.lookup().unreflect(method));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The plugin method " + className + "." + name + " has changed", e);
+        }
+    }
+
+    private static MethodHandle getter(String className, String name) {
+        try {
+            Field field = type(className).getDeclaredField(name);
+            field.setAccessible(true);
+            return erase(MethodHandles.lookup().unreflectGetter(field));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The plugin field " + className + "." + name + " has changed", e);
+        }
+    }
+
+    /**
+     * Replaces the plugin classes, and arrays of them, in a method handle's type with Object, so it can be called with invokeExact
+     * @param handle
+     * @return MethodHandle
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isPluginType(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (isPluginType(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    private static boolean isPluginType(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return !type.isPrimitive() && type.getName().indexOf('.') < 0;
+    }
+}
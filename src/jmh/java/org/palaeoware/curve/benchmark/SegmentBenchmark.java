@@ -0,0 +1,69 @@
+package org.palaeoware.curve.benchmark;
+
+import static org.palaeoware.curve.benchmark.PluginAccess.*;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class: SegmentBenchmark
+ * Evaluation of a single BezierSegment at every probe point
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SegmentBenchmark {
+    @Param({"16", "256", "2048", "8192"})
+    public int probeNumber;
+
+    private Object segment;
+    private double[] tValues;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object options = (Object) NEW_OPTIONS.invokeExact();
+        SET_PROBE_NUMBER.invokeExact(options, probeNumber);
+        Object list = createList(options, createCurveCoordinates(1, 1L));
+        segment = (Object) GET_SEGMENT.invokeExact(list, 0);
+
+        tValues = new double[probeNumber];
+        for (int i = 0; i < probeNumber; i++) {
+            tValues[i] = (i + 0.5) / probeNumber;
+        }
+    }
+
+    /**
+     * getCurveKappa(t) called once for each probe point
+     */
+    @Benchmark
+    public double curveKappa() throws Throwable {
+        double sum = 0;
+        for (double t : tValues) {
+            sum += (double) CURVE_KAPPA.invokeExact(segment, t);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double[] curveKappas() throws Throwable {
+        return (double[]) SEGMENT_CURVE_KAPPAS.invokeExact(segment);
+    }
+
+    @Benchmark
+    public double[][] curveCoordinates() throws Throwable {
+        return (double[][]) SEGMENT_CURVE_COORDINATES.invokeExact(segment);
+    }
+}
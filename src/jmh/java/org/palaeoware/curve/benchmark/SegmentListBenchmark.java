@@ -0,0 +1,84 @@
+package org.palaeoware.curve.benchmark;
+
+import static org.palaeoware.curve.benchmark.PluginAccess.*;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class: SegmentListBenchmark
+ * Sampling of a whole BezierSegmentList, both into the old nested arrays and into a SampledCurve
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class SegmentListBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int segments;
+
+    @Param({"16", "256", "2048", "8192"})
+    public int probeNumber;
+
+    private Object list;
+    private Object sampledCurve;
+    private Object movingPoint;
+    private double pointX;
+    private double pointY;
+    private boolean moved = false;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object options = (Object) NEW_OPTIONS.invokeExact();
+        SET_PROBE_NUMBER.invokeExact(options, probeNumber);
+        double[] coordinates = createCurveCoordinates(segments, 1L);
+        list = createList(options, coordinates);
+        sampledCurve = (Object) SAMPLE_CURVE.invokeExact(list, (Object) null);
+
+        // The first handle of the middle segment is moved back and forth, as when it is dragged
+        int i = (segments / 2) * 8;
+        pointX = coordinates[i + 2];
+        pointY = coordinates[i + 3];
+        movingPoint = (Object) INSIDE_CONTROL_POINT.invokeExact(list, pointX, pointY);
+    }
+
+    @Benchmark
+    public double[][][] curveCoordinates() throws Throwable {
+        return (double[][][]) LIST_CURVE_COORDINATES.invokeExact(list);
+    }
+
+    @Benchmark
+    public double[][] curveKappas() throws Throwable {
+        return (double[][]) LIST_CURVE_KAPPAS.invokeExact(list);
+    }
+
+    /**
+     * Every segment sampled into a new SampledCurve
+     */
+    @Benchmark
+    public Object sampleCurve() throws Throwable {
+        return (Object) SAMPLE_CURVE.invokeExact(list, (Object) null);
+    }
+
+    /**
+     * One control point moved and the SampledCurve brought up to date, which resamples only the segment it is on
+     */
+    @Benchmark
+    public Object sampleCurveAfterMove() throws Throwable {
+        moved = !moved;
+        MOVE_POINT.invokeExact(movingPoint, pointX + (moved ? 3.0 : 0.0), pointY);
+        return (Object) SAMPLE_CURVE.invokeExact(list, sampledCurve);
+    }
+}
@@ -0,0 +1,95 @@
+package org.palaeoware.curve.benchmark;
+
+import static org.palaeoware.curve.benchmark.PluginAccess.*;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class: UpdateBenchmark
+ * The work Palaeo_Curve_Tool.update() does for each mouse drag on a single curve: a control point
+ * is moved and a snapshot published as on the event thread, the frame is calculated from the
+ * snapshot as on the compute thread, and the overlay is built from it as on the event thread. The
+ * curve's own CurveEntry.analyse() and CurveOverlay are used, without an image or window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class UpdateBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int segments;
+
+    @Param({"16", "256", "2048", "8192"})
+    public int probeNumber;
+
+    private Object entry;
+    private Object list;
+    private Object overlay;
+    private Object movingPoint;
+    private double pointX;
+    private double pointY;
+    private boolean moved = false;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Object tool = (Object) NEW_TOOL.invokeExact();
+        Object options = (Object) GET_TOOL_OPTIONS.invokeExact(tool);
+        SET_PROBE_NUMBER.invokeExact(options, probeNumber);
+
+        double[] coordinates = createCurveCoordinates(segments, 1L);
+        list = createList(options, coordinates);
+        entry = (Object) NEW_ENTRY.invokeExact(options, list);
+        overlay = (Object) GET_ENTRY_OVERLAY.invokeExact(entry);
+
+        int i = (segments / 2) * 8;
+        pointX = coordinates[i + 2];
+        pointY = coordinates[i + 3];
+        movingPoint = (Object) INSIDE_CONTROL_POINT.invokeExact(list, pointX, pointY);
+
+        // Sample everything once, as the first update after a curve is drawn would
+        Object frame = (Object) ANALYSE.invokeExact(entry, (Object) PUBLISH.invokeExact(list), 0);
+        UPDATE_OVERLAY.invokeExact(overlay, frame);
+    }
+
+    /**
+     * The compute thread's part of an update
+     */
+    @Benchmark
+    public Object computeFrame() throws Throwable {
+        Object snapshot = movePoint();
+        return (Object) ANALYSE.invokeExact(entry, snapshot, 0);
+    }
+
+    /**
+     * A whole update: the frame is calculated and the overlay built from it
+     */
+    @Benchmark
+    public Object computeFrameAndOverlay() throws Throwable {
+        Object snapshot = movePoint();
+        Object frame = (Object) ANALYSE.invokeExact(entry, snapshot, 0);
+        UPDATE_OVERLAY.invokeExact(overlay, frame);
+        return frame;
+    }
+
+    /**
+     * Moves the control point and publishes a snapshot of the curve
+     */
+    private Object movePoint() throws Throwable {
+        moved = !moved;
+        MOVE_POINT.invokeExact(movingPoint, pointX + (moved ? 3.0 : 0.0), pointY);
+        return (Object) PUBLISH.invokeExact(list);
+    }
+}
@@ -1,5 +1,3 @@
-import ij.gui.Roi;
-
 /**
  * Class: BezierControlPoint
  * Holds a control point and references to points before and after
@@ -10,10 +8,10 @@ import ij.gui.Roi;
  */
 public class BezierControlPoint {
     OptionsStore optionStore;
-    public double x;
-    public double y;
     private BezierSegment bezier;
     private BezierPointType pointType; // identify which bezier control point it is.
+    ControlPointIndex index = null; // Hit test index the point is held in, if any
+    int indexSlot;
     
     /**
      * Constructor
@@ -30,14 +28,33 @@ public class BezierControlPoint {
         movePoint(x, y);
     }
     
+    /**
+     * Returns the X coordinate, held in the packed coordinates of the parent segment
+     * @return double
+     */
+    public double getX() {
+        return bezier.getPointX(pointType.ordinal());
+    }
+
+    /**
+     * Returns the Y coordinate, held in the packed coordinates of the parent segment
+     * @return double
+     */
+    public double getY() {
+        return bezier.getPointY(pointType.ordinal());
+    }
+    
     /**
      * Moves the control point
      * @param nx
      * @param ny
      */
     public void movePoint(double nx, double ny) {
-        this.x = nx;
-        this.y = ny;
+        bezier.setPointCoordinates(pointType.ordinal(), nx, ny);
+        bezier.invalidate();
+        if (index != null) {
+            index.update(this);
+        }
     }
     
     /**
@@ -74,9 +91,16 @@ public class BezierControlPoint {
      * @return boolean
      */
     public boolean contains(double testX, double testY) {
-        // We check twice the width of a control point
+        // We check twice the width of a control point. This is the same test as
+        // Roi.contains() on the square, without creating the Roi.
         int pointWidth = optionStore.getControlPointWidth();
-        Roi pointROI = new Roi(((int) x - (2 * pointWidth)), ((int) y - (2 * pointWidth)), (4 * pointWidth), (4 * pointWidth));
-        return (pointROI.contains((int) testX, (int) testY)); 
+        if (pointWidth <= 0) {
+            return false;
+        }
+        int left = (int) getX() - (2 * pointWidth);
+        int top = (int) getY() - (2 * pointWidth);
+        int px = (int) testX;
+        int py = (int) testY;
+        return (px >= left && px < left + (4 * pointWidth) && py >= top && py < top + (4 * pointWidth));
     }
 }
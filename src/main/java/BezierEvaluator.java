@@ -0,0 +1,71 @@
+/**
+ * Class: BezierEvaluator
+ * Evaluates the power basis polynomial of a segment at a run of t values, writing the coordinates,
+ * first and second derivatives, tangent, normal and kappa of each into a SampledCurve. This is the
+ * scalar version, which runs on every JDK. On JDK 17 and later the multi-release JAR also holds
+ * VectorBezierEvaluator, which does the same work several t values at a time with the Vector API
+ * when the jdk.incubator.vector module is available. BezierEvaluators picks which one is used.
+ */
+public class BezierEvaluator {
+    static final BezierEvaluator INSTANCE = BezierEvaluators.create();
+
+    /**
+     * Returns a short description of the evaluator, for the log
+     * @return String
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Evaluates tValues[from] to tValues[to - 1] of a segment with coefficients
+     * x(t) = xA*t^3 + xB*t^2 + xC*t + xD (and the same for y)
+     * @param xA
+     * @param xB
+     * @param xC
+     * @param xD
+     * @param yA
+     * @param yB
+     * @param yC
+     * @param yD
+     * @param tValues
+     * @param from
+     * @param to
+     * @param curve Curve to write the samples to
+     * @param offset Index in the curve to write the sample for tValues[from] to
+     */
+    void evaluate(double xA, double xB, double xC, double xD, double yA, double yB, double yC, double yD,
+        double[] tValues, int from, int to, SampledCurve curve, int offset)
+    {
+        // Derivative coefficients, shared by every probe point
+        double xA3 = 3*xA, xB2 = 2*xB, xA6 = 6*xA;
+        double yA3 = 3*yA, yB2 = 2*yB, yA6 = 6*yA;
+
+        for(int i = from; i < to; i++) {
+            double t = tValues[i];
+            int k = offset + i - from;
+
+            curve.t[k] = t;
+            curve.x[k] = ((xA*t + xB)*t + xC)*t + xD;
+            curve.y[k] = ((yA*t + yB)*t + yC)*t + yD;
+
+            double dx = (xA3*t + xB2)*t + xC;
+            double dy = (yA3*t + yB2)*t + yC;
+            double ddx = xA6*t + xB2;
+            double ddy = yA6*t + yB2;
+            curve.firstDerivativeX[k] = dx;
+            curve.firstDerivativeY[k] = dy;
+            curve.secondDerivativeX[k] = ddx;
+            curve.secondDerivativeY[k] = ddy;
+
+            // Tangent is the normalized first derivative, the normal is the tangent rotated by 90 degrees
+            double d = Math.sqrt(dx*dx + dy*dy);
+            curve.tangentX[k] = dx / d;
+            curve.tangentY[k] = dy / d;
+            curve.normalX[k] = -curve.tangentY[k];
+            curve.normalY[k] = curve.tangentX[k];
+
+            curve.kappa[k] = BezierSegment.getKappa(dx, dy, ddx, ddy);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Class: BezierEvaluators
+ * Picks the BezierEvaluator to use. This version, for Java 8 to 16, always gives the scalar one.
+ * The multi-release JAR holds a version of this class for JDK 17 and later that can give the
+ * Vector API one instead (see src/main/java17).
+ */
+class BezierEvaluators {
+    /**
+     * Returns the evaluator to use
+     * @return BezierEvaluator
+     */
+    static BezierEvaluator create() {
+        return new BezierEvaluator();
+    }
+}
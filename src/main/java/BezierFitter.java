@@ -0,0 +1,424 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import ij.gui.Roi;
+import ij.gui.ShapeRoi;
+import ij.plugin.filter.ThresholdToSelection;
+import ij.process.FloatPolygon;
+import ij.process.ImageProcessor;
+
+/**
+ * Class: BezierFitter
+ * Fits a chain of cubic bezier segments to a run of points, such as the outline of a selection or
+ * of the objects in a binary mask, so outlines do not have to be placed by hand. The fit is the one
+ * described by P. J. Schneider, "An Algorithm for Automatically Fitting Digitized Curves" (Graphics
+ * Gems, 1990): each run of points is given a least squares cubic with its end tangents fixed; while
+ * the furthest point is not within the tolerance the parameters of the points are improved a few
+ * times by Newton-Raphson, and if that is not enough the run is split at the furthest point, with
+ * the tangent there shared by both halves so the joins are smooth.
+ *
+ * The runs still to be fitted are kept on a stack rather than by recursion, and the point parameters
+ * in one array for the whole outline, so long outlines neither run out of stack nor allocate per run.
+ */
+public class BezierFitter {
+    // Newton-Raphson is only tried when the first fit is within this many times the tolerance
+    private static final double ITERATION_FACTOR = 4.0;
+    private static final int MAXIMUM_ITERATIONS = 4;
+    // Spacing the outline of a selection is interpolated to, in pixels
+    private static final double POINT_SPACING = 1.0;
+
+    private final double[] x;
+    private final double[] y;
+    private final int numberPoints;
+    private final double tolerance2;
+    private final double[] u;
+    private final double[] bezier = new double[8];
+    private double[] segments = new double[64];
+    private int numberCoordinates = 0;
+    private int splitPoint;
+
+    /**
+     * Constructor
+     * @param x
+     * @param y
+     * @param numberPoints
+     * @param tolerance Largest distance allowed between a point and the curve, in pixels
+     */
+    private BezierFitter(double[] x, double[] y, int numberPoints, double tolerance) {
+        this.x = x;
+        this.y = y;
+        this.numberPoints = numberPoints;
+        this.tolerance2 = tolerance * tolerance;
+        this.u = new double[numberPoints];
+    }
+
+    /**
+     * Fits segments to a run of points
+     * @param optionsStore
+     * @param px
+     * @param py
+     * @param n Number of points
+     * @param closed Whether the last point joins back to the first
+     * @param tolerance Largest distance allowed between a point and the curve, in pixels
+     * @return BezierSegmentList Empty if there are fewer than two distinct points
+     */
+    public static BezierSegmentList fit(OptionsStore optionsStore, double[] px, double[] py, int n, boolean closed, double tolerance) {
+        // Repeated points have no direction between them, so are dropped
+        double[] x = new double[n + 1];
+        double[] y = new double[n + 1];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (count == 0 || px[i] != x[count - 1] || py[i] != y[count - 1]) {
+                x[count] = px[i];
+                y[count] = py[i];
+                count++;
+            }
+        }
+        if (closed && count > 2 && (x[0] != x[count - 1] || y[0] != y[count - 1])) {
+            x[count] = x[0];
+            y[count] = y[0];
+            count++;
+        }
+
+        BezierSegmentList bezierList = new BezierSegmentList(optionsStore);
+        if (count < 2) {
+            return bezierList;
+        }
+
+        BezierFitter fitter = new BezierFitter(x, y, count, tolerance);
+        fitter.fitAll(closed && count > 3);
+        bezierList.addSegments(Arrays.copyOf(fitter.segments, fitter.numberCoordinates));
+        return bezierList;
+    }
+
+    /**
+     * Fits segments to the outline of a selection. Area selections give a closed curve, line
+     * selections an open one. The outline is interpolated to points a pixel apart first, so polygon
+     * and traced selections are fitted along their edges and not just through their corners.
+     * @param optionsStore
+     * @param roi
+     * @param tolerance
+     * @return BezierSegmentList
+     */
+    public static BezierSegmentList fitRoi(OptionsStore optionsStore, Roi roi, double tolerance) {
+        FloatPolygon polygon = roi.getInterpolatedPolygon(POINT_SPACING, false);
+        if (polygon == null) {
+            polygon = roi.getFloatPolygon();
+        }
+        double[] px = new double[polygon.npoints];
+        double[] py = new double[polygon.npoints];
+        for (int i = 0; i < polygon.npoints; i++) {
+            px[i] = polygon.xpoints[i];
+            py[i] = polygon.ypoints[i];
+        }
+        return fit(optionsStore, px, py, polygon.npoints, !roi.isLine(), tolerance);
+    }
+
+    /**
+     * Fits segments to several selections in parallel. A composite selection gives one curve for
+     * each of its parts.
+     * @param optionsStore
+     * @param rois
+     * @param tolerance
+     * @return BezierSegmentList[]
+     */
+    public static BezierSegmentList[] fitRois(OptionsStore optionsStore, Roi[] rois, double tolerance) {
+        Roi[] parts = splitRois(rois);
+        BezierSegmentList[] lists = new BezierSegmentList[parts.length];
+        IntStream.range(0, parts.length).parallel().forEach(i -> lists[i] = fitRoi(optionsStore, parts[i], tolerance));
+        return lists;
+    }
+
+    /**
+     * Fits segments to the outline of every object in a binary mask, including the outlines of
+     * holes, in parallel. Objects are pixels of 255.
+     * @param optionsStore
+     * @param mask
+     * @param tolerance
+     * @return BezierSegmentList[]
+     */
+    public static BezierSegmentList[] fitMask(OptionsStore optionsStore, ImageProcessor mask, double tolerance) {
+        mask.setThreshold(255, 255, ImageProcessor.NO_LUT_UPDATE);
+        Roi outline = new ThresholdToSelection().convert(mask);
+        mask.resetThreshold();
+        if (outline == null) {
+            return new BezierSegmentList[0];
+        }
+        return fitRois(optionsStore, new Roi[] {outline}, tolerance);
+    }
+
+    /**
+     * Replaces composite selections by their parts
+     * @param rois
+     * @return Roi[]
+     */
+    private static Roi[] splitRois(Roi[] rois) {
+        int count = 0;
+        Roi[] parts = new Roi[rois.length];
+        for (Roi roi : rois) {
+            Roi[] split = (roi instanceof ShapeRoi) ? ((ShapeRoi) roi).getRois() : new Roi[] {roi};
+            if (count + split.length > parts.length) {
+                parts = Arrays.copyOf(parts, Math.max(parts.length * 2, count + split.length));
+            }
+            System.arraycopy(split, 0, parts, count, split.length);
+            count += split.length;
+        }
+        return Arrays.copyOf(parts, count);
+    }
+
+    /**
+     * Fits the whole run of points, a piece at a time from a stack of the pieces still to fit.
+     * Pieces are taken off the stack from the start of the run to the end, so the segments come out in order.
+     * @param closed
+     */
+    private void fitAll(boolean closed) {
+        int last = numberPoints - 1;
+        double[] startTangent;
+        double[] endTangent;
+        if (closed) {
+            // The tangent at the join is shared by both ends, so the curve is smooth all the way round
+            startTangent = unit(x[1] - x[last - 1], y[1] - y[last - 1]);
+            endTangent = new double[] {-startTangent[0], -startTangent[1]};
+        } else {
+            startTangent = unit(x[1] - x[0], y[1] - y[0]);
+            endTangent = unit(x[last - 1] - x[last], y[last - 1] - y[last]);
+        }
+
+        // Each piece is first, last, start tangent x and y, end tangent x and y
+        double[] stack = new double[6 * 16];
+        stack[0] = 0;
+        stack[1] = last;
+        stack[2] = startTangent[0];
+        stack[3] = startTangent[1];
+        stack[4] = endTangent[0];
+        stack[5] = endTangent[1];
+        int depth = 1;
+
+        while (depth > 0) {
+            depth--;
+            int s = depth * 6;
+            int first = (int) stack[s];
+            int end = (int) stack[s + 1];
+            double t1x = stack[s + 2], t1y = stack[s + 3], t2x = stack[s + 4], t2y = stack[s + 5];
+
+            if (fitPiece(first, end, t1x, t1y, t2x, t2y)) {
+                continue;
+            }
+
+            // Split at the furthest point, the second half going on the stack first so the first half is fitted first
+            int split = splitPoint;
+            double[] centre = unit(x[split - 1] - x[split + 1], y[split - 1] - y[split + 1]);
+            if (centre[0] == 0 && centre[1] == 0) {
+                centre = unit(x[split - 1] - x[split], y[split - 1] - y[split]);
+            }
+            if ((depth + 2) * 6 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            s = depth * 6;
+            stack[s] = split;
+            stack[s + 1] = end;
+            stack[s + 2] = -centre[0];
+            stack[s + 3] = -centre[1];
+            stack[s + 4] = t2x;
+            stack[s + 5] = t2y;
+            stack[s + 6] = first;
+            stack[s + 7] = split;
+            stack[s + 8] = t1x;
+            stack[s + 9] = t1y;
+            stack[s + 10] = centre[0];
+            stack[s + 11] = centre[1];
+            depth += 2;
+        }
+    }
+
+    /**
+     * Tries to fit a single segment to the points first to last. If it fits within the tolerance the
+     * segment is added, otherwise splitPoint is set to the point furthest from it.
+     * @param first
+     * @param last
+     * @param t1x Unit tangent at the start, pointing along the curve
+     * @param t1y
+     * @param t2x Unit tangent at the end, pointing back along the curve
+     * @param t2y
+     * @return boolean True if a segment was added
+     */
+    private boolean fitPiece(int first, int last, double t1x, double t1y, double t2x, double t2y) {
+        // Two points can only be a straight line, with the handles a third of the way along
+        if (last - first == 1) {
+            double third = Math.hypot(x[last] - x[first], y[last] - y[first]) / 3.0;
+            setSegment(bezier, first, last, t1x * third, t1y * third, t2x * third, t2y * third);
+            addSegment(bezier);
+            return true;
+        }
+
+        chordLengthParameterize(first, last);
+        generateBezier(bezier, first, last, t1x, t1y, t2x, t2y);
+        double error = computeMaximumError(bezier, first, last);
+        if (error < tolerance2) {
+            addSegment(bezier);
+            return true;
+        }
+
+        if (error < tolerance2 * ITERATION_FACTOR * ITERATION_FACTOR) {
+            for (int i = 0; i < MAXIMUM_ITERATIONS; i++) {
+                reparameterize(bezier, first, last);
+                generateBezier(bezier, first, last, t1x, t1y, t2x, t2y);
+                error = computeMaximumError(bezier, first, last);
+                if (error < tolerance2) {
+                    addSegment(bezier);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives the points first to last parameters from 0 to 1 by their distance along the run
+     * @param first
+     * @param last
+     */
+    private void chordLengthParameterize(int first, int last) {
+        u[first] = 0.0;
+        for (int i = first + 1; i <= last; i++) {
+            u[i] = u[i - 1] + Math.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+        }
+        double length = u[last];
+        for (int i = first + 1; i <= last; i++) {
+            u[i] /= length;
+        }
+    }
+
+    /**
+     * Finds the handle lengths along the fixed end tangents that give the least squares fit to the
+     * points at their parameters
+     * @param bezier Set to the segment
+     * @param first
+     * @param last
+     * @param t1x
+     * @param t1y
+     * @param t2x
+     * @param t2y
+     */
+    private void generateBezier(double[] bezier, int first, int last, double t1x, double t1y, double t2x, double t2y) {
+        double c00 = 0, c01 = 0, c11 = 0, x0 = 0, x1 = 0;
+        double startX = x[first], startY = y[first], endX = x[last], endY = y[last];
+
+        for (int i = first; i <= last; i++) {
+            double t = u[i];
+            double mt = 1.0 - t;
+            double b0 = mt * mt * mt;
+            double b1 = 3.0 * t * mt * mt;
+            double b2 = 3.0 * t * t * mt;
+            double b3 = t * t * t;
+
+            double a0x = t1x * b1, a0y = t1y * b1;
+            double a1x = t2x * b2, a1y = t2y * b2;
+            c00 += (a0x * a0x) + (a0y * a0y);
+            c01 += (a0x * a1x) + (a0y * a1y);
+            c11 += (a1x * a1x) + (a1y * a1y);
+
+            double dx = x[i] - ((startX * (b0 + b1)) + (endX * (b2 + b3)));
+            double dy = y[i] - ((startY * (b0 + b1)) + (endY * (b2 + b3)));
+            x0 += (a0x * dx) + (a0y * dy);
+            x1 += (a1x * dx) + (a1y * dy);
+        }
+
+        double determinant = (c00 * c11) - (c01 * c01);
+        double alpha1 = (determinant == 0.0) ? 0.0 : ((x0 * c11) - (x1 * c01)) / determinant;
+        double alpha2 = (determinant == 0.0) ? 0.0 : ((c00 * x1) - (c01 * x0)) / determinant;
+
+        // A handle that is too short or points the wrong way is replaced by a third of the chord
+        double chord = Math.hypot(endX - startX, endY - startY);
+        double epsilon = 1.0e-6 * chord;
+        if (alpha1 < epsilon || alpha2 < epsilon) {
+            alpha1 = chord / 3.0;
+            alpha2 = alpha1;
+        }
+        setSegment(bezier, first, last, t1x * alpha1, t1y * alpha1, t2x * alpha2, t2y * alpha2);
+    }
+
+    /**
+     * Returns the largest squared distance from a point to the segment at its parameter, and sets
+     * splitPoint to that point
+     * @param bezier
+     * @param first
+     * @param last
+     * @return double
+     */
+    private double computeMaximumError(double[] bezier, int first, int last) {
+        double maximum = 0.0;
+        splitPoint = (first + last + 1) / 2;
+        for (int i = first + 1; i < last; i++) {
+            double t = u[i];
+            double mt = 1.0 - t;
+            double b0 = mt * mt * mt;
+            double b1 = 3.0 * t * mt * mt;
+            double b2 = 3.0 * t * t * mt;
+            double b3 = t * t * t;
+            double dx = (bezier[0] * b0) + (bezier[2] * b1) + (bezier[4] * b2) + (bezier[6] * b3) - x[i];
+            double dy = (bezier[1] * b0) + (bezier[3] * b1) + (bezier[5] * b2) + (bezier[7] * b3) - y[i];
+            double distance2 = (dx * dx) + (dy * dy);
+            if (distance2 >= maximum) {
+                maximum = distance2;
+                splitPoint = i;
+            }
+        }
+        return maximum;
+    }
+
+    /**
+     * Moves the parameter of each point towards the nearest place on the segment with a step of
+     * Newton-Raphson
+     * @param bezier
+     * @param first
+     * @param last
+     */
+    private void reparameterize(double[] bezier, int first, int last) {
+        for (int i = first; i <= last; i++) {
+            double t = u[i];
+            double mt = 1.0 - t;
+
+            double qx = (bezier[0] * mt * mt * mt) + (3 * bezier[2] * t * mt * mt) + (3 * bezier[4] * t * t * mt) + (bezier[6] * t * t * t);
+            double qy = (bezier[1] * mt * mt * mt) + (3 * bezier[3] * t * mt * mt) + (3 * bezier[5] * t * t * mt) + (bezier[7] * t * t * t);
+            double q1x = 3 * (((bezier[2] - bezier[0]) * mt * mt) + (2 * (bezier[4] - bezier[2]) * t * mt) + ((bezier[6] - bezier[4]) * t * t));
+            double q1y = 3 * (((bezier[3] - bezier[1]) * mt * mt) + (2 * (bezier[5] - bezier[3]) * t * mt) + ((bezier[7] - bezier[5]) * t * t));
+            double q2x = 6 * (((bezier[4] - (2 * bezier[2]) + bezier[0]) * mt) + ((bezier[6] - (2 * bezier[4]) + bezier[2]) * t));
+            double q2y = 6 * (((bezier[5] - (2 * bezier[3]) + bezier[1]) * mt) + ((bezier[7] - (2 * bezier[5]) + bezier[3]) * t));
+
+            double dx = qx - x[i];
+            double dy = qy - y[i];
+            double numerator = (dx * q1x) + (dy * q1y);
+            double denominator = (q1x * q1x) + (q1y * q1y) + (dx * q2x) + (dy * q2y);
+            if (denominator != 0.0) {
+                u[i] = t - (numerator / denominator);
+            }
+        }
+    }
+
+    /**
+     * Sets a segment from the end points and the handle offsets from them
+     */
+    private void setSegment(double[] bezier, int first, int last, double h1x, double h1y, double h2x, double h2y) {
+        bezier[0] = x[first];
+        bezier[1] = y[first];
+        bezier[2] = x[first] + h1x;
+        bezier[3] = y[first] + h1y;
+        bezier[4] = x[last] + h2x;
+        bezier[5] = y[last] + h2y;
+        bezier[6] = x[last];
+        bezier[7] = y[last];
+    }
+
+    private void addSegment(double[] bezier) {
+        if (numberCoordinates + 8 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        System.arraycopy(bezier, 0, segments, numberCoordinates, 8);
+        numberCoordinates += 8;
+    }
+
+    private static double[] unit(double dx, double dy) {
+        double length = Math.hypot(dx, dy);
+        return (length > 0) ? new double[] {dx / length, dy / length} : new double[] {0.0, 0.0};
+    }
+}
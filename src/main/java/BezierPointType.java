@@ -1,5 +1,6 @@
 /**
- * Simple enmum to hold the bezier control point types
+ * Simple enmum to hold the bezier control point types. The order matches point0-point3
+ * of a segment, and is used to find the packed coordinates of a point.
  */
 public enum BezierPointType {
     START_POINT,
@@ -1,4 +1,5 @@
 import java.awt.geom.*;
+import java.util.Arrays;
 
 /**
  * Class: BezierSegment
@@ -13,12 +14,56 @@ import java.awt.geom.*;
  */
 public class BezierSegment {
     private OptionsStore optionStore;
-    private BezierSegment next = null;
-    private BezierSegment previous = null;
     public BezierControlPoint point0;
     public BezierControlPoint point1;
     public BezierControlPoint point2;
     public BezierControlPoint point3;
+
+    // Control point coordinates x0, y0, x1, y1, x2, y2, x3, y3. These are held at index * 8 in the packed
+    // array of the SegmentStore the segment is in, or at the start of an array of its own when it is not in one.
+    private SegmentStore store = null;
+    private double[] coordinates = new double[SegmentStore.COORDINATES_PER_SEGMENT];
+    private int index = 0;
+    private int base = 0;
+
+    // Power basis coefficients of the segment, x(t) = xA*t^3 + xB*t^2 + xC*t + xD (and the same for y).
+    // These are recalculated only after one of the control points has moved.
+    private boolean coefficientsValid = false;
+    private double xA, xB, xC, xD, yA, yB, yC, yD;
+
+    // Incremented every time a control point of the segment moves, so cached samples can be checked
+    private int version = 0;
+
+    // Probe t values shared by all segments, rebuilt when the probe number changes
+    private static volatile double[] probeTValues = new double[0];
+
+    // Number of intervals used to bracket the maxima of kappa before they are refined
+    private static final int KAPPA_BRACKET_INTERVALS = 32;
+    // Location of the maximum absolute kappa, valid while maximumKappaVersion equals version
+    private int maximumKappaVersion = -1;
+    private double maximumKappaT;
+    private double maximumKappa;
+
+    // Cumulative arc length at evenly spaced t values, valid while arcLengthVersion equals version
+    private static final int ARC_LENGTH_INTERVALS = 32;
+    private int arcLengthVersion = -1;
+    private double[] arcLengthTable = new double[ARC_LENGTH_INTERVALS + 1];
+
+    // t values from adaptive subdivision, valid while adaptiveVersion equals version and the settings match
+    private int adaptiveVersion = -1;
+    private double adaptiveTolerance;
+    private int adaptiveMaximumDepth;
+    private double[] adaptiveTValues = new double[0];
+    private int adaptiveCount;
+    private double adaptiveErrorBound;
+
+    // 5 point Gauss-Legendre quadrature abscissae and weights on [-1, 1]
+    private static final double[] GAUSS_LEGENDRE_ABSCISSAE = {
+        0.0, -0.5384693101056831, 0.5384693101056831, -0.9061798459386640, 0.9061798459386640
+    };
+    private static final double[] GAUSS_LEGENDRE_WEIGHTS = {
+        0.5688888888888889, 0.4786286704993665, 0.4786286704993665, 0.2369268850561891, 0.2369268850561891
+    };
     
     /**
      * Constructor for BezierSegment
@@ -45,15 +90,10 @@ public class BezierSegment {
      * @return BezierSegment | null
      */
     public BezierSegment next() {
-        return next;
-    }
-
-    /**
-     * Sets the next segment
-     * @param newBezier
-     */
-    public void setNext(BezierSegment newBezier) {
-        next = newBezier;
+        if (store == null || index + 1 >= store.size()) {
+            return null;
+        }
+        return store.get(index + 1);
     }
     
     /**
@@ -61,43 +101,185 @@ public class BezierSegment {
      * @return BezierSegment | null
      */
     public BezierSegment previous() {
-        return previous;
+        if (store == null || index == 0) {
+            return null;
+        }
+        return store.get(index - 1);
     }
-    
+
+    /**
+     * Returns the position of the segment in its SegmentStore
+     * @return int
+     */
+    int getIndex() {
+        return index;
+    }
+
     /**
-     * Sets the previous segment
-     * @param bezierSegment
+     * Called by the SegmentStore when the segment is placed in it, or moved within it
+     * @param store
+     * @param coordinates Packed coordinate array of the store
+     * @param index
      */
-    public void setPrevious(BezierSegment bezierSegment) {
-        previous = bezierSegment;
+    void attach(SegmentStore store, double[] coordinates, int index) {
+        this.store = store;
+        this.coordinates = coordinates;
+        this.index = index;
+        this.base = index * SegmentStore.COORDINATES_PER_SEGMENT;
     }
 
     /**
-     * Inserts a new segment after this current segment.
-     * @param bezierSegment
+     * Called by the SegmentStore when the segment is removed from it. The coordinates are copied
+     * into an array of the segment's own.
+     */
+    void detach() {
+        double[] ownCoordinates = new double[SegmentStore.COORDINATES_PER_SEGMENT];
+        copyCoordinatesTo(ownCoordinates, 0);
+        store = null;
+        coordinates = ownCoordinates;
+        index = 0;
+        base = 0;
+    }
+
+    /**
+     * Copies the eight control point coordinates into an array
+     * @param target
+     * @param offset
+     */
+    void copyCoordinatesTo(double[] target, int offset) {
+        System.arraycopy(coordinates, base, target, offset, SegmentStore.COORDINATES_PER_SEGMENT);
+    }
+
+    /**
+     * Returns the X coordinate of a control point, 0-3 for point0-point3
+     * @param point
+     * @return double
+     */
+    double getPointX(int point) {
+        return coordinates[base + (2 * point)];
+    }
+
+    /**
+     * Returns the Y coordinate of a control point, 0-3 for point0-point3
+     * @param point
+     * @return double
      */
-    public void insertAsNext(BezierSegment bezierSegment) {
-        bezierSegment.setNext(next);
-        bezierSegment.setPrevious(this);
-        if (next != null) {
-            next.setPrevious(bezierSegment);
+    double getPointY(int point) {
+        return coordinates[base + (2 * point) + 1];
+    }
+
+    /**
+     * Sets the coordinates of a control point, 0-3 for point0-point3. Used by BezierControlPoint.movePoint().
+     * @param point
+     * @param x
+     * @param y
+     */
+    void setPointCoordinates(int point, double x, double y) {
+        coordinates[base + (2 * point)] = x;
+        coordinates[base + (2 * point) + 1] = y;
+        if (store != null) {
+            store.modified();
         }
-        next = bezierSegment;
     }
-    
+
     /**
-     * Inserts a new segment before this current segment.
-     * @param bezierSegment
+     * Returns a control point, 0-3 for point0-point3
+     * @param point
+     * @return BezierControlPoint
      */
-    public void insertAsPrevious(BezierSegment bezierSegment) {
-        bezierSegment.setNext(this);
-        bezierSegment.setPrevious(previous);
-        if (previous != null) {
-            previous.setNext(bezierSegment);
+    BezierControlPoint getControlPoint(int point) {
+        switch (point) {
+            case 0: return point0;
+            case 1: return point1;
+            case 2: return point2;
+            default: return point3;
         }
-        previous = bezierSegment;
     }
     
+    /**
+     * Moves a control point, 0-3 for point0-point3, as part of moving the whole segment. The version is not
+     * stepped, as nothing cached for the segment other than its coefficients depends on where it is, so
+     * samples held for it must be moved by the caller (see BezierSegmentList.setTranslatedSegments()).
+     * @param point
+     * @param x
+     * @param y
+     */
+    void translatePoint(int point, double x, double y) {
+        setPointCoordinates(point, x, y);
+        coefficientsValid = false;
+        BezierControlPoint controlPoint = getControlPoint(point);
+        if (controlPoint.index != null) {
+            controlPoint.index.update(controlPoint);
+        }
+    }
+
+    /**
+     * Marks the cached polynomial coefficients as out of date and steps the version. Called by
+     * the control points whenever they are moved.
+     */
+    void invalidate() {
+        coefficientsValid = false;
+        version++;
+    }
+
+    /**
+     * Returns the version of the segment, which changes every time one of its control points moves
+     * @return int
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Recalculates the power basis coefficients from the control points if any have moved. Called
+     * before a segment is handed to other threads, so that they only ever read the coefficients.
+     */
+    void updateCoefficients() {
+        if (coefficientsValid) {
+            return;
+        }
+
+        double x0 = coordinates[base], y0 = coordinates[base + 1];
+        double x1 = coordinates[base + 2], y1 = coordinates[base + 3];
+        double x2 = coordinates[base + 4], y2 = coordinates[base + 5];
+        double x3 = coordinates[base + 6], y3 = coordinates[base + 7];
+
+        xA = x3 + 3 * (x1 - x2) - x0;
+        xB = 3 * (x0 - (2 * x1) + x2);
+        xC = 3 * (x1 - x0);
+        xD = x0;
+
+        yA = y3 + 3 * (y1 - y2) - y0;
+        yB = 3 * (y0 - (2 * y1) + y2);
+        yC = 3 * (y1 - y0);
+        yD = y0;
+
+        coefficientsValid = true;
+    }
+
+    /**
+     * Returns the t values of the probe points for the given probe number. The array is shared
+     * between all segments and must not be modified.
+     * @param probeNumber
+     * @return double[]
+     */
+    static double[] getProbeTValues(int probeNumber) {
+        double[] tValues = probeTValues;
+        if (tValues.length != probeNumber) {
+            tValues = new double[probeNumber];
+
+            double t = 1.0/probeNumber;
+            for(int i = 0; i < probeNumber; i++) {
+                if(i > 0)
+                    t = ((1.0-(1.0/probeNumber))/probeNumber)*i;
+
+                tValues[i] = t;
+            }
+            probeTValues = tValues;
+        }
+        return tValues;
+    }
+
     /**
      * Moves a given Bezier point type to the X,Y coordinate
      * @param pointType
@@ -105,21 +287,23 @@ public class BezierSegment {
      * @param newY
      */
     public void movePoint(BezierPointType pointType, double newX, double newY) {
+        BezierSegment previous = previous();
+        BezierSegment next = next();
         if (pointType == BezierPointType.START_POINT) {
-            double newP1X = point1.x - point0.x + newX;
-            double newP1Y = point1.y - point0.y + newY;
+            double newP1X = point1.getX() - point0.getX() + newX;
+            double newP1Y = point1.getY() - point0.getY() + newY;
             point1.movePoint(newP1X, newP1Y);
         } else if (pointType == BezierPointType.CONTROL_1) {
             if (previous != null) {
-                previous.point2.movePoint((point0.x + point0.x - point1.x), (point0.y + point0.y - point1.y));
+                previous.point2.movePoint((point0.getX() + point0.getX() - point1.getX()), (point0.getY() + point0.getY() - point1.getY()));
             }
         } else if (pointType == BezierPointType.CONTROL_2) {
             if (next != null) {
-                next.point1.movePoint((point3.x + point3.x - point2.x), (point3.y + point3.y - point2.y));
+                next.point1.movePoint((point3.getX() + point3.getX() - point2.getX()), (point3.getY() + point3.getY() - point2.getY()));
             }
         } else if (pointType == BezierPointType.END_POINT) {
-            double newP2X = point2.x - point3.x + newX;
-            double newP2Y = point2.y - point3.y + newY;
+            double newP2X = point2.getX() - point3.getX() + newX;
+            double newP2Y = point2.getY() - point3.getY() + newY;
             point2.movePoint(newP2X, newP2Y);
             if (next != null) {
                 next.point0.setPoint(newX, newY);
@@ -133,7 +317,7 @@ public class BezierSegment {
      * @return double[][]
      */
     public double[][] getPointCoordinates() {
-        double[][] coordinates = {{point0.x, point0.y}, {point1.x, point1.y}, {point3.x, point3.y}, {point2.x, point2.y}};
+        double[][] coordinates = {{point0.getX(), point0.getY()}, {point1.getX(), point1.getY()}, {point3.getX(), point3.getY()}, {point2.getX(), point2.getY()}};
         return coordinates;
     }
 
@@ -157,8 +341,8 @@ public class BezierSegment {
      */
     public Path2D.Double getCurvePath() {
         Path2D.Double curvePath = new Path2D.Double();
-        curvePath.moveTo(point0.x, point0.y);
-        curvePath.curveTo(point1.x, point1.y, point2.x, point2.y, point3.x, point3.y);
+        curvePath.moveTo(point0.getX(), point0.getY());
+        curvePath.curveTo(point1.getX(), point1.getY(), point2.getX(), point2.getY(), point3.getX(), point3.getY());
         return curvePath;
     }
 
@@ -180,8 +364,10 @@ public class BezierSegment {
         // b = point1.x
         // c = point2.x
         // d = point2.x
+        // Expanded into powers of t this is evaluated with Horner's rule.
+        updateCoefficients();
 
-        return Math.pow(1.0-t, 3)*point0.x + 3*Math.pow(1.0-t, 2)*t*point1.x + 3*(1.0-t)*Math.pow(t,2)*point2.x + Math.pow(t,3)*point3.x;
+        return ((xA*t + xB)*t + xC)*t + xD;
     }
 
     /**
@@ -202,8 +388,10 @@ public class BezierSegment {
         // b = point1.y
         // c = point2.y
         // d = point2.y
-        
-        return Math.pow(1.0-t, 3)*point0.y + 3*Math.pow(1.0-t, 2)*t*point1.y + 3*(1.0-t)*Math.pow(t,2)*point2.y + Math.pow(t,3)*point3.y;
+        // Expanded into powers of t this is evaluated with Horner's rule.
+        updateCoefficients();
+
+        return ((yA*t + yB)*t + yC)*t + yD;
     }
 
     /**
@@ -230,10 +418,9 @@ public class BezierSegment {
         int probeNumber = optionStore.getProbeNumber();
         double[][] coordinates = new double[probeNumber][2];
 
-        double t = 1.0/probeNumber;
+        double[] tValues = getProbeTValues(probeNumber);
         for(int i = 0; i < probeNumber; i++) {
-            if(i > 0)
-                t = ((1.0-(1.0/probeNumber))/probeNumber)*i;
+            double t = tValues[i];
 
             // Add to the array
             coordinates[i] = getCurveCoordinates(t);
@@ -248,19 +435,7 @@ public class BezierSegment {
      */
     double[] getCurveTValues()
     {
-        int probeNumber = optionStore.getProbeNumber();
-        double[] tValues = new double[probeNumber];
-        
-        double t = 1.0/probeNumber;
-        for(int i = 0; i < probeNumber; i++) {
-            if(i > 0)
-                t = ((1.0-(1.0/probeNumber))/probeNumber)*i;
-
-            // Add to the array
-            tValues[i] = t;
-        }
-
-        return tValues;
+        return getProbeTValues(optionStore.getProbeNumber()).clone();
     }
 
     /**
@@ -269,9 +444,8 @@ public class BezierSegment {
      */
     public double getFirstDeriativeXCoordinate(double t)
     {
-        return  3 * Math.pow(t, 2) * (point3.x + 3 * (point1.x - point2.x) - point0.x) +
-        6 * t * (point0.x - 2 * point1.x + point2.x) +
-        3 *(point1.x - point0.x);
+        updateCoefficients();
+        return (3*xA*t + 2*xB)*t + xC;
     }
 
     /**
@@ -280,9 +454,8 @@ public class BezierSegment {
      */
     public double getFirstDeriativeYCoordinate(double t)
     {
-        return  3 * Math.pow(t, 2) * (point3.y + 3 * (point1.y - point2.y) - point0.y) +
-        6 * t * (point0.y - (2 * point1.y) + point2.y) +
-        3 *(point1.y - point0.y);
+        updateCoefficients();
+        return (3*yA*t + 2*yB)*t + yC;
     }
 
     /**
@@ -309,7 +482,7 @@ public class BezierSegment {
         double[] tangent = getFirstDeriative(t);
 
         // Normalize these so they have a length of 1.0
-        double d = Math.sqrt(Math.pow(tangent[0], 2) + Math.pow(tangent[1], 2));
+        double d = Math.sqrt(tangent[0]*tangent[0] + tangent[1]*tangent[1]);
         tangent[0] = tangent[0] / d;
         tangent[1] = tangent[1] / d;
 
@@ -325,10 +498,9 @@ public class BezierSegment {
         int probeNumber = optionStore.getProbeNumber();
         double[][] coordinates = new double[probeNumber][2];
 
-        double t = 1.0/probeNumber;
+        double[] tValues = getProbeTValues(probeNumber);
         for(int i = 0; i < probeNumber; i++) {
-            if(i > 0)
-                t = ((1.0-(1.0/probeNumber))/probeNumber)*i;
+            double t = tValues[i];
 
             // Add to the array
             coordinates[i] = getTangent(t);
@@ -362,10 +534,9 @@ public class BezierSegment {
         int probeNumber = optionStore.getProbeNumber();
         double[][] coordinates = new double[probeNumber][2];
 
-        double t = 1.0/probeNumber;
+        double[] tValues = getProbeTValues(probeNumber);
         for(int i = 0; i < probeNumber; i++) {
-            if(i > 0)
-                t = ((1.0-(1.0/probeNumber))/probeNumber)*i;
+            double t = tValues[i];
 
             // Add to the array
             coordinates[i] = getNormal(t);
@@ -380,8 +551,8 @@ public class BezierSegment {
      */
     public double getSecondDeriativeXCoordinate(double t)
     {
-        return  6 * t * (point3.x + 3 * (point1.x - point2.x) - point0.x) +
-        6 * (point0.x - (2 * point1.x) + point2.x);
+        updateCoefficients();
+        return 6*xA*t + 2*xB;
     }
 
     /**
@@ -390,8 +561,8 @@ public class BezierSegment {
      */
     public double getSecondDeriativeYCoordinate(double t)
     {
-        return  6 * t * (point3.y + 3 * (point1.y - point2.y) - point0.y) +
-        6 * (point0.y - (2 * point1.y) + point2.y);
+        updateCoefficients();
+        return 6*yA*t + 2*yB;
     }
 
     /**
@@ -419,8 +590,23 @@ public class BezierSegment {
 
         double[] d = getFirstDeriative(t);
         double[] dd = getSecondDeriative(t);
-        double numerator = d[0]* dd[1] - dd[0] * d[1];
-        double denominator = Math.pow(d[0]*d[0] + d[1]*d[1], 3/2);
+
+        return getKappa(d[0], d[1], dd[0], dd[1]);
+    }
+
+    /**
+     * Returns kappa (curvature) from the first and second derivatives at a point
+     * @param dx First derivative X
+     * @param dy First derivative Y
+     * @param ddx Second derivative X
+     * @param ddy Second derivative Y
+     * @return double
+     */
+    static double getKappa(double dx, double dy, double ddx, double ddy)
+    {
+        double numerator = dx * ddy - ddx * dy;
+        double speedSquared = dx*dx + dy*dy;
+        double denominator = speedSquared * Math.sqrt(speedSquared);
 
         if(denominator == 0)
             return Double.NaN;
@@ -428,6 +614,226 @@ public class BezierSegment {
         return numerator / denominator;
     }
 
+    /**
+     * Returns the absolute kappa at point t, or zero where kappa is undefined
+     * @param t
+     * @return double
+     */
+    private double getAbsoluteKappa(double t)
+    {
+        double dx = (3*xA*t + 2*xB)*t + xC;
+        double dy = (3*yA*t + 2*yB)*t + yC;
+        double kappa = Math.abs(getKappa(dx, dy, 6*xA*t + 2*xB, 6*yA*t + 2*yB));
+
+        if(Double.isNaN(kappa))
+            return 0.0;
+
+        return kappa;
+    }
+
+    /**
+     * Returns the t value (0.0-1.0) of the point of maximum absolute kappa on the segment.
+     * This is solved for directly rather than read from the probe points, so the precision
+     * does not depend on the probe number.
+     * @return double
+     */
+    public double getMaximumKappaT()
+    {
+        findMaximumKappa();
+        return maximumKappaT;
+    }
+
+    /**
+     * Returns the maximum absolute kappa on the segment
+     * @see getMaximumKappaT()
+     * @return double
+     */
+    public double getMaximumKappa()
+    {
+        findMaximumKappa();
+        return maximumKappa;
+    }
+
+    /**
+     * Returns half the rate of change of the squared speed (x'x'' + y'y'') at point t.
+     * This is zero where the curve is moving slowest, which is where sharp peaks in kappa are.
+     * @param t
+     * @return double
+     */
+    private double getSpeedChange(double t)
+    {
+        double dx = (3*xA*t + 2*xB)*t + xC;
+        double dy = (3*yA*t + 2*yB)*t + yC;
+        return dx * (6*xA*t + 2*xB) + dy * (6*yA*t + 2*yB);
+    }
+
+    /**
+     * Locates the maximum absolute kappa of the segment. The maxima are bracketed by evaluating
+     * kappa from the closed form derivatives on a coarse grid. Sharp peaks near cusps can fall between
+     * grid points, so the points of minimum speed are also used as starting points. Each bracket is then
+     * refined with Brent's method. The result is cached until a control point moves.
+     */
+    private void findMaximumKappa()
+    {
+        if (maximumKappaVersion == version) {
+            return;
+        }
+        updateCoefficients();
+
+        double[] values = new double[KAPPA_BRACKET_INTERVALS + 1];
+        double[] speedChanges = new double[KAPPA_BRACKET_INTERVALS + 1];
+        for(int i = 0; i <= KAPPA_BRACKET_INTERVALS; i++) {
+            double t = (double) i / KAPPA_BRACKET_INTERVALS;
+            values[i] = getAbsoluteKappa(t);
+            speedChanges[i] = getSpeedChange(t);
+        }
+
+        double bestT = 0.0;
+        double best = values[0];
+        for(int i = 0; i <= KAPPA_BRACKET_INTERVALS; i++) {
+            double a = (double) Math.max(i - 1, 0) / KAPPA_BRACKET_INTERVALS;
+            double t = (double) i / KAPPA_BRACKET_INTERVALS;
+
+            // Local maximum of the grid
+            if(values[i] > 0.0 
+                && (i == 0 || values[i] >= values[i - 1]) 
+                && (i == KAPPA_BRACKET_INTERVALS || values[i] >= values[i + 1])) {
+                if(values[i] > best) {
+                    bestT = t;
+                    best = values[i];
+                }
+
+                double b = (double) Math.min(i + 1, KAPPA_BRACKET_INTERVALS) / KAPPA_BRACKET_INTERVALS;
+                double start = (i > 0 && i < KAPPA_BRACKET_INTERVALS) ? t : 0.5 * (a + b);
+                double refinedT = refineMaximumKappaT(a, b, start);
+                double value = getAbsoluteKappa(refinedT);
+                if(value > best) {
+                    bestT = refinedT;
+                    best = value;
+                }
+            }
+
+            // Speed minimum between this grid point and the next, found by bisection
+            if(i < KAPPA_BRACKET_INTERVALS && speedChanges[i] < 0.0 && speedChanges[i + 1] >= 0.0) {
+                double low = t;
+                double high = (double) (i + 1) / KAPPA_BRACKET_INTERVALS;
+                for(int iteration = 0; iteration < 60 && high - low > 1.0e-15; iteration++) {
+                    double middle = 0.5 * (low + high);
+                    if(getSpeedChange(middle) < 0.0)
+                        low = middle;
+                    else
+                        high = middle;
+                }
+
+                double b = (double) Math.min(i + 2, KAPPA_BRACKET_INTERVALS) / KAPPA_BRACKET_INTERVALS;
+                double refinedT = refineMaximumKappaT(a, b, 0.5 * (low + high));
+                double value = getAbsoluteKappa(refinedT);
+                if(value > best) {
+                    bestT = refinedT;
+                    best = value;
+                }
+            }
+        }
+
+        maximumKappaT = bestT;
+        maximumKappa = best;
+        maximumKappaVersion = version;
+    }
+
+    /**
+     * Finds the maximum absolute kappa between a and b using Brent's method (golden section search
+     * combined with parabolic interpolation). Based on the netlib fmin routine.
+     * @see https://www.netlib.org/fmm/fmin.f
+     * @param a Lower bound of t
+     * @param b Upper bound of t
+     * @param start Starting t, between a and b
+     * @return double
+     */
+    private double refineMaximumKappaT(double a, double b, double start)
+    {
+        final double goldenRatio = 0.5 * (3.0 - Math.sqrt(5.0));
+        final double relativeTolerance = Math.sqrt(Math.ulp(1.0));
+        final double absoluteTolerance = 1.0e-12;
+
+        double x = start;
+        double w = x;
+        double v = x;
+        double fx = -getAbsoluteKappa(x);
+        double fw = fx;
+        double fv = fx;
+        double d = 0.0;
+        double e = 0.0;
+
+        for(int iteration = 0; iteration < 100; iteration++) {
+            double xm = 0.5 * (a + b);
+            double tol1 = relativeTolerance * Math.abs(x) + absoluteTolerance / 3.0;
+            double tol2 = 2.0 * tol1;
+
+            if(Math.abs(x - xm) <= tol2 - 0.5 * (b - a))
+                break;
+
+            boolean goldenSection = true;
+            if(Math.abs(e) > tol1) {
+                // Try a parabolic fit through x, w and v
+                double r = (x - w) * (fx - fv);
+                double q = (x - v) * (fx - fw);
+                double p = (x - v) * q - (x - w) * r;
+                q = 2.0 * (q - r);
+                if(q > 0.0)
+                    p = -p;
+                else
+                    q = -q;
+                r = e;
+                e = d;
+
+                if(Math.abs(p) < Math.abs(0.5 * q * r) && p > q * (a - x) && p < q * (b - x)) {
+                    d = p / q;
+                    double u = x + d;
+                    if((u - a) < tol2 || (b - u) < tol2)
+                        d = (xm >= x) ? tol1 : -tol1;
+                    goldenSection = false;
+                }
+            }
+
+            if(goldenSection) {
+                e = (x >= xm) ? a - x : b - x;
+                d = goldenRatio * e;
+            }
+
+            double u = (Math.abs(d) >= tol1) ? x + d : x + ((d >= 0.0) ? tol1 : -tol1);
+            double fu = -getAbsoluteKappa(u);
+
+            if(fu <= fx) {
+                if(u >= x)
+                    a = x;
+                else
+                    b = x;
+                v = w;
+                fv = fw;
+                w = x;
+                fw = fx;
+                x = u;
+                fx = fu;
+            } else {
+                if(u < x)
+                    a = u;
+                else
+                    b = u;
+                if(fu <= fw || w == x) {
+                    v = w;
+                    fv = fw;
+                    w = u;
+                    fw = fu;
+                } else if(fu <= fv || v == x || v == w) {
+                    v = u;
+                    fv = fu;
+                }
+            }
+        }
+
+        return x;
+    }
+
     /**
      * Returns a list of kappa values one for each probe point
      * @return double[]
@@ -437,10 +843,9 @@ public class BezierSegment {
         int probeNumber = optionStore.getProbeNumber();
         double[] kappas = new double[probeNumber];
 
-        double t = 1.0/probeNumber;
+        double[] tValues = getProbeTValues(probeNumber);
         for(int i = 0; i < probeNumber; i++) {
-            if(i > 0)
-                t = ((1.0-(1.0/probeNumber))/probeNumber)*i;
+            double t = tValues[i];
 
             // Add to the array
             kappas[i] = getCurveKappa(t);
@@ -469,10 +874,9 @@ public class BezierSegment {
         int probeNumber = optionStore.getProbeNumber();
         double[] radii = new double[probeNumber];
 
-        double t = 1.0/probeNumber;
+        double[] tValues = getProbeTValues(probeNumber);
         for(int i = 0; i < probeNumber; i++) {
-            if(i > 0)
-                t = ((1.0-(1.0/probeNumber))/probeNumber)*i;
+            double t = tValues[i];
 
             // Add to the array
             radii[i] = getRadiusOfFittedCircle(t);
@@ -481,6 +885,300 @@ public class BezierSegment {
         return radii;
     }
     
+    /**
+     * Returns the t values found by adaptively splitting the segment until each piece is within tolerance
+     * of a straight line, or the maximum number of splits has been made. The array is cached and must not
+     * be modified.
+     * @param tolerance Maximum distance, in pixels, of the curve from the straight line between samples
+     * @param maximumDepth Maximum number of times an interval is split in half
+     * @return double[]
+     */
+    public double[] getAdaptiveTValues(double tolerance, int maximumDepth)
+    {
+        updateAdaptiveTValues(tolerance, maximumDepth);
+        return adaptiveTValues;
+    }
+
+    /**
+     * Returns the largest distance the curve can be from the straight lines between the adaptive samples
+     * @see getAdaptiveTValues(double, int)
+     * @param tolerance
+     * @param maximumDepth
+     * @return double
+     */
+    public double getAdaptiveErrorBound(double tolerance, int maximumDepth)
+    {
+        updateAdaptiveTValues(tolerance, maximumDepth);
+        return adaptiveErrorBound;
+    }
+
+    /**
+     * Rebuilds the adaptive t values if a control point has moved or the settings have changed
+     * @param tolerance
+     * @param maximumDepth
+     */
+    private void updateAdaptiveTValues(double tolerance, int maximumDepth)
+    {
+        if (adaptiveVersion == version && adaptiveTolerance == tolerance && adaptiveMaximumDepth == maximumDepth) {
+            return;
+        }
+        updateCoefficients();
+
+        adaptiveTValues = new double[Math.max(adaptiveTValues.length, 16)];
+        adaptiveCount = 0;
+        adaptiveErrorBound = 0.0;
+        subdivide(0.0, 1.0, 0, tolerance, maximumDepth);
+        adaptiveTValues = Arrays.copyOf(adaptiveTValues, adaptiveCount);
+
+        adaptiveTolerance = tolerance;
+        adaptiveMaximumDepth = maximumDepth;
+        adaptiveVersion = version;
+    }
+
+    /**
+     * Recursively splits the interval t0-t1 in half until it is flat enough, adding the start t of every
+     * interval that is kept in order along the curve.
+     * @param t0
+     * @param t1
+     * @param depth
+     * @param tolerance
+     * @param maximumDepth
+     */
+    private void subdivide(double t0, double t1, int depth, double tolerance, int maximumDepth)
+    {
+        double flatness = getFlatness(t0, t1);
+        if (flatness > tolerance && depth < maximumDepth) {
+            double middle = 0.5 * (t0 + t1);
+            subdivide(t0, middle, depth + 1, tolerance, maximumDepth);
+            subdivide(middle, t1, depth + 1, tolerance, maximumDepth);
+            return;
+        }
+
+        if (adaptiveCount == adaptiveTValues.length) {
+            adaptiveTValues = Arrays.copyOf(adaptiveTValues, adaptiveCount * 2);
+        }
+        adaptiveTValues[adaptiveCount++] = t0;
+        if (flatness > adaptiveErrorBound) {
+            adaptiveErrorBound = flatness;
+        }
+    }
+
+    /**
+     * Returns an upper bound on the distance of the curve between t0 and t1 from the straight line joining
+     * its ends. The piece of curve has its own four control points, and lies inside their convex hull, so
+     * it can be no further from the line than the two inner control points are.
+     * @param t0
+     * @param t1
+     * @return double
+     */
+    private double getFlatness(double t0, double t1)
+    {
+        double h = (t1 - t0) / 3.0;
+        double startX = ((xA*t0 + xB)*t0 + xC)*t0 + xD;
+        double startY = ((yA*t0 + yB)*t0 + yC)*t0 + yD;
+        double endX = ((xA*t1 + xB)*t1 + xC)*t1 + xD;
+        double endY = ((yA*t1 + yB)*t1 + yC)*t1 + yD;
+        double control1X = startX + h * ((3*xA*t0 + 2*xB)*t0 + xC);
+        double control1Y = startY + h * ((3*yA*t0 + 2*yB)*t0 + yC);
+        double control2X = endX - h * ((3*xA*t1 + 2*xB)*t1 + xC);
+        double control2Y = endY - h * ((3*yA*t1 + 2*yB)*t1 + yC);
+
+        return Math.max(
+            getDistanceToLine(control1X, control1Y, startX, startY, endX, endY),
+            getDistanceToLine(control2X, control2Y, startX, startY, endX, endY)
+        );
+    }
+
+    /**
+     * Returns the distance of point (x, y) from the straight line between (x0, y0) and (x1, y1)
+     * @return double
+     */
+    private static double getDistanceToLine(double x, double y, double x0, double y0, double x1, double y1)
+    {
+        double lineX = x1 - x0;
+        double lineY = y1 - y0;
+        double lengthSquared = lineX*lineX + lineY*lineY;
+
+        double u = 0.0;
+        if (lengthSquared > 0.0) {
+            u = ((x - x0) * lineX + (y - y0) * lineY) / lengthSquared;
+            if (u < 0.0) u = 0.0;
+            if (u > 1.0) u = 1.0;
+        }
+
+        double distanceX = x - (x0 + u * lineX);
+        double distanceY = y - (y0 + u * lineY);
+        return Math.sqrt(distanceX*distanceX + distanceY*distanceY);
+    }
+
+    /**
+     * Samples the segment at every probe point in a single pass. The coordinates, first and second
+     * derivatives, tangent, normal and kappa are written into the curve channels starting at offset,
+     * and match the values returned by getCurveCoordinates(), getCurveTangents() etc.
+     * @param curve Curve to write the samples to
+     * @param offset Index of the first sample of this segment in the curve
+     * @param probeNumber Number of probe points to sample
+     */
+    void sample(SampledCurve curve, int offset, int probeNumber)
+    {
+        sample(curve, offset, getProbeTValues(probeNumber));
+    }
+
+    /**
+     * Samples the segment at the given t values in a single pass
+     * @see sample(SampledCurve, int, int)
+     * @param curve Curve to write the samples to
+     * @param offset Index of the first sample of this segment in the curve
+     * @param tValues t values to sample
+     */
+    void sample(SampledCurve curve, int offset, double[] tValues)
+    {
+        sample(curve, offset, tValues, 0, tValues.length);
+    }
+
+    /**
+     * Samples the segment at part of an array of t values, tValues[from] to tValues[to - 1]
+     * @see sample(SampledCurve, int, int)
+     * @param curve Curve to write the samples to
+     * @param offset Index in the curve to write the sample for tValues[from] to
+     * @param tValues t values to sample
+     * @param from
+     * @param to
+     */
+    void sample(SampledCurve curve, int offset, double[] tValues, int from, int to)
+    {
+        updateCoefficients();
+        BezierEvaluator.INSTANCE.evaluate(xA, xB, xC, xD, yA, yB, yC, yD, tValues, from, to, curve, offset);
+    }
+
+    /**
+     * Returns the speed (length of the first derivative) at point t
+     * @param t
+     * @return double
+     */
+    private double getSpeed(double t)
+    {
+        double dx = (3*xA*t + 2*xB)*t + xC;
+        double dy = (3*yA*t + 2*yB)*t + yC;
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    /**
+     * Integrates the speed between t0 and t1 using Gauss-Legendre quadrature
+     * @param t0
+     * @param t1
+     * @return double
+     */
+    private double integrateSpeed(double t0, double t1)
+    {
+        double halfWidth = 0.5 * (t1 - t0);
+        double middle = 0.5 * (t1 + t0);
+        double sum = 0.0;
+        for(int i = 0; i < GAUSS_LEGENDRE_ABSCISSAE.length; i++) {
+            sum += GAUSS_LEGENDRE_WEIGHTS[i] * getSpeed(middle + halfWidth * GAUSS_LEGENDRE_ABSCISSAE[i]);
+        }
+        return halfWidth * sum;
+    }
+
+    /**
+     * Rebuilds the cumulative arc length table if a control point has moved
+     */
+    private void updateArcLengthTable()
+    {
+        if (arcLengthVersion == version) {
+            return;
+        }
+        updateCoefficients();
+
+        arcLengthTable[0] = 0.0;
+        for(int i = 0; i < ARC_LENGTH_INTERVALS; i++) {
+            double t0 = (double) i / ARC_LENGTH_INTERVALS;
+            double t1 = (double) (i + 1) / ARC_LENGTH_INTERVALS;
+            arcLengthTable[i + 1] = arcLengthTable[i] + integrateSpeed(t0, t1);
+        }
+        arcLengthVersion = version;
+    }
+
+    /**
+     * Returns the arc length (length along the curve) of the whole segment
+     * @return double
+     */
+    public double getArcLength()
+    {
+        updateArcLengthTable();
+        return arcLengthTable[ARC_LENGTH_INTERVALS];
+    }
+
+    /**
+     * Returns the arc length from the start of the segment to point t, where t is 0.0-1.0
+     * @param t
+     * @return double
+     */
+    public double getArcLength(double t)
+    {
+        // Idiot checks...
+        if(t< 0.0) t = 0.0;
+        if(t > 1.0) t = 1.0;
+
+        updateArcLengthTable();
+        int i = Math.min((int) (t * ARC_LENGTH_INTERVALS), ARC_LENGTH_INTERVALS - 1);
+        return arcLengthTable[i] + integrateSpeed((double) i / ARC_LENGTH_INTERVALS, t);
+    }
+
+    /**
+     * Returns the t value (0.0-1.0) of the point that is the given arc length from the start
+     * of the segment. The table is searched for the interval holding the arc length, then
+     * t is refined within it by Newton's method.
+     * @param arcLength
+     * @return double
+     */
+    public double getTAtArcLength(double arcLength)
+    {
+        updateArcLengthTable();
+        if(arcLength <= 0.0) return 0.0;
+        if(arcLength >= arcLengthTable[ARC_LENGTH_INTERVALS]) return 1.0;
+
+        // Binary search for the interval
+        int low = 0;
+        int high = ARC_LENGTH_INTERVALS;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if(arcLengthTable[middle] <= arcLength)
+                low = middle;
+            else
+                high = middle;
+        }
+
+        double start = (double) low / ARC_LENGTH_INTERVALS;
+        double intervalLength = arcLengthTable[high] - arcLengthTable[low];
+        if(intervalLength <= 0.0)
+            return start;
+
+        // Start from a linear guess, falling back to bisection whenever Newton's step leaves the bracket
+        double lowerT = start;
+        double upperT = (double) high / ARC_LENGTH_INTERVALS;
+        double remaining = arcLength - arcLengthTable[low];
+        double t = lowerT + (upperT - lowerT) * remaining / intervalLength;
+        for(int iteration = 0; iteration < 20; iteration++) {
+            double error = integrateSpeed(start, t) - remaining;
+            if(Math.abs(error) < 1.0e-10 * intervalLength)
+                break;
+
+            if(error > 0.0)
+                upperT = t;
+            else
+                lowerT = t;
+
+            double speed = getSpeed(t);
+            double next = (speed > 0.0) ? t - error / speed : Double.NaN;
+            if(!(next > lowerT && next < upperT))
+                next = 0.5 * (lowerT + upperT);
+            t = next;
+        }
+
+        return t;
+    }
+
     /**
      * Returns a control point if the coordinate given is inside or near the point.
      * We check 2*pointWidth from the center of the control point.
@@ -1,8 +1,10 @@
 import java.awt.geom.*;
+import java.util.ArrayList;
 import ij.gui.Overlay;
 
 /**
  * Class: BezierSegmentList
+ * Holds the segments of a curve in a SegmentStore, in order from start to end.
  * Based on the Bezier Curve Tool by:
  * @Author Berin Martini
  * @Version 2012-01-18
@@ -11,11 +13,25 @@ import ij.gui.Overlay;
 public class BezierSegmentList {
 
     private OptionsStore optionStore;
-    private BezierSegment bezierStart = null;
-    private BezierSegment bezierEnd = null;
-    private BezierSegment bezierCurrent = null;
+    private SegmentStore segments = new SegmentStore();
+    private ControlPointIndex controlPointIndex;
     private BezierPointType pointType = BezierPointType.START_POINT;
     private double	x0, y0, x1, y1, x3, y3, xTmp, yTmp;
+    private volatile CurveSnapshot snapshot = CurveSnapshot.EMPTY;
+    // The curve as it was when it started being moved as a whole, and how far it has moved since
+    private CurveSnapshot translationBase = null;
+    private double translationX;
+    private double translationY;
+    private int translationModifications = -1;
+
+    // Relative difference in kappa below which two maxima are treated as equal
+    private static final double MAXIMUM_KAPPA_TOLERANCE = 1.0e-9;
+    // Smallest kappa (1/pixels) marked as a maximum, a radius of 10000 pixels. Below this the curve is
+    // taken to be straight
+    static final double MINIMUM_KAPPA = 1.0e-4;
+    // Maxima closer than this (pixels), or this close in t either side of a joint, are the same point
+    private static final double JOINT_DISTANCE = 1.0e-3;
+    private static final double JOINT_T = 1.0e-6;
      
     /**
      * Construtor that sets the starting point width
@@ -23,6 +39,7 @@ public class BezierSegmentList {
      */
     BezierSegmentList(OptionsStore optionStore) {
         this.optionStore = optionStore;
+        this.controlPointIndex = new ControlPointIndex(optionStore);
     }
 
     /**
@@ -30,7 +47,7 @@ public class BezierSegmentList {
      * @return boolean
      */
     public boolean isEmpty() {
-        return (bezierStart == null);
+        return segments.isEmpty();
     }
     
     /**
@@ -38,7 +55,7 @@ public class BezierSegmentList {
      * @return boolean
      */
     public boolean onlyOneBezierControlPoint() {
-        return (bezierStart == bezierEnd);
+        return (segments.size() <= 1);
     }
 
     /**
@@ -74,13 +91,105 @@ public class BezierSegmentList {
             yTmp = y;
             pointType = BezierPointType.CONTROL_2;
         } else if (pointType == BezierPointType.CONTROL_2) {
-            bezierStart = new BezierSegment(optionStore, x0, y0, x1, y1, x, y, x3, y3);
-            bezierEnd = bezierStart;
+            segments.add(new BezierSegment(optionStore, x0, y0, x1, y1, x, y, x3, y3));
             pointType = BezierPointType.START_POINT;
+            controlPointIndex.rebuild(segments);
         } 
             
     }
     
+    /**
+     * Adds segments to the end of the curve from packed coordinates, eight per segment in the order
+     * x0, y0, x1, y1, x2, y2, x3, y3. Used to build a curve from a saved curve definition, where
+     * the start of each segment is the end of the one before.
+     * @param coordinates
+     */
+    public void addSegments(double[] coordinates) {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        for (int i = 0; i + size <= coordinates.length; i += size) {
+            segments.add(new BezierSegment(optionStore,
+                coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3],
+                coordinates[i + 4], coordinates[i + 5], coordinates[i + 6], coordinates[i + 7]));
+        }
+        controlPointIndex.rebuild(segments);
+    }
+
+    /**
+     * Makes the list hold the same segments as a snapshot. When the number of segments is the same
+     * only the control points that differ are moved, so segments that have not changed keep their
+     * cached samples and measurements.
+     * @param curve
+     */
+    public void setSegments(CurveSnapshot curve) {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        if (curve.getNumberSegments() != segments.size()) {
+            segments = new SegmentStore();
+            addSegments(curve.getCoordinates());
+            return;
+        }
+
+        for (int j = 0; j < segments.size(); j++) {
+            BezierSegment bezier = segments.get(j);
+            for (int point = 0; point < 4; point++) {
+                double x = curve.getCoordinate((j * size) + (2 * point));
+                double y = curve.getCoordinate((j * size) + (2 * point) + 1);
+                if (x != bezier.getPointX(point) || y != bezier.getPointY(point)) {
+                    bezier.getControlPoint(point).movePoint(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes a snapshot of the list as it is now, for other threads to read with getSnapshot().
+     * Called by the thread that edits the list once it has finished a change. A new copy of the
+     * coordinates is only made if the list has been edited since the last snapshot.
+     * @return CurveSnapshot
+     */
+    public CurveSnapshot publish() {
+        CurveSnapshot current = snapshot;
+        if (isEmpty()) {
+            // The points of a first segment that is still being placed are not versioned, so are always copied
+            current = new CurveSnapshot(new double[0], getControlPointCoordinates(), segments.getModifications());
+        } else if (current.isEmpty() || current.getVersion() != segments.getModifications()) {
+            if (isTranslating()) {
+                current = new CurveSnapshot(segments.getCoordinates(), null, segments.getModifications(),
+                    translationBase.getVersion(), translationX, translationY);
+            } else {
+                current = new CurveSnapshot(segments.getCoordinates(), null, segments.getModifications());
+            }
+        }
+        snapshot = current;
+        return current;
+    }
+
+    /**
+     * Returns a new list with the same segments, which shares nothing with this one
+     * @return BezierSegmentList
+     */
+    BezierSegmentList copy() {
+        BezierSegmentList copy = new BezierSegmentList(optionStore);
+        copy.addSegments(segments.getCoordinates());
+        return copy;
+    }
+
+    /**
+     * Returns the last snapshot published. Safe to call from any thread.
+     * @return CurveSnapshot
+     */
+    public CurveSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the control point coordinates of every segment packed eight per segment, in the order
+     * x0, y0, x1, y1, x2, y2, x3, y3. This is the form that addSegments() takes.
+     * @return double[]
+     */
+    public double[] getSegmentCoordinates() {
+        return segments.getCoordinates();
+    }
+
     /**
      * Returns the coordinates for the controls points
      * @return double[][]
@@ -99,14 +208,10 @@ public class BezierSegmentList {
                 coordinates = c;
             } 
         } else {
-            coordinates = bezierStart.getPointCoordinates();
-            bezierCurrent = bezierStart.next();
-            while (bezierCurrent != null) {
-                double[][] coor = new double[coordinates.length + 4][2];
-                System.arraycopy(coordinates, 0, coor, 0, coordinates.length);
-                System.arraycopy(bezierCurrent.getPointCoordinates(), 0, coor, coordinates.length, 4);
-                coordinates = coor;
-                bezierCurrent = bezierCurrent.next();
+            // The size is known up front, so each segment is copied in once
+            coordinates = new double[segments.size() * 4][];
+            for (int j = 0; j < segments.size(); j++) {
+                System.arraycopy(segments.get(j).getPointCoordinates(), 0, coordinates, j * 4, 4);
             }
         }
         return coordinates;
@@ -118,18 +223,17 @@ public class BezierSegmentList {
      */
     public int getNumberSegments()
     {
-        if (bezierStart == null) {
-            return 0;
-        }
-        
-        int i = 1;
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            i++;
-            bezierCurrent = bezierCurrent.next();
-        }
+        return segments.size();
+    }
 
-        return i;
+    /**
+     * Returns the segment at the index, from the start of the curve
+     * @param index
+     * @return BezierSegment
+     */
+    BezierSegment getSegment(int index)
+    {
+        return segments.get(index);
     }
 
     /**
@@ -142,7 +246,7 @@ public class BezierSegmentList {
         int probeNumber = optionStore.getProbeNumber();
         double[][] segCoordinates;
         
-        if (bezierStart == null) {
+        if (segments.isEmpty()) {
             return null;
         }
 
@@ -150,29 +254,14 @@ public class BezierSegmentList {
         int i = getNumberSegments();
         double[][][] coordinates = new double[i][probeNumber][2];
 
-        int j = 0;
-        // Get the coordinates of the bezierStart curve
-        segCoordinates = bezierStart.getCurveCoordinates();
-        for(int k = 0; k < probeNumber; k++)
-        {
-            coordinates[j][k][0] = segCoordinates[k][0]; // x
-            coordinates[j][k][1] = segCoordinates[k][1]; // y
-        }
-        j++;
-
-        // Get coordinates of all other curves and add them to the return
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            segCoordinates = bezierCurrent.getCurveCoordinates();
+        for (int j = 0; j < i; j++) {
+            segCoordinates = segments.get(j).getCurveCoordinates();
 
             for(int k = 0; k < probeNumber; k++)
             {
                 coordinates[j][k][0] = segCoordinates[k][0]; // x
                 coordinates[j][k][1] = segCoordinates[k][1]; // y
             }
-
-            j++;
-            bezierCurrent = bezierCurrent.next();
         }
 
         return coordinates;
@@ -188,7 +277,7 @@ public class BezierSegmentList {
         int probeNumber = optionStore.getProbeNumber();
         double[][] segCoordinates;
         
-        if (bezierStart == null) {
+        if (segments.isEmpty()) {
             return null;
         }
 
@@ -196,29 +285,14 @@ public class BezierSegmentList {
         int i = getNumberSegments();
         double[][][] coordinates = new double[i][probeNumber][2];
 
-        int j = 0;
-        // Get the coordinates of the bezierStart curve
-        segCoordinates = bezierStart.getCurveTangents();
-        for(int k = 0; k < probeNumber; k++)
-        {
-            coordinates[j][k][0] = segCoordinates[k][0]; // x
-            coordinates[j][k][1] = segCoordinates[k][1]; // y
-        }
-        j++;
-
-        // Get coordinates of all other curves and add them to the return
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            segCoordinates = bezierCurrent.getCurveTangents();
+        for (int j = 0; j < i; j++) {
+            segCoordinates = segments.get(j).getCurveTangents();
 
             for(int k = 0; k < probeNumber; k++)
             {
                 coordinates[j][k][0] = segCoordinates[k][0]; // x
                 coordinates[j][k][1] = segCoordinates[k][1]; // y
             }
-
-            j++;
-            bezierCurrent = bezierCurrent.next();
         }
 
         return coordinates;
@@ -234,7 +308,7 @@ public class BezierSegmentList {
         int probeNumber = optionStore.getProbeNumber();
         double[][] segCoordinates;
         
-        if (bezierStart == null) {
+        if (segments.isEmpty()) {
             return null;
         }
 
@@ -242,29 +316,14 @@ public class BezierSegmentList {
         int i = getNumberSegments();
         double[][][] coordinates = new double[i][probeNumber][2];
 
-        int j = 0;
-        // Get the coordinates of the bezierStart curve
-        segCoordinates = bezierStart.getCurveNormals();
-        for(int k = 0; k < probeNumber; k++)
-        {
-            coordinates[j][k][0] = segCoordinates[k][0]; // x
-            coordinates[j][k][1] = segCoordinates[k][1]; // y
-        }
-        j++;
-
-        // Get coordinates of all other curves and add them to the return
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            segCoordinates = bezierCurrent.getCurveNormals();
+        for (int j = 0; j < i; j++) {
+            segCoordinates = segments.get(j).getCurveNormals();
 
             for(int k = 0; k < probeNumber; k++)
             {
                 coordinates[j][k][0] = segCoordinates[k][0]; // x
                 coordinates[j][k][1] = segCoordinates[k][1]; // y
             }
-
-            j++;
-            bezierCurrent = bezierCurrent.next();
         }
 
         return coordinates;
@@ -280,7 +339,7 @@ public class BezierSegmentList {
         int probeNumber = optionStore.getProbeNumber();
         double[] kappaValues;
         
-        if (bezierStart == null) {
+        if (segments.isEmpty()) {
             return null;
         }
 
@@ -288,27 +347,13 @@ public class BezierSegmentList {
         int i = getNumberSegments();
         double[][] newKappaValues = new double[i][probeNumber];
 
-        int j = 0;
-        // Get the coordinates of the bezierStart curve
-        kappaValues = bezierStart.getCurveKappas();
-        for(int k = 0; k < probeNumber; k++)
-        {
-            newKappaValues[j][k] = kappaValues[k]; // x
-        }
-        j++;
-
-        // Get coordinates of all other curves and add them to the return
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            kappaValues = bezierCurrent.getCurveKappas();
+        for (int j = 0; j < i; j++) {
+            kappaValues = segments.get(j).getCurveKappas();
 
             for(int k = 0; k < probeNumber; k++)
             {
                 newKappaValues[j][k] = kappaValues[k];
             }
-
-            j++;
-            bezierCurrent = bezierCurrent.next();
         }
 
         return newKappaValues;
@@ -323,7 +368,7 @@ public class BezierSegmentList {
         int probeNumber = optionStore.getProbeNumber();
         double[] tValues;
         
-        if (bezierStart == null) {
+        if (segments.isEmpty()) {
             return null;
         }
 
@@ -331,46 +376,327 @@ public class BezierSegmentList {
         int i = getNumberSegments();
         double[][] newTValues = new double[i][probeNumber];
 
-        int j = 0;
-        // Get the coordinates of the bezierStart curve
-        tValues = bezierStart.getCurveTValues();
-        for(int k = 0; k < probeNumber; k++)
-        {
-            newTValues[j][k] = tValues[k]; // x
-        }
-        j++;
-
-        // Get coordinates of all other curves and add them to the return
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            tValues = bezierCurrent.getCurveTValues();
+        for (int j = 0; j < i; j++) {
+            tValues = segments.get(j).getCurveTValues();
 
             for(int k = 0; k < probeNumber; k++)
             {
                 newTValues[j][k] = tValues[k];
             }
-
-            j++;
-            bezierCurrent = bezierCurrent.next();
         }
 
         return newTValues;
     }
-    
+
+    /**
+     * Samples the whole curve in a single pass over the segments, using either the probe number or
+     * adaptive sampling. The result is written into the given SampledCurve, which is reused so that
+     * no new arrays are allocated between updates. Segments that have not changed since the curve was
+     * last sampled are skipped, so dragging a single control point only resamples the one or two
+     * segments it moves. A new SampledCurve is created if null is passed.
+     * @param curve SampledCurve to reuse | null
+     * @return SampledCurve | null
+     */
+    public SampledCurve sampleCurve(SampledCurve curve)
+    {
+        int probeNumber = optionStore.getProbeNumber();
+        boolean adaptive = optionStore.getAdaptiveSampling();
+        double tolerance = optionStore.getAdaptiveTolerance();
+        int maximumDepth = optionStore.getAdaptiveMaximumDepth();
+
+        if (segments.isEmpty()) {
+            return null;
+        }
+
+        if (curve == null) {
+            curve = new SampledCurve();
+        }
+
+        // A change in the number of segments or the sampling settings means everything has to be sampled again
+        int i = getNumberSegments();
+        if (curve.getSegmentCount() != i || curve.probeNumber != probeNumber || curve.adaptive != adaptive
+            || curve.adaptiveTolerance != tolerance || curve.adaptiveMaximumDepth != maximumDepth) {
+            curve.reset(i);
+            curve.probeNumber = probeNumber;
+            curve.adaptive = adaptive;
+            curve.adaptiveTolerance = tolerance;
+            curve.adaptiveMaximumDepth = maximumDepth;
+        }
+
+        curve.updateCount++;
+
+        // Work out where the samples of each segment go. Segments that have not changed keep their samples.
+        SampledCurve spare = curve.getSpare(i);
+        int[] offsets = spare.segmentOffsets;
+        boolean moved = false;
+        offsets[0] = 0;
+        for (int j = 0; j < i; j++) {
+            BezierSegment bezier = segments.get(j);
+            int count;
+            if (curve.isSegmentCurrent(j, bezier)) {
+                count = curve.getSegmentEnd(j) - curve.getSegmentStart(j);
+            } else if (adaptive) {
+                count = bezier.getAdaptiveTValues(tolerance, maximumDepth).length;
+            } else {
+                count = probeNumber;
+            }
+            offsets[j + 1] = offsets[j] + count;
+            moved = moved || (offsets[j + 1] != curve.segmentOffsets[j + 1]);
+        }
+
+        // If any samples have to move the curve is laid out again in the spare arrays, which are then swapped in
+        SampledCurve target = curve;
+        if (moved) {
+            target = spare;
+            target.ensureCapacity(offsets[i]);
+        }
+
+        int resampled = 0;
+        for (int j = 0; j < i; j++) {
+            BezierSegment bezier = segments.get(j);
+            if (curve.isSegmentCurrent(j, bezier)) {
+                if (moved) {
+                    curve.copySegmentTo(target, j, offsets[j]);
+                }
+                continue;
+            }
+
+            resampled += offsets[j + 1] - offsets[j];
+            if (adaptive) {
+                bezier.sample(target, offsets[j], bezier.getAdaptiveTValues(tolerance, maximumDepth));
+            } else {
+                bezier.sample(target, offsets[j], probeNumber);
+            }
+        }
+
+        if (moved) {
+            curve.swapWithSpare(offsets[i]);
+        }
+
+        // Finally record the segments that have been sampled
+        for (int j = 0; j < i; j++) {
+            BezierSegment bezier = segments.get(j);
+            if (!curve.isSegmentCurrent(j, bezier)) {
+                double errorBound = adaptive ? bezier.getAdaptiveErrorBound(tolerance, maximumDepth) : Double.NaN;
+                curve.setSegmentSampled(j, bezier, errorBound);
+            }
+        }
+        curve.resampledCount = resampled;
+
+        return curve;
+    }
+
+    /**
+     * Returns the point(s) of maximum absolute kappa over the whole curve. The maximum of each segment
+     * is solved for directly (see BezierSegment.getMaximumKappaT()) so the result does not depend on the
+     * probe number. Points with the same kappa, to within a small relative tolerance, are all returned.
+     * double[i][j] = i is the point, j is X, Y, segment number, t and kappa.
+     * @param minimumKappa Only points with a kappa greater than this are returned
+     * @return double[][] | null
+     */
+    public double[][] getMaximumCurvaturePoints(double minimumKappa)
+    {
+        if (segments.isEmpty()) {
+            return null;
+        }
+
+        // Find the highest kappa of all the segments first...
+        double highestKappa = minimumKappa;
+        for (int j = 0; j < segments.size(); j++) {
+            if (segments.get(j).getMaximumKappa() > highestKappa) {
+                highestKappa = segments.get(j).getMaximumKappa();
+            }
+        }
+
+        if (highestKappa <= minimumKappa) {
+            return new double[0][];
+        }
+
+        // ...then collect every segment that reaches it
+        ArrayList<double[]> points = new ArrayList<double[]>();
+        double tolerance = highestKappa * MAXIMUM_KAPPA_TOLERANCE;
+        for (int j = 0; j < segments.size(); j++) {
+            BezierSegment bezier = segments.get(j);
+            if (bezier.getMaximumKappa() >= highestKappa - tolerance) {
+                double t = bezier.getMaximumKappaT();
+                double[] point = {bezier.getXCoordinate(t), bezier.getYCoordinate(t), j, t, bezier.getMaximumKappa()};
+
+                // The end of one segment is the start of the next, so only mark a shared point once
+                double[] last = points.isEmpty() ? null : points.get(points.size() - 1);
+                if (last == null || !isSamePoint(last, point)) {
+                    points.add(point);
+                }
+            }
+        }
+
+        // The end of a closed curve is its start
+        if (points.size() > 1 && isSamePoint(points.get(points.size() - 1), points.get(0))) {
+            points.remove(points.size() - 1);
+        }
+
+        return points.toArray(new double[points.size()][]);
+    }
+
+    /**
+     * Are two maximum curvature points the same point? The two ends of a joint are each worked out from
+     * their own segment, and the search can stop just short of the end, so they seldom match exactly.
+     * @param a X, Y, segment number and t of a point
+     * @param b The same for a point on the same or a later segment
+     * @return boolean
+     */
+    private static boolean isSamePoint(double[] a, double[] b)
+    {
+        if (b[2] == a[2] + 1 && a[3] > 1.0 - JOINT_T && b[3] < JOINT_T) {
+            return true;
+        }
+        double dx = b[0] - a[0];
+        double dy = b[1] - a[1];
+        return (dx*dx + dy*dy) <= JOINT_DISTANCE * JOINT_DISTANCE;
+    }
+
+    /**
+     * Returns the arc length (length along the curve) of the whole curve
+     * @return double
+     */
+    public double getArcLength()
+    {
+        double arcLength = 0.0;
+        for (int j = 0; j < segments.size(); j++) {
+            arcLength += segments.get(j).getArcLength();
+        }
+
+        return arcLength;
+    }
+
+    /**
+     * Returns the arc length from the start of the curve to the start of each segment.
+     * double[k] = k is the segment number, with the last value being the length of the whole curve.
+     * @return double[] | null
+     */
+    public double[] getCumulativeArcLengths()
+    {
+        if (segments.isEmpty()) {
+            return null;
+        }
+
+        double[] arcLengths = new double[segments.size() + 1];
+        for (int j = 0; j < segments.size(); j++) {
+            arcLengths[j + 1] = arcLengths[j] + segments.get(j).getArcLength();
+        }
+
+        return arcLengths;
+    }
+
+    /**
+     * Returns how far along the whole curve (0.0-1.0, by arc length) point t of a segment is
+     * @param segment Segment number
+     * @param t
+     * @return double
+     */
+    public double getArcLengthFraction(int segment, double t)
+    {
+        double before = 0.0;
+        double arcLength = 0.0;
+        for (int j = 0; j < segments.size(); j++) {
+            BezierSegment bezier = segments.get(j);
+            if (j < segment) {
+                before += bezier.getArcLength();
+            } else if (j == segment) {
+                before += bezier.getArcLength(t);
+            }
+            arcLength += bezier.getArcLength();
+        }
+
+        if (arcLength <= 0.0) {
+            return 0.0;
+        }
+        return before / arcLength;
+    }
+
+    /**
+     * Returns the point that is the given arc length from the start of the curve.
+     * double[] = X, Y, segment number and t.
+     * @param arcLength
+     * @return double[] | null
+     */
+    public double[] getPointAtArcLength(double arcLength)
+    {
+        double[] arcLengths = getCumulativeArcLengths();
+        if (arcLengths == null) {
+            return null;
+        }
+
+        int segment = findSegmentAtArcLength(arcLengths, arcLength);
+        BezierSegment bezier = segments.get(segment);
+
+        double t = bezier.getTAtArcLength(arcLength - arcLengths[segment]);
+        return new double[] {bezier.getXCoordinate(t), bezier.getYCoordinate(t), segment, t};
+    }
+
+    /**
+     * Returns the coordinates of points spaced equally by arc length along the whole curve,
+     * including the very start and end of the curve.
+     * double[i][j] = i is the point, and j is the X/Y coordinate.
+     * @param number Number of points, at least 2
+     * @return double[][] | null
+     */
+    public double[][] getEquallySpacedCoordinates(int number)
+    {
+        double[] arcLengths = getCumulativeArcLengths();
+        if (arcLengths == null || number < 2) {
+            return null;
+        }
+
+        double[][] coordinates = new double[number][2];
+        double spacing = arcLengths[arcLengths.length - 1] / (number - 1);
+
+        for (int i = 0; i < number; i++) {
+            double arcLength = spacing * i;
+            int segment = findSegmentAtArcLength(arcLengths, arcLength);
+            BezierSegment bezier = segments.get(segment);
+
+            double t = bezier.getTAtArcLength(arcLength - arcLengths[segment]);
+            coordinates[i][0] = bezier.getXCoordinate(t);
+            coordinates[i][1] = bezier.getYCoordinate(t);
+        }
+
+        return coordinates;
+    }
+
+    /**
+     * Binary search of the cumulative arc lengths for the segment holding the given arc length
+     * @param arcLengths Cumulative arc lengths from getCumulativeArcLengths()
+     * @param arcLength
+     * @return int
+     */
+    private int findSegmentAtArcLength(double[] arcLengths, double arcLength)
+    {
+        int low = 0;
+        int high = arcLengths.length - 1;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (arcLengths[middle] <= arcLength) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
     /**
      * Returns a general path built from all Bezier segments
      * @return Path2D.Double
      */
     public Path2D.Double getCurvePath() {
-        if (bezierStart == null) {
+        if (segments.isEmpty()) {
             return null;
         }
 
-        Path2D.Double curvePath = bezierStart.getCurvePath();
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            curvePath.append(bezierCurrent.getCurvePath(), true);
-            bezierCurrent = bezierCurrent.next();
+        Path2D.Double curvePath = segments.get(0).getCurvePath();
+        for (int j = 1; j < segments.size(); j++) {
+            curvePath.append(segments.get(j).getCurvePath(), true);
         }
 
         return curvePath;
@@ -382,36 +708,37 @@ public class BezierSegmentList {
      * @implNote Should not be called if only one bezier curve on image
      */
     public void removePoint(BezierControlPoint point) {
-        bezierCurrent = point.getParentBezier();
+        BezierSegment bezier = point.getParentBezier();
+        int index = bezier.getIndex();
     
         if (point.getPointType() == BezierPointType.END_POINT) { // True for the majority of cases
 
-            if (bezierCurrent == bezierStart) {
-                bezierStart = bezierCurrent.next();
-                bezierStart.point0.movePoint(bezierCurrent.point0.x, bezierCurrent.point0.y);
-                bezierStart.point1.movePoint(bezierCurrent.point1.x, bezierCurrent.point1.y);
+            if (index == 0) {
+                segments.remove(index);
+                BezierSegment start = segments.getFirst();
+                start.point0.movePoint(bezier.point0.getX(), bezier.point0.getY());
+                start.point1.movePoint(bezier.point1.getX(), bezier.point1.getY());
     
-            } else if (bezierCurrent == bezierEnd) {
-                bezierEnd = bezierCurrent.previous();
-                bezierEnd.setNext(null);
-                bezierEnd.movePoint(BezierPointType.END_POINT, bezierEnd.point3.x, bezierEnd.point3.y);
+            } else if (index == segments.size() - 1) {
+                segments.remove(index);
+                BezierSegment end = segments.getLast();
+                end.movePoint(BezierPointType.END_POINT, end.point3.getX(), end.point3.getY());
             } else {
-                BezierSegment previous = bezierCurrent.previous();
-                BezierSegment next = bezierCurrent.next();
-
-                previous.setNext(next);
-                next.setPrevious(previous);
+                segments.remove(index);
+                BezierSegment previous = segments.get(index - 1);
     
-                previous.movePoint(BezierPointType.END_POINT, previous.point3.x, previous.point3.y);
-                previous.movePoint(BezierPointType.CONTROL_2, previous.point2.x, previous.point2.y);
+                previous.movePoint(BezierPointType.END_POINT, previous.point3.getX(), previous.point3.getY());
+                previous.movePoint(BezierPointType.CONTROL_2, previous.point2.getX(), previous.point2.getY());
             }
             
         } else if (point.getPointType() == BezierPointType.START_POINT) {
-            //point must belong to bezierStart if it has a pointType of START_POINT
-            bezierStart = bezierCurrent.next();
-            bezierStart.setPrevious(null);
-            bezierStart.movePoint(BezierPointType.START_POINT,bezierStart.point0.x, bezierStart.point0.y); 
+            //point must belong to the first segment if it has a pointType of START_POINT
+            segments.remove(index);
+            BezierSegment start = segments.getFirst();
+            start.movePoint(BezierPointType.START_POINT, start.point0.getX(), start.point0.getY()); 
         }
+
+        controlPointIndex.rebuild(segments);
     }
     
     /**
@@ -435,10 +762,7 @@ public class BezierSegmentList {
                 coor[2][0], coor[2][1]
             );
     
-            oldBezier.insertAsNext(newBezier);
-            if (oldBezier.equals(bezierEnd)) { 
-                bezierEnd = newBezier; 
-            }
+            segments.insert(oldBezier.getIndex() + 1, newBezier);
             newPoint = newBezier.point3;
         } 
         // If end point...
@@ -450,47 +774,134 @@ public class BezierSegmentList {
                 (coor[0][0] + coor[0][0] - coor[1][0]), (coor[0][1] + coor[0][1] - coor[1][1]), 
                 coor[0][0], coor[0][1]
                 );
-            oldBezier.insertAsPrevious(newBezier);
-            if (oldBezier.equals(bezierStart)) { 
-                bezierStart = newBezier; 
-            }
+            segments.insert(oldBezier.getIndex(), newBezier);
             newPoint = newBezier.point0;
         }
         
+        controlPointIndex.rebuild(segments);
         return newPoint;
     }
 
     /**
-     * Drag the whole curve object to another position
+     * Moves one control point of a segment to a coordinate, without moving any other point. Used to
+     * put back points recorded by a CurveJournal.
+     * @param segment
+     * @param point 0 to 3, as the packed coordinates
+     * @param x
+     * @param y
+     */
+    void setControlPoint(int segment, int point, double x, double y) {
+        segments.get(segment).getControlPoint(point).movePoint(x, y);
+    }
+
+    /**
+     * Inserts a segment from packed coordinates, without moving any other segment's points. Used to
+     * put back segments recorded by a CurveJournal.
+     * @param index
+     * @param coordinates
+     * @param offset Where the segment's eight coordinates start
+     */
+    void insertSegment(int index, double[] coordinates, int offset) {
+        segments.insert(index, new BezierSegment(optionStore,
+            coordinates[offset], coordinates[offset + 1], coordinates[offset + 2], coordinates[offset + 3],
+            coordinates[offset + 4], coordinates[offset + 5], coordinates[offset + 6], coordinates[offset + 7]));
+        controlPointIndex.rebuild(segments);
+    }
+
+    /**
+     * Removes a segment, without moving any other segment's points. Used to take out segments
+     * recorded by a CurveJournal.
+     * @param index
+     */
+    void removeSegment(int index) {
+        segments.remove(index);
+        controlPointIndex.rebuild(segments);
+    }
+
+    /**
+     * Drag the whole curve object to another position. The overlay is moved straight away by the
+     * same distance, to the sub-pixel, until the next update draws it again.
      * @param overlay
      * @param x
      * @param y
      */
     public void dragTo(Overlay overlay, double x, double y) {
         if (overlay==null) return;
-        double dx = xTmp - x;
-        double dy = yTmp - y;
-        overlay.translate((int)dx, (int)dy);
-    
-        bezierStart.point0.movePoint((bezierStart.point0.x - dx), (bezierStart.point0.y - dy));
-        bezierStart.point1.movePoint((bezierStart.point1.x - dx), (bezierStart.point1.y - dy));
-        bezierStart.point2.movePoint((bezierStart.point2.x - dx), (bezierStart.point2.y - dy));
-        bezierStart.point3.movePoint((bezierStart.point3.x - dx), (bezierStart.point3.y - dy));
-    
-        bezierCurrent = bezierStart.next();
-        while (bezierCurrent != null) {
-            bezierCurrent.point0.movePoint((bezierCurrent.point0.x - dx), (bezierCurrent.point0.y - dy));
-            bezierCurrent.point1.movePoint((bezierCurrent.point1.x - dx), (bezierCurrent.point1.y - dy));
-            bezierCurrent.point2.movePoint((bezierCurrent.point2.x - dx), (bezierCurrent.point2.y - dy));
-            bezierCurrent.point3.movePoint((bezierCurrent.point3.x - dx), (bezierCurrent.point3.y - dy));
-            bezierCurrent = bezierCurrent.next();
-        }
+        double dx = x - xTmp;
+        double dy = y - yTmp;
+        overlay.translate(dx, dy);
+        translate(dx, dy);
         xTmp = x;
         yTmp = y;
     }
+
+    /**
+     * Moves the whole curve. The points are put at the distance moved so far from where they were when
+     * the curve started being moved, so a long drag does not build up rounding errors, and snapshots
+     * published while moving record the distance so their samples can be moved rather than taken again.
+     * @param dx
+     * @param dy
+     */
+    public void translate(double dx, double dy) {
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        // Anything else done to the curve starts a new move from where it is now
+        if (!isTranslating()) {
+            translationBase = publish();
+            translationX = 0.0;
+            translationY = 0.0;
+        }
+        translationX += dx;
+        translationY += dy;
+
+        for (int j = 0; j < segments.size(); j++) {
+            BezierSegment bezier = segments.get(j);
+            int base = j * SegmentStore.COORDINATES_PER_SEGMENT;
+            for (int point = 0; point < 4; point++) {
+                bezier.getControlPoint(point).movePoint(translationBase.getCoordinate(base + (2 * point)) + translationX,
+                    translationBase.getCoordinate(base + (2 * point) + 1) + translationY);
+            }
+        }
+        translationModifications = segments.getModifications();
+    }
+
+    /**
+     * Has the curve only been moved as a whole since it started being moved?
+     * @return boolean
+     */
+    private boolean isTranslating() {
+        return (translationBase != null && translationModifications == segments.getModifications()
+            && translationBase.getNumberSegments() == segments.size());
+    }
+
+    /**
+     * Makes the list hold a snapshot that is a translation of the curve it holds, moving the samples of
+     * the curve by the same distance, so nothing has to be sampled or measured again. The segments keep
+     * their versions, so the samples stay current, and kappa, the arc lengths and the adaptive t values
+     * cached for each segment are kept as none of them change when a curve is moved.
+     * @param curve Snapshot to hold, see CurveSnapshot.getTranslationFrom()
+     * @param sampledCurve Samples taken from the list, or null
+     * @param dx Distance the snapshot has moved from the curve held
+     * @param dy
+     */
+    void setTranslatedSegments(CurveSnapshot curve, SampledCurve sampledCurve, double dx, double dy) {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        for (int j = 0; j < segments.size(); j++) {
+            BezierSegment bezier = segments.get(j);
+            for (int point = 0; point < 4; point++) {
+                bezier.translatePoint(point, curve.getCoordinate((j * size) + (2 * point)), curve.getCoordinate((j * size) + (2 * point) + 1));
+            }
+        }
+        if (sampledCurve != null) {
+            sampledCurve.translate(dx, dy);
+        }
+    }
     
     /**
      * Is the coordinate given inside a control point? If so return the control point.
+     * Only the control points near the coordinate are tested, using the control point index.
      * @param testX
      * @param testY
      * @return
@@ -498,15 +909,8 @@ public class BezierSegmentList {
     public BezierControlPoint insideControlPoint(double testX, double testY) { 
         // The particular order in which points are checked is used by other parts 
         // of the programe, changing this will affect the behaver of other parts of the
-        // program in potentialy strage ways.
-        BezierControlPoint controlPoint = bezierStart.insideControlPoint(testX, testY);
-        bezierCurrent = bezierStart.next();
-
-        while (bezierCurrent != null && controlPoint == null) {
-            controlPoint = bezierCurrent.insideControlPoint(testX, testY);
-            bezierCurrent = bezierCurrent.next();
-        }
-
-        return controlPoint;
+        // program in potentialy strage ways. The index keeps this order: point1, point0, 
+        // point2 then point3 of each segment, from the start to the end of the list.
+        return controlPointIndex.find(testX, testY);
     }
 }
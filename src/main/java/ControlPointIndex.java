@@ -0,0 +1,218 @@
+import java.util.Arrays;
+
+/**
+ * Class: ControlPointIndex
+ * A uniform grid over the control points of a BezierSegmentList, used to find the control point
+ * under the mouse without testing every point. Each cell is as wide as the area a control point
+ * reacts to (four control point widths), so a hit can only come from the few cells around the
+ * test coordinate. The cells are held in a hash table of int chains, so moving a point or testing
+ * a coordinate does not allocate anything.
+ *
+ * Every point is given a rank so that, when several points are hit, the one found is the same one
+ * that walking the list from start to end and testing point1, point0, point2 then point3 of each
+ * segment would have found.
+ */
+public class ControlPointIndex {
+    private OptionsStore optionStore;
+    private int count = 0;
+    private int pointWidth = -1;
+    private int cellSize = 1;
+    private int bucketMask = 0;
+    private BezierControlPoint[] points = new BezierControlPoint[0];
+    private int[] ranks = new int[0];
+    private int[] cellX = new int[0];
+    private int[] cellY = new int[0];
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+    private int[] heads = new int[0];
+
+    /**
+     * Constructor
+     * @param optionStore
+     */
+    ControlPointIndex(OptionsStore optionStore) {
+        this.optionStore = optionStore;
+    }
+
+    /**
+     * Fills the index again from the segments. Must be called whenever segments are added or
+     * removed, as this changes the rank of the points.
+     * @param segments
+     */
+    void rebuild(SegmentStore segments) {
+        // Points of removed segments must no longer update the index
+        for (int i = 0; i < count; i++) {
+            points[i].index = null;
+            points[i] = null;
+        }
+
+        count = segments.size() * 4;
+        if (points.length < count) {
+            points = new BezierControlPoint[count];
+            ranks = new int[count];
+            cellX = new int[count];
+            cellY = new int[count];
+            next = new int[count];
+            previous = new int[count];
+        }
+
+        // The order here sets the priority when more than one point is hit
+        int slot = 0;
+        for (int j = 0; j < segments.size(); j++) {
+            BezierSegment bezier = segments.get(j);
+            slot = addPoint(bezier.point1, slot);
+            slot = addPoint(bezier.point0, slot);
+            slot = addPoint(bezier.point2, slot);
+            slot = addPoint(bezier.point3, slot);
+        }
+
+        pointWidth = optionStore.getControlPointWidth();
+        rehash();
+    }
+
+    /**
+     * Adds a point to the given slot, with the slot number used as its rank
+     * @param point
+     * @param slot
+     * @return int The next free slot
+     */
+    private int addPoint(BezierControlPoint point, int slot) {
+        points[slot] = point;
+        ranks[slot] = slot;
+        point.index = this;
+        point.indexSlot = slot;
+        return slot + 1;
+    }
+
+    /**
+     * Moves a point to the cell for its current coordinates. Called by the point when it is moved.
+     * @param point
+     */
+    void update(BezierControlPoint point) {
+        int slot = point.indexSlot;
+        int newCellX = getCell(point.getX());
+        int newCellY = getCell(point.getY());
+        if (newCellX == cellX[slot] && newCellY == cellY[slot]) {
+            return;
+        }
+
+        unlink(slot);
+        link(slot, newCellX, newCellY);
+    }
+
+    /**
+     * Returns the control point that the coordinate is inside. If more than one is, the one with
+     * the highest priority is returned.
+     * @param testX
+     * @param testY
+     * @return BezierControlPoint | null
+     */
+    BezierControlPoint find(double testX, double testY) {
+        if (count == 0) {
+            return null;
+        }
+
+        // Cells are sized from the control point width, so need to change with it
+        if (optionStore.getControlPointWidth() != pointWidth) {
+            pointWidth = optionStore.getControlPointWidth();
+            rehash();
+        }
+
+        // A point whose truncated coordinate is within (test - 2 * width, test + 2 * width] can be hit
+        int x = (int) testX;
+        int y = (int) testY;
+        int reach = 2 * pointWidth;
+        int firstCellX = Math.floorDiv(x - reach + 1, cellSize);
+        int lastCellX = Math.floorDiv(x + reach, cellSize);
+        int firstCellY = Math.floorDiv(y - reach + 1, cellSize);
+        int lastCellY = Math.floorDiv(y + reach, cellSize);
+
+        int best = -1;
+        for (int cx = firstCellX; cx <= lastCellX; cx++) {
+            for (int cy = firstCellY; cy <= lastCellY; cy++) {
+                for (int slot = heads[getBucket(cx, cy)]; slot != -1; slot = next[slot]) {
+                    if (cellX[slot] != cx || cellY[slot] != cy) {
+                        continue;
+                    }
+                    if ((best == -1 || ranks[slot] < ranks[best]) && points[slot].contains(testX, testY)) {
+                        best = slot;
+                    }
+                }
+            }
+        }
+
+        return (best == -1) ? null : points[best];
+    }
+
+    /**
+     * Sizes the cells from the control point width and places every point again
+     */
+    private void rehash() {
+        cellSize = Math.max(1, 4 * pointWidth);
+
+        int buckets = Integer.highestOneBit(Math.max(16, count * 2) - 1) << 1;
+        if (heads.length != buckets) {
+            heads = new int[buckets];
+        }
+        bucketMask = buckets - 1;
+        Arrays.fill(heads, -1);
+
+        for (int slot = 0; slot < count; slot++) {
+            link(slot, getCell(points[slot].getX()), getCell(points[slot].getY()));
+        }
+    }
+
+    /**
+     * Adds a slot to the front of the chain for a cell
+     * @param slot
+     * @param cx
+     * @param cy
+     */
+    private void link(int slot, int cx, int cy) {
+        int bucket = getBucket(cx, cy);
+        cellX[slot] = cx;
+        cellY[slot] = cy;
+        previous[slot] = -1;
+        next[slot] = heads[bucket];
+        if (heads[bucket] != -1) {
+            previous[heads[bucket]] = slot;
+        }
+        heads[bucket] = slot;
+    }
+
+    /**
+     * Removes a slot from the chain of its cell
+     * @param slot
+     */
+    private void unlink(int slot) {
+        if (previous[slot] != -1) {
+            next[previous[slot]] = next[slot];
+        } else {
+            heads[getBucket(cellX[slot], cellY[slot])] = next[slot];
+        }
+        if (next[slot] != -1) {
+            previous[next[slot]] = previous[slot];
+        }
+    }
+
+    /**
+     * Returns the cell a coordinate falls in. Coordinates are truncated the same way as in
+     * BezierControlPoint.contains().
+     * @param coordinate
+     * @return int
+     */
+    private int getCell(double coordinate) {
+        return Math.floorDiv((int) coordinate, cellSize);
+    }
+
+    /**
+     * Returns the hash table bucket for a cell
+     * @param cx
+     * @param cy
+     * @return int
+     */
+    private int getBucket(int cx, int cy) {
+        int hash = (cx * 73856093) ^ (cy * 19349663);
+        return (hash ^ (hash >>> 16)) & bucketMask;
+    }
+}
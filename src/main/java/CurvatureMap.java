@@ -0,0 +1,343 @@
+import java.awt.Color;
+import ij.gui.ImageRoi;
+import ij.process.ColorProcessor;
+
+/**
+ * Class: CurvatureMap
+ * Draws a curve coloured by its curvature into a single raster shown as an ImageRoi, instead of as a
+ * ROI for every sample, so the overlay holds one ROI however many samples there are. Pixels the curve
+ * does not cover are zero and are shown as transparent.
+ *
+ * The raster covers the curve with a margin and is kept between updates. The bounds of each segment as
+ * drawn are kept, and when segments change only the area covered by their old and new bounds is cleared
+ * and drawn again, by every segment that reaches into it, so the result is the same as drawing the whole
+ * curve. Changed segments are found by their X arrays, which the frame shares with the frame before
+ * for segments that were not sampled again or moved. A new raster is only made when the curve grows
+ * beyond it. When the curve has only been moved by whole pixels the raster is moved with it rather than
+ * drawn again. Runs on the event thread.
+ */
+public class CurvatureMap {
+    // Room left round the curve when a raster is made, so it can be edited a little without a new one
+    private static final int MARGIN = 32;
+    private static final int[] LUT = createLut();
+
+    private final OptionsStore optionStore;
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+    private int[] pixels = null;
+    private ColorProcessor processor = null;
+    private ImageRoi roi = null;
+    private double drawnMaximum;
+    private int drawnWidth;
+    private int drawnFrame = 0;
+    // The X array drawn for each segment, and its bounds as minimum X, minimum Y, maximum X and maximum Y (exclusive)
+    private double[][] drawnX = new double[0][];
+    private int[] segmentBounds = new int[0];
+
+    /**
+     * Constructor
+     * @param optionStore
+     */
+    CurvatureMap(OptionsStore optionStore) {
+        this.optionStore = optionStore;
+    }
+
+    /**
+     * Draws the segments of a frame that have changed since the last update
+     * @param frame Frame holding the samples of each segment
+     * @return ImageRoi The ROI showing the map, which is a new ROI only if a new raster was needed
+     */
+    public ImageRoi update(CurveFrame frame) {
+        double[][] kappa = frame.segmentKappa;
+        int numberSegments = kappa.length;
+        double maximum = optionStore.getCurvatureMapMaximum();
+        int lineWidth = optionStore.getCurvatureMapWidth();
+        double radius = getRadius(lineWidth);
+
+        int lastFrame = drawnFrame;
+        drawnFrame = frame.number;
+        if (roi != null && frame.movedFrom == lastFrame && lastFrame != 0 && numberSegments == drawnX.length
+                && maximum == drawnMaximum && lineWidth == drawnWidth
+                && frame.movedX == Math.rint(frame.movedX) && frame.movedY == Math.rint(frame.movedY)) {
+            move((int) frame.movedX, (int) frame.movedY, frame.segmentX);
+            return roi;
+        }
+
+        // Different options or a different number of segments mean the whole curve is drawn again
+        boolean all = (roi == null || numberSegments != drawnX.length || maximum != drawnMaximum || lineWidth != drawnWidth);
+        if (all) {
+            drawnX = new double[numberSegments][];
+            segmentBounds = new int[4 * numberSegments];
+            drawnMaximum = maximum;
+            drawnWidth = lineWidth;
+        }
+
+        int[] dirty = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        boolean changed = false;
+        for (int j = 0; j < numberSegments; j++) {
+            if (frame.segmentX[j] == drawnX[j]) {
+                continue;
+            }
+            if (!all) {
+                addBounds(dirty, segmentBounds, j);
+            }
+            setBounds(j, frame.segmentX[j], frame.segmentY[j], radius);
+            addBounds(dirty, segmentBounds, j);
+            drawnX[j] = frame.segmentX[j];
+            changed = true;
+        }
+        if (!changed) {
+            return roi;
+        }
+
+        int[] curve = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (int j = 0; j < numberSegments; j++) {
+            addBounds(curve, segmentBounds, j);
+        }
+
+        boolean newRaster = all || curve[0] < left || curve[1] < top || curve[2] > left + width || curve[3] > top + height;
+        if (newRaster) {
+            createRaster(curve);
+            dirty[0] = left;
+            dirty[1] = top;
+            dirty[2] = left + width;
+            dirty[3] = top + height;
+        } else {
+            clear(dirty);
+        }
+
+        for (int j = 0; j < numberSegments; j++) {
+            int b = 4 * j;
+            if (segmentBounds[b] < dirty[2] && segmentBounds[b + 2] > dirty[0] && segmentBounds[b + 1] < dirty[3] && segmentBounds[b + 3] > dirty[1]) {
+                drawSegment(frame.segmentX[j], frame.segmentY[j], kappa[j], radius, dirty);
+            }
+        }
+
+        // The ROI makes its image from the processor, so it has to be told the pixels have changed
+        if (!newRaster) {
+            roi.setProcessor(processor);
+        }
+        // The overlay may have been moved ahead of the update while dragging, so the ROI is put back over the raster
+        roi.setLocation(left, top);
+        return roi;
+    }
+
+    /**
+     * Moves the raster by a whole number of pixels, for a curve that has only been moved. Drawing the
+     * moved curve would give the same pixels, moved.
+     * @param dx
+     * @param dy
+     * @param segmentX X arrays of the moved segments
+     */
+    private void move(int dx, int dy, double[][] segmentX) {
+        left += dx;
+        top += dy;
+        for (int j = 0; j < drawnX.length; j++) {
+            int b = 4 * j;
+            if (segmentBounds[b + 2] > segmentBounds[b]) {
+                segmentBounds[b] += dx;
+                segmentBounds[b + 1] += dy;
+                segmentBounds[b + 2] += dx;
+                segmentBounds[b + 3] += dy;
+            }
+            drawnX[j] = segmentX[j];
+        }
+        roi.setLocation(left, top);
+    }
+
+    /**
+     * Returns the ROI showing the map, null before the first update
+     * @return ImageRoi | null
+     */
+    public ImageRoi getRoi() {
+        return roi;
+    }
+
+    /**
+     * Makes a new raster covering the bounds with a margin all round
+     * @param bounds
+     */
+    private void createRaster(int[] bounds) {
+        left = bounds[0] - MARGIN;
+        top = bounds[1] - MARGIN;
+        width = (bounds[2] - bounds[0]) + (2 * MARGIN);
+        height = (bounds[3] - bounds[1]) + (2 * MARGIN);
+        pixels = new int[width * height];
+        processor = new ColorProcessor(width, height, pixels);
+        roi = new ImageRoi(left, top, processor);
+        roi.setZeroTransparent(true);
+        roi.setName("Curvature Map");
+    }
+
+    /**
+     * Sets the pixels within an area of the raster to zero
+     * @param area Minimum X, minimum Y, maximum X and maximum Y (exclusive), in image pixels
+     */
+    private void clear(int[] area) {
+        for (int py = area[1]; py < area[3]; py++) {
+            int row = (py - top) * width - left;
+            for (int px = area[0]; px < area[2]; px++) {
+                pixels[row + px] = 0;
+            }
+        }
+    }
+
+    /**
+     * Draws a segment as a line of the map's width, each piece between two samples coloured by the mean
+     * curvature of the samples. Only pixels within the clip area are drawn.
+     * @param x
+     * @param y
+     * @param kappa
+     * @param radius
+     * @param clip Minimum X, minimum Y, maximum X and maximum Y (exclusive), in image pixels
+     */
+    private void drawSegment(double[] x, double[] y, double[] kappa, double radius, int[] clip) {
+        if (x.length == 1) {
+            stamp(x[0], y[0], radius, getColour(kappa[0]), clip);
+            return;
+        }
+
+        for (int i = 0; i + 1 < x.length; i++) {
+            int colour = getColour((kappa[i] + kappa[i + 1]) / 2.0);
+            double dx = x[i + 1] - x[i];
+            double dy = y[i + 1] - y[i];
+            // Discs are stamped at most half a pixel apart, so the line has no gaps
+            int steps = Math.max(1, (int) Math.ceil(Math.sqrt((dx * dx) + (dy * dy)) * 2.0));
+            for (int s = 0; s <= steps; s++) {
+                double f = (double) s / steps;
+                stamp(x[i] + (dx * f), y[i] + (dy * f), radius, colour, clip);
+            }
+        }
+    }
+
+    /**
+     * Sets the pixels whose centres are within the radius of a point
+     * @param cx
+     * @param cy
+     * @param radius
+     * @param colour
+     * @param clip
+     */
+    private void stamp(double cx, double cy, double radius, int colour, int[] clip) {
+        if (Double.isNaN(cx) || Double.isNaN(cy)) {
+            return;
+        }
+        int minX = Math.max((int) Math.floor(cx - radius), clip[0]);
+        int maxX = Math.min((int) Math.floor(cx + radius) + 1, clip[2]);
+        int minY = Math.max((int) Math.floor(cy - radius), clip[1]);
+        int maxY = Math.min((int) Math.floor(cy + radius) + 1, clip[3]);
+        double radius2 = radius * radius;
+        for (int py = minY; py < maxY; py++) {
+            double ddy = (py + 0.5) - cy;
+            int row = (py - top) * width - left;
+            for (int px = minX; px < maxX; px++) {
+                double ddx = (px + 0.5) - cx;
+                if ((ddx * ddx) + (ddy * ddy) <= radius2) {
+                    pixels[row + px] = colour;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the bounds of a segment's samples, widened by the radius the line is drawn with
+     * @param segment
+     * @param x
+     * @param y
+     * @param radius
+     */
+    private void setBounds(int segment, double[] x, double[] y, double radius) {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < x.length; i++) {
+            if (Double.isNaN(x[i]) || Double.isNaN(y[i])) {
+                continue;
+            }
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        int b = 4 * segment;
+        if (minX > maxX) {
+            // Nothing to draw, so bounds that hold nothing
+            segmentBounds[b] = 0;
+            segmentBounds[b + 1] = 0;
+            segmentBounds[b + 2] = 0;
+            segmentBounds[b + 3] = 0;
+            return;
+        }
+        segmentBounds[b] = (int) Math.floor(minX - radius);
+        segmentBounds[b + 1] = (int) Math.floor(minY - radius);
+        segmentBounds[b + 2] = (int) Math.floor(maxX + radius) + 1;
+        segmentBounds[b + 3] = (int) Math.floor(maxY + radius) + 1;
+    }
+
+    /**
+     * Widens an area to take in the bounds of a segment, if it has any
+     * @param area
+     * @param bounds
+     * @param segment
+     */
+    private static void addBounds(int[] area, int[] bounds, int segment) {
+        int b = 4 * segment;
+        if (bounds[b + 2] <= bounds[b]) {
+            return;
+        }
+        area[0] = Math.min(area[0], bounds[b]);
+        area[1] = Math.min(area[1], bounds[b + 1]);
+        area[2] = Math.max(area[2], bounds[b + 2]);
+        area[3] = Math.max(area[3], bounds[b + 3]);
+    }
+
+    /**
+     * Returns the radius of the discs a line of the given width is drawn with. Thin lines are given a
+     * radius that always reaches the centre of a pixel, so they have no gaps.
+     * @param lineWidth
+     * @return double
+     */
+    private static double getRadius(int lineWidth) {
+        return Math.max(lineWidth / 2.0, 0.75);
+    }
+
+    /**
+     * Returns the colour for a curvature. Curvature from zero to the maximum goes through the colour table.
+     * @param kappa
+     * @return int RGB
+     */
+    private int getColour(double kappa) {
+        double fraction = Math.abs(kappa) / drawnMaximum;
+        if (Double.isNaN(fraction)) {
+            fraction = 0.0;
+        }
+        int index = (int) Math.min(LUT.length - 1, fraction * (LUT.length - 1));
+        return LUT[index];
+    }
+
+    /**
+     * Makes a colour table going from blue for straight, through cyan, green and yellow, to red for tight
+     * bends. No entry is black, as black pixels are transparent.
+     * @return int[]
+     */
+    private static int[] createLut() {
+        Color[] stops = {Color.BLUE, Color.CYAN, Color.GREEN, Color.YELLOW, Color.RED};
+        int[] lut = new int[256];
+        for (int i = 0; i < lut.length; i++) {
+            double position = (double) i / (lut.length - 1) * (stops.length - 1);
+            int stop = Math.min((int) position, stops.length - 2);
+            double f = position - stop;
+            Color from = stops[stop];
+            Color to = stops[stop + 1];
+            int red = (int) Math.round(from.getRed() + (to.getRed() - from.getRed()) * f);
+            int green = (int) Math.round(from.getGreen() + (to.getGreen() - from.getGreen()) * f);
+            int blue = (int) Math.round(from.getBlue() + (to.getBlue() - from.getBlue()) * f);
+            lut[i] = (red << 16) | (green << 8) | blue;
+        }
+        return lut;
+    }
+}
@@ -0,0 +1,90 @@
+import java.awt.Color;
+import ij.gui.Plot;
+import ij.gui.PlotWindow;
+
+/**
+ * Class: CurvatureProfile
+ * A plot window of kappa against position along the active curve, kept up to date while the curve
+ * is edited. The position of a sample is its segment number plus its t, so the samples of a segment
+ * only move in the plot when that segment changes. Each segment is its own series, drawn in
+ * alternating colours so the joins can be seen.
+ *
+ * The same Plot is kept between updates. Only the series of segments whose samples have changed are
+ * replaced, found by comparing the profile arrays of the frame with the ones already plotted, as the
+ * frame shares the arrays of segments that were not sampled again. A new Plot is only made when the
+ * number of segments changes. Runs on the event thread.
+ */
+public class CurvatureProfile {
+    private static final String TITLE = "Curvature Profile";
+    private static final Color[] SEGMENT_COLOURS = {Color.BLUE, new Color(0, 160, 0)};
+
+    private Plot plot = null;
+    private PlotWindow window = null;
+    // The kappa array plotted for each segment
+    private double[][] plottedKappa = new double[0][];
+
+    /**
+     * Shows the curvature profile of a frame. Nothing is done if the frame has no profile.
+     * @param frame
+     * @return boolean False if the window has been closed, so the profile is no longer wanted
+     */
+    public boolean update(CurveFrame frame) {
+        if (window != null && window.isClosed()) {
+            return false;
+        }
+        if (frame == null || frame.segmentKappa == null) {
+            return true;
+        }
+
+        long start = CurveMetrics.start();
+        double[][] kappa = frame.segmentKappa;
+        if (plot == null || kappa.length != plottedKappa.length) {
+            createPlot(frame);
+        } else {
+            boolean changed = false;
+            for (int j = 0; j < kappa.length; j++) {
+                if (kappa[j] != plottedKappa[j]) {
+                    plot.setColor(getSegmentColour(j));
+                    plot.replace(j, "line", frame.segmentPositions[j], kappa[j]);
+                    plottedKappa[j] = kappa[j];
+                    changed = true;
+                }
+            }
+            if (changed) {
+                plot.setLimitsToFit(true);
+            }
+        }
+        CurveMetrics.PROFILE.stop(start);
+        return true;
+    }
+
+    /**
+     * Makes a new plot with a series for every segment, and shows it in the window
+     * @param frame
+     */
+    private void createPlot(CurveFrame frame) {
+        double[][] kappa = frame.segmentKappa;
+        plot = new Plot(TITLE, "Position (segment + t)", "Curvature (1/pixels)");
+        plot.setLineWidth(1.5f);
+        for (int j = 0; j < kappa.length; j++) {
+            plot.setColor(getSegmentColour(j));
+            plot.add("line", frame.segmentPositions[j], kappa[j]);
+        }
+        plottedKappa = kappa.clone();
+
+        if (window == null) {
+            window = plot.show();
+        } else {
+            window.drawPlot(plot);
+        }
+    }
+
+    /**
+     * Returns the colour of a segment's series
+     * @param segment
+     * @return Color
+     */
+    private static Color getSegmentColour(int segment) {
+        return SEGMENT_COLOURS[segment % SEGMENT_COLOURS.length];
+    }
+}
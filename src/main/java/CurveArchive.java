@@ -0,0 +1,299 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class: CurveArchive
+ * A compact binary file holding any number of saved curves, read through a memory mapped buffer
+ * so that any curve can be read without reading the ones before it. All values are big endian.
+ *
+ * File header (32 bytes):
+ * - int magic "PCRV", int version, int number of curves, int header size
+ * - long offset of the index block, long reserved
+ * Curve records, each starting on an 8 byte boundary:
+ * - int number of segments, int probe number, int adaptive maximum depth, int flags (bit 0 = adaptive sampling)
+ * - double adaptive tolerance
+ * - int length of the image id, the image id as UTF-8, zero padded so the record so far is a multiple of 8 bytes
+ * - 8 doubles per segment: x0, y0, x1, y1, x2, y2, x3, y3
+ * Index block:
+ * - long offset of each curve record, in order
+ *
+ * The index is written last, so curves can be added one at a time without holding them all in memory.
+ */
+public class CurveArchive implements Closeable {
+    public static final String EXTENSION = ".pcurves";
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x50435256; // "PCRV"
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 28;
+    private static final int FLAG_ADAPTIVE = 1;
+
+    private FileChannel channel;
+    private int curveCount;
+    private MappedByteBuffer index;
+    private MappedByteBuffer data; // Whole curve area, null if too large to map at once
+
+    /**
+     * Opens an archive for reading. Only the header and index are checked here; curves are
+     * read from the mapped file when asked for.
+     * @param file
+     * @return CurveArchive
+     * @throws IOException If the file can not be read or is not an archive
+     */
+    public static CurveArchive open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new CurveArchive(channel, file.getName());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param channel
+     * @param name File name for error messages
+     * @throws IOException
+     */
+    private CurveArchive(FileChannel channel, String name) throws IOException {
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            throw new IOException(name + " is not a curve archive");
+        }
+
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(name + " is not a curve archive");
+        }
+        if (header.getInt(4) > VERSION) {
+            throw new IOException(name + " is version " + header.getInt(4) + " which is newer than this plugin can read");
+        }
+
+        curveCount = header.getInt(8);
+        int headerSize = header.getInt(12);
+        long indexOffset = header.getLong(16);
+        if (curveCount < 0 || headerSize < HEADER_SIZE || indexOffset < headerSize
+            || indexOffset + (8L * curveCount) > size || 8L * curveCount > Integer.MAX_VALUE) {
+            throw new IOException(name + " is damaged");
+        }
+
+        index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, 8L * curveCount);
+        if (indexOffset <= Integer.MAX_VALUE) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, indexOffset);
+        }
+    }
+
+    /**
+     * Returns the number of curves held
+     * @return int
+     */
+    public int size() {
+        return curveCount;
+    }
+
+    /**
+     * Reads one curve. Safe to call from several threads at once.
+     * @param i
+     * @return CurveRecord
+     * @throws IOException If the curve is damaged or has no segments
+     */
+    public CurveRecord read(int i) throws IOException {
+        if (i < 0 || i >= curveCount) {
+            throw new IndexOutOfBoundsException("Curve " + i + " of " + curveCount);
+        }
+
+        long offset = index.getLong(i * 8);
+        ByteBuffer buffer = data;
+        int base = (int) offset;
+        if (buffer == null || offset + RECORD_HEADER_SIZE > buffer.capacity()) {
+            // The archive is too large to map in one piece, so just map this record
+            ByteBuffer recordHeader = channel.map(FileChannel.MapMode.READ_ONLY, offset, RECORD_HEADER_SIZE);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, getRecordSize(recordHeader, 0));
+            base = 0;
+        }
+
+        int segmentCount = buffer.getInt(base);
+        int imageIdLength = buffer.getInt(base + 24);
+        if (segmentCount < 0 || imageIdLength < 0 || base + getRecordSize(buffer, base) > buffer.capacity()) {
+            throw new IOException("Curve " + i + " is damaged");
+        }
+        if (segmentCount == 0) {
+            throw new IOException("Curve " + i + ": no segments found");
+        }
+
+        byte[] imageId = new byte[imageIdLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(base + RECORD_HEADER_SIZE);
+        view.get(imageId);
+
+        double[] coordinates = new double[segmentCount * SegmentStore.COORDINATES_PER_SEGMENT];
+        view.position(base + (int) padTo8(RECORD_HEADER_SIZE + imageIdLength));
+        view.asDoubleBuffer().get(coordinates);
+
+        OptionsStore options = new OptionsStore();
+        options.setProbeNumber(buffer.getInt(base + 4));
+        options.setAdaptiveMaximumDepth(buffer.getInt(base + 8));
+        options.setAdaptiveSampling((buffer.getInt(base + 12) & FLAG_ADAPTIVE) != 0);
+        options.setAdaptiveTolerance(buffer.getDouble(base + 16));
+        return new CurveRecord(new String(imageId, StandardCharsets.UTF_8), options, coordinates);
+    }
+
+    /**
+     * Closes the file. Curves can not be read after this.
+     */
+    public void close() throws IOException {
+        index = null;
+        data = null;
+        channel.close();
+    }
+
+    /**
+     * Returns the size in bytes of the record starting at base
+     * @param buffer
+     * @param base
+     * @return int
+     * @throws IOException If the record is too large to be valid
+     */
+    private static int getRecordSize(ByteBuffer buffer, int base) throws IOException {
+        long size = padTo8(RECORD_HEADER_SIZE + (long) buffer.getInt(base + 24))
+            + (8L * SegmentStore.COORDINATES_PER_SEGMENT * buffer.getInt(base));
+        if (size < RECORD_HEADER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException("Curve record is damaged");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Rounds up to a multiple of 8
+     * @param length
+     * @return long
+     */
+    private static long padTo8(long length) {
+        return (length + 7L) & ~7L;
+    }
+
+    /**
+     * Writes a list of curves as an archive
+     * @param file
+     * @param curves
+     * @throws IOException
+     */
+    public static void write(File file, List<CurveRecord> curves) throws IOException {
+        try (Writer writer = create(file)) {
+            for (CurveRecord curve : curves) {
+                writer.add(curve);
+            }
+        }
+    }
+
+    /**
+     * Creates a new archive, replacing any file already there, that curves can be added to one at a time
+     * @param file
+     * @return Writer
+     * @throws IOException
+     */
+    public static Writer create(File file) throws IOException {
+        return new Writer(FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Adds curves to a new archive. The index and header are written when it is closed.
+     */
+    public static class Writer implements Closeable {
+        private FileChannel channel;
+        private long position = HEADER_SIZE;
+        private long[] offsets = new long[64];
+        private int count = 0;
+
+        /**
+         * Constructor
+         * @param channel
+         * @throws IOException
+         */
+        private Writer(FileChannel channel) throws IOException {
+            this.channel = channel;
+            // Space for the header, which is filled in on close
+            writeFully(ByteBuffer.allocate(HEADER_SIZE), 0);
+        }
+
+        /**
+         * Adds a curve to the end of the archive
+         * @param curve
+         * @throws IOException
+         */
+        public void add(CurveRecord curve) throws IOException {
+            byte[] imageId = curve.imageId.getBytes(StandardCharsets.UTF_8);
+            long coordinatesStart = padTo8(RECORD_HEADER_SIZE + imageId.length);
+            long size = coordinatesStart + (8L * curve.getNumberSegments() * SegmentStore.COORDINATES_PER_SEGMENT);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Curve is too large to save");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            buffer.putInt(curve.getNumberSegments());
+            buffer.putInt(curve.probeNumber);
+            buffer.putInt(curve.adaptiveMaximumDepth);
+            buffer.putInt(curve.adaptiveSampling ? FLAG_ADAPTIVE : 0);
+            buffer.putDouble(curve.adaptiveTolerance);
+            buffer.putInt(imageId.length);
+            buffer.put(imageId);
+            buffer.position((int) coordinatesStart);
+            buffer.asDoubleBuffer().put(curve.coordinates, 0, curve.getNumberSegments() * SegmentStore.COORDINATES_PER_SEGMENT);
+            buffer.rewind();
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = position;
+            writeFully(buffer, position);
+            position += size;
+        }
+
+        /**
+         * Writes the index and header and closes the file
+         */
+        public void close() throws IOException {
+            try {
+                ByteBuffer indexBuffer = ByteBuffer.allocate(8 * count);
+                indexBuffer.asLongBuffer().put(offsets, 0, count);
+                writeFully(indexBuffer, position);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(count);
+                header.putInt(HEADER_SIZE);
+                header.putLong(position);
+                header.putLong(0L);
+                header.rewind();
+                writeFully(header, 0);
+            } finally {
+                channel.close();
+            }
+        }
+
+        /**
+         * Writes the whole buffer at the position
+         * @param buffer
+         * @param at
+         * @throws IOException
+         */
+        private void writeFully(ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+        }
+    }
+}
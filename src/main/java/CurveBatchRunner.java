@@ -0,0 +1,434 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.io.FileInfo;
+import ij.io.FileOpener;
+import ij.io.TiffDecoder;
+import ij.measure.Calibration;
+
+/**
+ * Class: CurveBatchRunner
+ * Measures saved curves without any user interface: either every curve definition in a folder,
+ * or every curve in a CurveArchive or CurveJson file. Each curve is loaded with the calibration of
+ * its image (read from the header of a TIFF, without decoding the pixels), evaluated, and its
+ * point(s) of maximum curvature found on a pool of worker threads, one per core. The results are written in order to a single results table (CSV) for the run. Only a fixed number of curves are in flight at once: once that
+ * many have been handed to the workers, the next is not started until the oldest has been written,
+ * so memory use does not grow with the number of images.
+ */
+public class CurveBatchRunner {
+    // Image types looked for next to a curve definition with the same name
+    private static final String[] IMAGE_EXTENSIONS = {".tif", ".tiff", ".png", ".jpg", ".jpeg", ".gif", ".bmp"};
+    // Images that are not TIFFs are opened to read their calibration, but only this many at once
+    private static final int MAXIMUM_IMAGES_OPEN = 2;
+    private OptionsStore optionsStore;
+    private int workers;
+    private int maximumInFlight;
+    private final Semaphore imagesOpen = new Semaphore(MAXIMUM_IMAGES_OPEN);
+
+    /**
+     * Constructor
+     * @param optionsStore
+     * @param workers Number of worker threads, 0 for one per core
+     */
+    public CurveBatchRunner(OptionsStore optionsStore, int workers) {
+        this.optionsStore = optionsStore;
+        this.workers = (workers > 0) ? workers : Runtime.getRuntime().availableProcessors();
+        this.maximumInFlight = this.workers * 2;
+    }
+
+    /**
+     * Headless entry point. The input is a folder of curve definitions, a curve archive or a JSON file.
+     * Usage: CurveBatchRunner input [results.csv] [threads]
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: CurveBatchRunner input [results.csv] [threads]");
+            System.exit(1);
+        }
+
+        File input = new File(args[0]);
+        File folder = input.isDirectory() ? input : input.getAbsoluteFile().getParentFile();
+        File results = (args.length > 1) ? new File(args[1]) : new File(folder, "Palaeo_Curve_Results.csv");
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+
+        try {
+            int measured = new CurveBatchRunner(new OptionsStore(), threads).run(input, results);
+            System.out.println("Measured " + measured + " curves, results written to " + results.getPath());
+        } catch (IOException | InterruptedException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Measures every curve in the input and writes the results table. Images are looked for in the
+     * folder, or the folder the file is in.
+     * @param input Folder of curve definitions, curve archive or JSON file
+     * @param results
+     * @return int Number of curves measured without an error
+     * @throws IOException If the input can not be read or the results can not be written
+     * @throws InterruptedException
+     */
+    public int run(File input, File results) throws IOException, InterruptedException {
+        String name = input.getName().toLowerCase();
+        if (input.isDirectory()) {
+            File[] curveFiles = input.listFiles((dir, fileName) -> fileName.toLowerCase().endsWith(CurveFile.EXTENSION));
+            if (curveFiles == null) {
+                throw new IOException("Can not read the folder " + input.getPath());
+            }
+            Arrays.sort(curveFiles);
+            return run(new FolderSource(curveFiles), input, results);
+        } else if (name.endsWith(CurveArchive.EXTENSION)) {
+            try (CurveArchive archive = CurveArchive.open(input)) {
+                return run(new ArchiveSource(archive, input.getName()), input.getAbsoluteFile().getParentFile(), results);
+            }
+        } else if (name.endsWith(CurveJson.EXTENSION)) {
+            return run(new ListSource(CurveJson.read(input), input.getName()), input.getAbsoluteFile().getParentFile(), results);
+        }
+        throw new IOException(input.getName() + " is not a folder, curve archive or JSON file");
+    }
+
+    /**
+     * Runs the pipeline over the curves of a source
+     * @param source
+     * @param imageFolder Folder the images are in
+     * @param results
+     * @return int Number of curves measured without an error
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private int run(CurveSource source, File imageFolder, File results) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "Palaeo Curve batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int measured = 0;
+        ArrayDeque<Future<Measurement>> inFlight = new ArrayDeque<Future<Measurement>>();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(results), StandardCharsets.UTF_8))) {
+            writeHeader(writer);
+
+            for (int i = 0; i < source.size(); i++) {
+                // Wait for the oldest curve to be written before starting another
+                if (inFlight.size() >= maximumInFlight) {
+                    measured += writeMeasurement(writer, inFlight.removeFirst());
+                }
+
+                final int curve = i;
+                inFlight.addLast(executor.submit(() -> measure(source, curve, imageFolder)));
+                IJ.showProgress(i, source.size());
+            }
+
+            while (!inFlight.isEmpty()) {
+                measured += writeMeasurement(writer, inFlight.removeFirst());
+            }
+        } finally {
+            executor.shutdownNow();
+            IJ.showProgress(1.0);
+        }
+
+        return measured;
+    }
+
+    /**
+     * Loads, evaluates and finds the maximum curvature of one curve. Runs on a worker thread.
+     * Any error is kept in the measurement rather than stopping the run.
+     * @param source
+     * @param curve Index of the curve in the source
+     * @param imageFolder
+     * @return Measurement
+     */
+    private Measurement measure(CurveSource source, int curve, File imageFolder) {
+        Measurement measurement = new Measurement();
+        measurement.curveName = source.getName(curve);
+
+        try {
+            CurveRecord record = source.read(curve);
+            if (record.getNumberSegments() == 0) {
+                throw new IOException("no segments found");
+            }
+            BezierSegmentList bezierList = record.createSegmentList(optionsStore);
+
+            File imageFile = findImage(imageFolder, record.getImageId(), measurement.curveName);
+            if (imageFile != null) {
+                measurement.imageName = imageFile.getName();
+                Calibration calibration = readCalibration(imageFile);
+                measurement.pixelWidth = calibration.pixelWidth;
+                measurement.unit = calibration.getUnit();
+            }
+
+            measurement.segments = bezierList.getNumberSegments();
+            measurement.arcLength = bezierList.getArcLength();
+            measurement.maximumCurvaturePoints = bezierList.getMaximumCurvaturePoints(BezierSegmentList.MINIMUM_KAPPA);
+            measurement.positions = new double[measurement.maximumCurvaturePoints.length];
+            for (int i = 0; i < measurement.positions.length; i++) {
+                double[] point = measurement.maximumCurvaturePoints[i];
+                measurement.positions[i] = bezierList.getArcLengthFraction((int) point[2], point[3]);
+            }
+        } catch (IOException | RuntimeException e) {
+            measurement.error = (e.getMessage() != null) ? e.getMessage() : e.toString();
+        }
+
+        return measurement;
+    }
+
+    /**
+     * Returns the calibration of an image. Only the header of a TIFF is read. Other images have to be
+     * opened, decoding every pixel, so however many workers there are only a few are open at once.
+     * @param imageFile
+     * @return Calibration
+     * @throws IOException If the image can not be read
+     */
+    private Calibration readCalibration(File imageFile) throws IOException {
+        String name = imageFile.getName().toLowerCase();
+        if (name.endsWith(".tif") || name.endsWith(".tiff")) {
+            FileInfo[] info = new TiffDecoder(imageFile.getAbsoluteFile().getParent() + File.separator, imageFile.getName()).getTiffInfo();
+            if (info != null && info.length > 0) {
+                FileInfo fileInfo = info[0];
+                // ImageJ keeps the unit in the image description rather than the resolution tags
+                if (fileInfo.description != null) {
+                    new FileOpener(fileInfo).decodeDescriptionString(fileInfo);
+                }
+                Calibration calibration = new Calibration();
+                if (fileInfo.unit != null && fileInfo.pixelWidth > 0.0) {
+                    calibration.pixelWidth = fileInfo.pixelWidth;
+                    calibration.setUnit(fileInfo.unit);
+                }
+                return calibration;
+            }
+        }
+
+        imagesOpen.acquireUninterruptibly();
+        try {
+            ImagePlus image = IJ.openImage(imageFile.getPath());
+            if (image == null) {
+                throw new IOException("Can not open " + imageFile.getName());
+            }
+
+            // Only the calibration is needed, so let the pixels go straight away
+            Calibration calibration = image.getCalibration();
+            image.flush();
+            return calibration;
+        } finally {
+            imagesOpen.release();
+        }
+    }
+
+    /**
+     * Returns the image a curve belongs to. This is the image named by the curve if it has one,
+     * otherwise an image with the same name as the curve definition file. The image must be inside
+     * the image folder, so a name with .. or an absolute path is rejected.
+     * @param imageFolder
+     * @param imageId Image named by the curve, empty if none
+     * @param curveName
+     * @return File | null
+     * @throws IOException If the name leads outside the image folder
+     */
+    private static File findImage(File imageFolder, String imageId, String curveName) throws IOException {
+        if (!imageId.isEmpty()) {
+            File imageFile = getFileInFolder(imageFolder, imageId);
+            return imageFile.isFile() ? imageFile : null;
+        }
+
+        if (!curveName.toLowerCase().endsWith(CurveFile.EXTENSION)) {
+            return null;
+        }
+        String baseName = curveName.substring(0, curveName.length() - CurveFile.EXTENSION.length());
+        for (String extension : IMAGE_EXTENSIONS) {
+            File imageFile = getFileInFolder(imageFolder, baseName + extension);
+            if (imageFile.isFile()) {
+                return imageFile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a file in a folder, after resolving any links and .. in its name
+     * @param folder
+     * @param name
+     * @return File
+     * @throws IOException If the name is absolute or the file is not inside the folder
+     */
+    private static File getFileInFolder(File folder, String name) throws IOException {
+        File canonicalFolder = folder.getCanonicalFile();
+        File file = new File(canonicalFolder, name).getCanonicalFile();
+        if (new File(name).isAbsolute() || !file.toPath().startsWith(canonicalFolder.toPath())
+            || file.equals(canonicalFolder)) {
+            throw new IOException("The image " + name + " is not inside " + folder.getPath());
+        }
+        return file;
+    }
+
+    /**
+     * Writes the column headings of the results table
+     * @param writer
+     * @throws IOException
+     */
+    private static void writeHeader(Writer writer) throws IOException {
+        writer.write("Curve,Image,Segments,Length (pixels),Length,Unit,Maximum Curve,X,Y,Position (%),Kappa,Error\n");
+    }
+
+    /**
+     * Waits for a curve to finish and writes its rows, one for each point of maximum curvature
+     * @param writer
+     * @param future
+     * @return int 1 if the curve was measured, 0 if it had an error
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static int writeMeasurement(Writer writer, Future<Measurement> future) throws IOException, InterruptedException {
+        Measurement measurement;
+        try {
+            measurement = future.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        String curve = escape(measurement.curveName) + "," + escape(measurement.imageName) + ",";
+        if (measurement.error != null) {
+            writer.write(curve + ",,,,,,,,," + escape(measurement.error) + "\n");
+            return 0;
+        }
+
+        String length = measurement.segments + "," + measurement.arcLength + ","
+            + (measurement.arcLength * measurement.pixelWidth) + "," + escape(measurement.unit) + ",";
+        if (measurement.maximumCurvaturePoints.length == 0) {
+            writer.write(curve + length + ",,,,,\n");
+        }
+        for (int i = 0; i < measurement.maximumCurvaturePoints.length; i++) {
+            double[] point = measurement.maximumCurvaturePoints[i];
+            writer.write(curve + length + (i + 1) + "," + point[0] + "," + point[1] + ","
+                + (measurement.positions[i] * 100) + "," + point[4] + ",\n");
+        }
+        return 1;
+    }
+
+    /**
+     * Quotes a value for the CSV file if needed
+     * @param value
+     * @return String
+     */
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Where the curves of a run come from. read() is called from the worker threads.
+     */
+    private interface CurveSource {
+        int size();
+        String getName(int i);
+        CurveRecord read(int i) throws IOException;
+    }
+
+    /**
+     * Curve definition files, read when measured
+     */
+    private class FolderSource implements CurveSource {
+        private File[] curveFiles;
+
+        FolderSource(File[] curveFiles) {
+            this.curveFiles = curveFiles;
+        }
+
+        public int size() {
+            return curveFiles.length;
+        }
+
+        public String getName(int i) {
+            return curveFiles[i].getName();
+        }
+
+        public CurveRecord read(int i) throws IOException {
+            return new CurveRecord(null, optionsStore, CurveFile.readCoordinates(curveFiles[i]));
+        }
+    }
+
+    /**
+     * Curves in an archive, each read from the mapped file only when measured
+     */
+    private static class ArchiveSource implements CurveSource {
+        private CurveArchive archive;
+        private String name;
+
+        ArchiveSource(CurveArchive archive, String name) {
+            this.archive = archive;
+            this.name = name;
+        }
+
+        public int size() {
+            return archive.size();
+        }
+
+        public String getName(int i) {
+            return name + "#" + (i + 1);
+        }
+
+        public CurveRecord read(int i) throws IOException {
+            return archive.read(i);
+        }
+    }
+
+    /**
+     * Curves already read, from a JSON file
+     */
+    private static class ListSource implements CurveSource {
+        private List<CurveRecord> curves;
+        private String name;
+
+        ListSource(List<CurveRecord> curves, String name) {
+            this.curves = curves;
+            this.name = name;
+        }
+
+        public int size() {
+            return curves.size();
+        }
+
+        public String getName(int i) {
+            return name + "#" + (i + 1);
+        }
+
+        public CurveRecord read(int i) {
+            return curves.get(i);
+        }
+    }
+
+    /**
+     * The results for one curve
+     */
+    private static class Measurement {
+        String curveName;
+        String imageName;
+        double pixelWidth = 1.0;
+        String unit = "pixel";
+        int segments;
+        double arcLength;
+        double[][] maximumCurvaturePoints;
+        double[] positions;
+        String error;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class: CurveCache
+ * Keeps the sampled geometry and curvature of the most recently analysed curves, up to a total
+ * number of samples. Every curve analysed or reused is marked as used; when the total goes over the
+ * limit the analysis of the curves used longest ago is released, and is done again from scratch if
+ * they are shown again. The curves just used are never released, so the limit can be exceeded by
+ * a single image with more samples than it allows.
+ *
+ * The limit is 500,000 samples (about 50 MB) unless set with the palaeocurve.cache.samples system property.
+ * use() is called from the thread that analyses the curves, so releasing a curve can not happen while
+ * it is being analysed. remove() may be called from any thread and only forgets the curve.
+ */
+public class CurveCache {
+    static final int DEFAULT_MAXIMUM_SAMPLES = Integer.getInteger("palaeocurve.cache.samples", 500000);
+
+    private final long maximumSamples;
+    // In order of use, least recently used first
+    private final LinkedHashMap<CurveEntry, Integer> samples = new LinkedHashMap<CurveEntry, Integer>(16, 0.75f, true);
+    private long totalSamples = 0;
+
+    /**
+     * Constructor
+     * @param maximumSamples
+     */
+    CurveCache(long maximumSamples) {
+        this.maximumSamples = maximumSamples;
+    }
+
+    /**
+     * Marks curves as just used, with the number of samples each now holds, then releases the least
+     * recently used other curves until the total is within the limit
+     * @param curves
+     */
+    synchronized void use(CurveEntry[] curves) {
+        for (CurveEntry curve : curves) {
+            Integer previous = samples.put(curve, curve.getSampleCount());
+            totalSamples += curve.getSampleCount() - ((previous != null) ? previous : 0);
+        }
+
+        Iterator<Map.Entry<CurveEntry, Integer>> eldest = samples.entrySet().iterator();
+        int keep = samples.size() - curves.length;
+        while (totalSamples > maximumSamples && keep > 0 && eldest.hasNext()) {
+            Map.Entry<CurveEntry, Integer> entry = eldest.next();
+            entry.getKey().release();
+            totalSamples -= entry.getValue();
+            eldest.remove();
+            keep--;
+        }
+    }
+
+    /**
+     * Forgets a curve, such as one on an image that has been closed
+     * @param curve
+     */
+    synchronized void remove(CurveEntry curve) {
+        Integer previous = samples.remove(curve);
+        if (previous != null) {
+            totalSamples -= previous;
+        }
+    }
+
+    /**
+     * Returns the number of curves whose analysis is kept
+     * @return int
+     */
+    public synchronized int size() {
+        return samples.size();
+    }
+
+    /**
+     * Returns the total number of samples kept
+     * @return long
+     */
+    public synchronized long getTotalSamples() {
+        return totalSamples;
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import ij.gui.Overlay;
+
+/**
+ * Class: CurveCollection
+ * The curves measured on one image, one of which may be active. The active curve is the one being
+ * edited and is drawn with its control points, handles, tangents and normals; the others are drawn
+ * with only the curve and its points of maximum curvature.
+ *
+ * The curves are edited on the event thread. publish() takes a snapshot of every curve, which is
+ * analysed off the event thread with analyse(): only curves that have changed since they were last
+ * analysed are sampled again, so editing one curve recomputes only that curve. When more than one
+ * curve has changed, for example after the options change or curves are added together, they are
+ * analysed in parallel on a fork-join pool. draw() then updates the overlay on the event thread.
+ * The analysis of each curve is kept in a CurveCache, which may be shared by the collections of
+ * several images.
+ */
+public class CurveCollection {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final OptionsStore optionsStore;
+    private final CurveCache cache;
+    private final ArrayList<CurveEntry> curves = new ArrayList<CurveEntry>();
+    private final Overlay overlay = new Overlay();
+    private final CurveJournal journal = new CurveJournal(this);
+    private CurveEntry active = null;
+    private volatile int optionsVersion = 0;
+
+    /**
+     * Constructor, with a cache of its own
+     * @param optionsStore
+     */
+    CurveCollection(OptionsStore optionsStore) {
+        this(optionsStore, new CurveCache(CurveCache.DEFAULT_MAXIMUM_SAMPLES));
+    }
+
+    /**
+     * Constructor
+     * @param optionsStore
+     * @param cache
+     */
+    CurveCollection(OptionsStore optionsStore, CurveCache cache) {
+        this.optionsStore = optionsStore;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the number of curves
+     * @return int
+     */
+    public int size() {
+        return curves.size();
+    }
+
+    /**
+     * Returns a curve
+     * @param i
+     * @return CurveEntry
+     */
+    public CurveEntry get(int i) {
+        return curves.get(i);
+    }
+
+    /**
+     * Returns the curves, in the order they were added
+     * @return List<CurveEntry>
+     */
+    public List<CurveEntry> getCurves() {
+        return new ArrayList<CurveEntry>(curves);
+    }
+
+    /**
+     * Adds a curve, which is not made active
+     * @param bezierList
+     * @return CurveEntry
+     */
+    public CurveEntry add(BezierSegmentList bezierList) {
+        CurveEntry curve = new CurveEntry(optionsStore, bezierList);
+        curves.add(curve);
+        return curve;
+    }
+
+    /**
+     * Puts a curve back at a place in the list, such as one that was removed
+     * @param index
+     * @param curve
+     */
+    void insert(int index, CurveEntry curve) {
+        curves.add(Math.min(index, curves.size()), curve);
+    }
+
+    /**
+     * Returns the place of a curve in the list, or -1 if it is not held
+     * @param curve
+     * @return int
+     */
+    public int indexOf(CurveEntry curve) {
+        return curves.indexOf(curve);
+    }
+
+    /**
+     * Returns the undo and redo history of the curves
+     * @return CurveJournal
+     */
+    public CurveJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Adds an empty curve and makes it the active curve
+     * @return CurveEntry
+     */
+    public CurveEntry addNew() {
+        active = add(new BezierSegmentList(optionsStore));
+        return active;
+    }
+
+    /**
+     * Removes a curve. If it was the active curve there is no longer an active curve.
+     * @param curve
+     */
+    public void remove(CurveEntry curve) {
+        curves.remove(curve);
+        cache.remove(curve);
+        if (curve == active) {
+            active = null;
+        }
+    }
+
+    /**
+     * Removes every curve
+     */
+    public void clear() {
+        for (CurveEntry curve : curves) {
+            cache.remove(curve);
+        }
+        curves.clear();
+        journal.clear();
+        active = null;
+        overlay.clear();
+    }
+
+    /**
+     * Returns the active curve
+     * @return CurveEntry | null
+     */
+    public CurveEntry getActive() {
+        return active;
+    }
+
+    /**
+     * Makes a curve the active curve, or null for none
+     * @param curve
+     */
+    public void setActive(CurveEntry curve) {
+        active = curve;
+    }
+
+    /**
+     * Returns the curve drawn at the coordinate, looking at the active curve first and then the
+     * others from the most recently added
+     * @param x
+     * @param y
+     * @return CurveEntry | null
+     */
+    public CurveEntry findCurve(double x, double y) {
+        double tolerance = optionsStore.getControlPointWidth() / 2.0;
+        if (active != null && active.isNear(x, y, tolerance)) {
+            return active;
+        }
+        for (int i = curves.size() - 1; i >= 0; i--) {
+            CurveEntry curve = curves.get(i);
+            if (curve != active && curve.isNear(x, y, tolerance)) {
+                return curve;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks every curve as needing to be analysed again, for when the options have changed
+     */
+    public void invalidate() {
+        optionsVersion++;
+    }
+
+    /**
+     * Takes a snapshot of every curve to be analysed. Runs on the event thread.
+     * @return Request
+     */
+    public Request publish() {
+        CurveEntry[] entries = curves.toArray(new CurveEntry[0]);
+        CurveSnapshot[] snapshots = new CurveSnapshot[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            snapshots[i] = entries[i].getSegmentList().publish();
+        }
+        return new Request(entries, snapshots, optionsVersion, cache);
+    }
+
+    /**
+     * Analyses the curves that have changed since they were last analysed and returns a frame for every
+     * curve in the request. Runs off the event thread, one request at a time.
+     * @param request
+     * @return CurveFrame[]
+     */
+    static CurveFrame[] analyse(Request request) {
+        int number = request.entries.length;
+        CurveFrame[] frames = new CurveFrame[number];
+        int[] stale = new int[number];
+        int numberStale = 0;
+
+        for (int i = 0; i < number; i++) {
+            if (request.entries[i].isStale(request.snapshots[i], request.optionsVersion)) {
+                stale[numberStale++] = i;
+            } else {
+                frames[i] = request.entries[i].getFrame();
+            }
+        }
+
+        // While editing only one curve changes, which is not worth handing to the pool
+        if (numberStale == 1) {
+            int i = stale[0];
+            frames[i] = request.entries[i].analyse(request.snapshots[i], request.optionsVersion);
+        } else if (numberStale > 1) {
+            POOL.invoke(new AnalyseTask(request, frames, stale, 0, numberStale));
+        }
+        request.cache.use(request.entries);
+        return frames;
+    }
+
+    /**
+     * Draws the frames from analyse() and returns the overlay holding every curve, with the active
+     * curve drawn last so it is on top. Curves removed since the request was published are left out.
+     * Runs on the event thread.
+     * @param request
+     * @param frames
+     * @return Overlay
+     */
+    public Overlay draw(Request request, CurveFrame[] frames) {
+        for (int i = 0; i < frames.length; i++) {
+            request.entries[i].draw(frames[i]);
+        }
+
+        overlay.clear();
+        for (CurveEntry curve : curves) {
+            if (curve != active) {
+                curve.getCurveOverlay().addTo(overlay, false);
+            }
+        }
+        if (active != null) {
+            active.getCurveOverlay().addTo(overlay, true);
+        }
+        return overlay;
+    }
+
+    /**
+     * The snapshots of the curves at one moment
+     */
+    public static class Request {
+        private final CurveEntry[] entries;
+        private final CurveSnapshot[] snapshots;
+        private final int optionsVersion;
+        private final CurveCache cache;
+
+        private Request(CurveEntry[] entries, CurveSnapshot[] snapshots, int optionsVersion, CurveCache cache) {
+            this.entries = entries;
+            this.snapshots = snapshots;
+            this.optionsVersion = optionsVersion;
+            this.cache = cache;
+        }
+    }
+
+    /**
+     * Analyses a range of the stale curves, splitting it in half until a single curve is left
+     */
+    private static class AnalyseTask extends RecursiveAction {
+        private final Request request;
+        private final CurveFrame[] frames;
+        private final int[] stale;
+        private final int from;
+        private final int to;
+
+        AnalyseTask(Request request, CurveFrame[] frames, int[] stale, int from, int to) {
+            this.request = request;
+            this.frames = frames;
+            this.stale = stale;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                int i = stale[from];
+                frames[i] = request.entries[i].analyse(request.snapshots[i], request.optionsVersion);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AnalyseTask(request, frames, stale, from, middle),
+                new AnalyseTask(request, frames, stale, middle, to));
+        }
+    }
+}
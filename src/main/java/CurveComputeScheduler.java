@@ -0,0 +1,153 @@
+import java.awt.EventQueue;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import ij.IJ;
+
+/**
+ * Class: CurveComputeScheduler
+ * Runs curve calculations on a single background thread so the mouse handlers on the event
+ * thread do not have to wait for them. Requests are made for a key, such as an image, and only the
+ * latest request for each key is kept: if a newer request for the same key arrives before an older
+ * one has started, the older one is dropped. Requests for other keys are never dropped, so updating
+ * one image does not lose the update of another. Results are published back on the event thread in
+ * the order they were calculated.
+ */
+public class CurveComputeScheduler {
+    private final ExecutorService executor;
+    private final AtomicLong lastRequest = new AtomicLong();
+    // The state of each key, dropped once its key is no longer used. Guarded by this.
+    private final Map<Object, KeyState> states = new WeakHashMap<Object, KeyState>();
+
+    /**
+     * Constructor
+     */
+    public CurveComputeScheduler() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Palaeo Curve compute");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Requests a calculation for a key. The compute step runs on the background thread and its result
+     * is passed to the publish step on the event thread. Any request for the same key still waiting to
+     * start is dropped.
+     * @param key
+     * @param compute
+     * @param publish
+     */
+    public <T> void submit(Object key, Callable<T> compute, Consumer<T> publish) {
+        synchronized (this) {
+            KeyState state = states.get(key);
+            if (state == null) {
+                state = new KeyState();
+                states.put(key, state);
+            }
+            Task<T> task = new Task<T>(lastRequest.incrementAndGet(), state, compute, publish);
+
+            // Only queue a run if nothing was waiting, otherwise the waiting run picks up this task instead
+            boolean waiting = (state.pending != null);
+            state.pending = task;
+            if (!waiting) {
+                KeyState queued = state;
+                executor.execute(() -> runPending(queued));
+            }
+        }
+    }
+
+    /**
+     * Drops any request for a key that is waiting and stops any of its results that have not yet been
+     * published from being published. Requests for other keys carry on.
+     * @param key
+     */
+    public synchronized void cancel(Object key) {
+        KeyState state = states.get(key);
+        if (state != null) {
+            state.cancel(lastRequest.get());
+        }
+    }
+
+    /**
+     * Drops every request that is waiting and stops the background thread
+     */
+    public void shutdown() {
+        synchronized (this) {
+            for (KeyState state : states.values()) {
+                state.cancel(lastRequest.get());
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the latest request for a key on the background thread
+     * @param state
+     */
+    private void runPending(KeyState state) {
+        Task<?> task;
+        synchronized (this) {
+            task = state.pending;
+            state.pending = null;
+        }
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * The request waiting for a key, and the last request cancelled
+     */
+    private static class KeyState {
+        // Guarded by the scheduler
+        private Task<?> pending = null;
+        private volatile long lastCancelled = 0;
+
+        void cancel(long request) {
+            lastCancelled = request;
+            pending = null;
+        }
+    }
+
+    /**
+     * A single request
+     */
+    private static class Task<T> {
+        private final long id;
+        private final KeyState state;
+        private final Callable<T> compute;
+        private final Consumer<T> publish;
+
+        Task(long id, KeyState state, Callable<T> compute, Consumer<T> publish) {
+            this.id = id;
+            this.state = state;
+            this.compute = compute;
+            this.publish = publish;
+        }
+
+        void run() {
+            if (id <= state.lastCancelled) {
+                return;
+            }
+
+            T result;
+            try {
+                result = compute.call();
+            } catch (Exception e) {
+                IJ.handleException(e);
+                return;
+            }
+
+            EventQueue.invokeLater(() -> {
+                if (id > state.lastCancelled) {
+                    publish.accept(result);
+                }
+            });
+        }
+    }
+}
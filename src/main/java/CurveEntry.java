@@ -0,0 +1,293 @@
+import java.awt.geom.*;
+import java.util.Arrays;
+
+/**
+ * Class: CurveEntry
+ * One curve of a CurveCollection. The segment list and the overlay are only used on the event thread.
+ * The analysis list, sampled curve and last frame calculated are only used by whichever thread is
+ * analysing the curve, which is the compute thread or a fork-join worker started by it, never two at once.
+ * The frame is kept, so a curve that has not changed since it was last analysed is not sampled again.
+ */
+public class CurveEntry {
+    private final OptionsStore optionsStore;
+    private final BezierSegmentList bezierList;
+    private final CurveOverlay curveOverlay;
+    // Only used on the event thread, the last frame drawn
+    private CurveFrame drawnFrame = null;
+    private Rectangle2D drawnBounds = null;
+
+    // Only used by the thread analysing the curve
+    private BezierSegmentList analysisList;
+    private SampledCurve sampledCurve;
+    private CurveSnapshot analysedSnapshot = null;
+    private int analysedOptions = -1;
+    private CurveFrame frame = null;
+    private int numberFrames = 0;
+
+    /**
+     * Constructor
+     * @param optionsStore
+     * @param bezierList
+     */
+    CurveEntry(OptionsStore optionsStore, BezierSegmentList bezierList) {
+        this.optionsStore = optionsStore;
+        this.bezierList = bezierList;
+        this.curveOverlay = new CurveOverlay(optionsStore);
+    }
+
+    /**
+     * Returns the list of segments, for editing on the event thread
+     * @return BezierSegmentList
+     */
+    public BezierSegmentList getSegmentList() {
+        return bezierList;
+    }
+
+    /**
+     * Returns the ROIs the curve is drawn with
+     * @return CurveOverlay
+     */
+    public CurveOverlay getCurveOverlay() {
+        return curveOverlay;
+    }
+
+    /**
+     * Draws a frame calculated by analyse(), if it is not the one already drawn. Runs on the event thread.
+     * @param newFrame
+     */
+    void draw(CurveFrame newFrame) {
+        if (newFrame == drawnFrame) {
+            return;
+        }
+        drawnFrame = newFrame;
+        drawnBounds = (newFrame.curvePath != null) ? newFrame.curvePath.getBounds2D() : null;
+        curveOverlay.update(newFrame);
+    }
+
+    /**
+     * Returns the last frame drawn. Runs on the event thread.
+     * @return CurveFrame | null
+     */
+    CurveFrame getDrawnFrame() {
+        return drawnFrame;
+    }
+
+    /**
+     * Is the coordinate within the tolerance of the curve as last drawn? Runs on the event thread.
+     * The distance is to the line through the samples of the frame, so nothing is allocated.
+     * @param x
+     * @param y
+     * @param tolerance
+     * @return boolean
+     */
+    boolean isNear(double x, double y, double tolerance) {
+        if (drawnBounds == null) {
+            return false;
+        }
+
+        // Most curves are ruled out by their bounds, only the rest have the curve outlined
+        if (x < drawnBounds.getMinX() - tolerance || x > drawnBounds.getMaxX() + tolerance
+                || y < drawnBounds.getMinY() - tolerance || y > drawnBounds.getMaxY() + tolerance) {
+            return false;
+        }
+        double[] sampleX = drawnFrame.sampleX;
+        double[] sampleY = drawnFrame.sampleY;
+        if (sampleX == null) {
+            return false;
+        }
+        double tolerance2 = tolerance * tolerance;
+        for (int i = 1; i < sampleX.length; i++) {
+            if (getDistanceSquared(x, y, sampleX[i - 1], sampleY[i - 1], sampleX[i], sampleY[i]) <= tolerance2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the square of the distance from a point to a line segment
+     * @param x
+     * @param y
+     * @param x0 Start of the line
+     * @param y0
+     * @param x1 End of the line
+     * @param y1
+     * @return double
+     */
+    private static double getDistanceSquared(double x, double y, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double length2 = (dx * dx) + (dy * dy);
+        double t = (length2 > 0.0) ? (((x - x0) * dx) + ((y - y0) * dy)) / length2 : 0.0;
+        t = Math.max(0.0, Math.min(1.0, t));
+        double ex = x0 + (t * dx) - x;
+        double ey = y0 + (t * dy) - y;
+        return (ex * ex) + (ey * ey);
+    }
+
+    /**
+     * Does the curve need to be analysed again for this snapshot?
+     * @param snapshot
+     * @param optionsVersion
+     * @return boolean
+     */
+    boolean isStale(CurveSnapshot snapshot, int optionsVersion) {
+        return (frame == null || snapshot != analysedSnapshot || optionsVersion != analysedOptions);
+    }
+
+    /**
+     * Returns the last frame calculated by analyse()
+     * @return CurveFrame
+     */
+    CurveFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the number of samples held for the curve by its last analysis
+     * @return int
+     */
+    int getSampleCount() {
+        return (sampledCurve != null) ? sampledCurve.getSampleCount() : 0;
+    }
+
+    /**
+     * Drops everything kept from the last analysis, so the next analysis starts from scratch.
+     * Called by CurveCache from the thread that analyses the curves.
+     */
+    void release() {
+        analysisList = null;
+        sampledCurve = null;
+        analysedSnapshot = null;
+        frame = null;
+    }
+
+    /**
+     * Adds the samples of each segment to a frame, for the curvature profile and map. Only the segments
+     * that were sampled again are copied, the others share the arrays of the last frame. When the curve has
+     * been moved the positions of every segment are copied, but the kappa arrays are still shared.
+     * @param newFrame
+     * @param moved
+     */
+    private void addSegmentSamples(CurveFrame newFrame, boolean moved) {
+        int numberSegments = sampledCurve.getSegmentCount();
+        boolean reuse = (frame != null && frame.segmentKappa != null && frame.segmentKappa.length == numberSegments);
+        newFrame.segmentX = new double[numberSegments][];
+        newFrame.segmentY = new double[numberSegments][];
+        newFrame.segmentPositions = new double[numberSegments][];
+        newFrame.segmentKappa = new double[numberSegments][];
+
+        for (int j = 0; j < numberSegments; j++) {
+            int start = sampledCurve.getSegmentStart(j);
+            int length = sampledCurve.getSegmentEnd(j) - start;
+            if (reuse && !sampledCurve.isSegmentResampled(j)) {
+                newFrame.segmentX[j] = moved ? Arrays.copyOfRange(sampledCurve.x, start, start + length) : frame.segmentX[j];
+                newFrame.segmentY[j] = moved ? Arrays.copyOfRange(sampledCurve.y, start, start + length) : frame.segmentY[j];
+                newFrame.segmentPositions[j] = frame.segmentPositions[j];
+                newFrame.segmentKappa[j] = frame.segmentKappa[j];
+                continue;
+            }
+
+            double[] x = new double[length];
+            double[] y = new double[length];
+            double[] positions = new double[length];
+            double[] kappa = new double[length];
+            for (int i = 0; i < length; i++) {
+                x[i] = sampledCurve.getX(start + i);
+                y[i] = sampledCurve.getY(start + i);
+                positions[i] = j + sampledCurve.getT(start + i);
+                kappa[i] = sampledCurve.getKappa(start + i);
+            }
+            newFrame.segmentX[j] = x;
+            newFrame.segmentY[j] = y;
+            newFrame.segmentPositions[j] = positions;
+            newFrame.segmentKappa[j] = kappa;
+        }
+    }
+
+    /**
+     * Puts every sample of the curve in the frame, between the ends of the curve, which are not sampled
+     * @param newFrame
+     * @param list
+     */
+    private void addSamples(CurveFrame newFrame, BezierSegmentList list) {
+        int count = sampledCurve.getSampleCount();
+        BezierSegment first = list.getSegment(0);
+        BezierSegment last = list.getSegment(list.getNumberSegments() - 1);
+        newFrame.sampleX = new double[count + 2];
+        newFrame.sampleY = new double[count + 2];
+        newFrame.sampleX[0] = first.getPointX(0);
+        newFrame.sampleY[0] = first.getPointY(0);
+        System.arraycopy(sampledCurve.x, 0, newFrame.sampleX, 1, count);
+        System.arraycopy(sampledCurve.y, 0, newFrame.sampleY, 1, count);
+        newFrame.sampleX[count + 1] = last.getPointX(3);
+        newFrame.sampleY[count + 1] = last.getPointY(3);
+    }
+
+    /**
+     * Does the calculations for the curve. Runs off the event thread, on a list of its own that is
+     * brought up to date with the snapshot, so segments that have not changed keep their samples.
+     * @param snapshot
+     * @param optionsVersion Options version the frame is calculated for
+     * @return CurveFrame
+     */
+    CurveFrame analyse(CurveSnapshot snapshot, int optionsVersion) {
+        long start = CurveMetrics.start();
+        CurveFrame newFrame = new CurveFrame();
+
+        if (analysisList == null) {
+            analysisList = new BezierSegmentList(optionsStore);
+        }
+        BezierSegmentList list = analysisList;
+
+        // A curve that has only been moved keeps its samples, moved by the same distance
+        double[] translation = (sampledCurve != null) ? snapshot.getTranslationFrom(analysedSnapshot) : null;
+        newFrame.number = ++numberFrames;
+        if (translation != null) {
+            list.setTranslatedSegments(snapshot, sampledCurve, translation[0], translation[1]);
+            newFrame.movedFrom = frame.number;
+            newFrame.movedX = translation[0];
+            newFrame.movedY = translation[1];
+        } else {
+            list.setSegments(snapshot);
+        }
+
+        newFrame.controlPoints = snapshot.getControlPointCoordinates();
+        newFrame.curvePath = list.getCurvePath();
+
+        if (newFrame.curvePath != null) {
+            // Update these calculated values now, so we don't have to do it again later
+            long sampling = CurveMetrics.start();
+            sampledCurve = list.sampleCurve(sampledCurve);
+            CurveMetrics.SAMPLING.stop(sampling);
+            CurveMetrics.addSamples(sampledCurve.getResampledCount());
+            addSamples(newFrame, list);
+
+            if (optionsStore.getShowTangents()) {
+                newFrame.tangentPath = CurveOverlay.getSampleLines(sampledCurve, true, optionsStore.getTangentsScaleFactor());
+            }
+            if (optionsStore.getShowNormals()) {
+                newFrame.normalPath = CurveOverlay.getSampleLines(sampledCurve, false, optionsStore.getNormalsScaleFactor());
+            }
+            if (optionsStore.getShowCurvatureProfile() || optionsStore.getShowCurvatureMap()) {
+                addSegmentSamples(newFrame, translation != null);
+            }
+
+            // Find coordinate(s) that has the most curvature and mark...
+            // The position is reported as the fraction of the length along the whole curve
+            long search = CurveMetrics.start();
+            double[][] maximumCurvaturePoints = list.getMaximumCurvaturePoints(BezierSegmentList.MINIMUM_KAPPA);
+            CurveMetrics.MAXIMUM_CURVATURE.stop(search);
+            for (double[] point : maximumCurvaturePoints) {
+                newFrame.coordsOfMaximumCurve.add(new double[] {point[0], point[1]});
+                newFrame.positionOfMaximumCurve.add(list.getArcLengthFraction((int) point[2], point[3]));
+            }
+        }
+
+        analysedSnapshot = snapshot;
+        analysedOptions = optionsVersion;
+        frame = newFrame;
+        CurveMetrics.COMPUTE.stop(start);
+        return newFrame;
+    }
+}
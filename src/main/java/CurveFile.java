@@ -0,0 +1,106 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class: CurveFile
+ * Reads and writes saved curve definitions. A definition is a text file with one segment per
+ * line, given as the eight control point coordinates x0 y0 x1 y1 x2 y2 x3 y3 in pixels,
+ * separated by spaces or tabs. Empty lines and lines starting with # are ignored.
+ */
+public class CurveFile {
+    public static final String EXTENSION = ".curve";
+
+    /**
+     * Reads a curve definition into a new BezierSegmentList
+     * @param file
+     * @param optionStore
+     * @return BezierSegmentList
+     * @throws IOException If the file can not be read, or a line does not hold eight numbers
+     */
+    public static BezierSegmentList read(File file, OptionsStore optionStore) throws IOException {
+        BezierSegmentList bezierList = new BezierSegmentList(optionStore);
+        bezierList.addSegments(readCoordinates(file));
+        return bezierList;
+    }
+
+    /**
+     * Reads a curve definition as packed coordinates, eight per segment
+     * @param file
+     * @return double[]
+     * @throws IOException If the file can not be read, or a line does not hold eight numbers
+     */
+    public static double[] readCoordinates(File file) throws IOException {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        double[] coordinates = new double[size * 16];
+        int count = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] values = line.split("[ \t,]+");
+                if (values.length != size) {
+                    throw new IOException(file.getName() + " line " + lineNumber + ": expected " + size + " coordinates, found " + values.length);
+                }
+
+                if (count + size > coordinates.length) {
+                    coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+                }
+                for (String value : values) {
+                    try {
+                        coordinates[count++] = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        throw new IOException(file.getName() + " line " + lineNumber + ": '" + value + "' is not a number");
+                    }
+                }
+            }
+        }
+
+        if (count == 0) {
+            throw new IOException(file.getName() + ": no segments found");
+        }
+
+        return Arrays.copyOf(coordinates, count);
+    }
+
+    /**
+     * Writes the segments of a curve as a curve definition
+     * @param bezierList
+     * @param file
+     * @throws IOException
+     */
+    public static void write(BezierSegmentList bezierList, File file) throws IOException {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        double[] coordinates = bezierList.getSegmentCoordinates();
+
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("# Palaeo Curve\n");
+            writer.write("# x0 y0 x1 y1 x2 y2 x3 y3\n");
+            for (int i = 0; i < coordinates.length; i += size) {
+                StringBuilder line = new StringBuilder();
+                for (int k = 0; k < size; k++) {
+                    if (k > 0) {
+                        line.append(' ');
+                    }
+                    line.append(coordinates[i + k]);
+                }
+                line.append('\n');
+                writer.write(line.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+import java.awt.geom.*;
+import java.util.ArrayList;
+
+/**
+ * Class: CurveFrame
+ * Holds everything calculated for one update of the curve overlay. It is filled in on the
+ * compute thread and then handed to CurveOverlay on the event thread, so nothing in it may
+ * be changed once it has been published.
+ */
+public class CurveFrame {
+    double[][] controlPoints;
+    Path2D.Double curvePath;
+    Path2D.Double tangentPath;
+    Path2D.Double normalPath;
+    ArrayList<double[]> coordsOfMaximumCurve = new ArrayList<double[]>();
+    ArrayList<Double> positionOfMaximumCurve = new ArrayList<Double>();
+    // Every sample of the curve in order, so a click can be tested against the line through them
+    double[] sampleX;
+    double[] sampleY;
+    // Samples of each segment, only kept while the curvature profile or map is shown. The position
+    // of a sample is its segment number plus its t. Arrays of segments that were not sampled again are
+    // the same arrays as in the frame before, so a changed segment can be told by its array. When the
+    // curve has only been moved the X and Y arrays are new but the others are shared.
+    double[][] segmentX;
+    double[][] segmentY;
+    double[][] segmentPositions;
+    double[][] segmentKappa;
+    // Frames of a curve are numbered. A frame of a curve that has only been moved since the frame before
+    // gives that frame's number and how far it has moved, otherwise movedFrom is zero.
+    int number;
+    int movedFrom;
+    double movedX;
+    double movedY;
+}
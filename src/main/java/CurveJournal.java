@@ -0,0 +1,530 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Class: CurveJournal
+ * The undo and redo history of the curves of a CurveCollection. Nothing is copied while a curve is
+ * edited: begin() keeps the curve's published snapshot, and commit() compares it with a new one and
+ * records only what differs as one undoable step. The records are kept in primitive arrays:
+ * the kind of change, the curve, the segment index and point, and the old and new coordinates.
+ * - a moved control point keeps its old and new coordinates,
+ * - a curve moved as a whole, where every point moved by exactly the same amount, keeps only the offset,
+ * - an inserted or removed segment keeps its eight coordinates,
+ * - an added or removed curve keeps its place in the collection.
+ * Undo and redo apply the records to the segments they name, so the rest of the curve is not touched
+ * and its segments keep their samples. Runs on the event thread.
+ *
+ * Usage:
+ * journal.begin(curve);
+ * ... edit the curve ...
+ * journal.commit();
+ */
+public class CurveJournal {
+    // Kinds of record
+    private static final byte MOVE = 0;
+    private static final byte TRANSLATE = 1;
+    private static final byte INSERT = 2;
+    private static final byte REMOVE = 3;
+    private static final byte ADD_CURVE = 4;
+    private static final byte REMOVE_CURVE = 5;
+
+    // Oldest steps are dropped once there are more than this
+    static final int MAXIMUM_STEPS = 20000;
+
+    private final CurveCollection collection;
+    private final ArrayList<CurveEntry> curveTable = new ArrayList<CurveEntry>();
+    private final IdentityHashMap<CurveEntry, Integer> curveIds = new IdentityHashMap<CurveEntry, Integer>();
+
+    // One of each per record
+    private byte[] kinds = new byte[64];
+    private int[] curves = new int[64];
+    private int[] segments = new int[64];
+    private byte[] points = new byte[64];
+    private int[] valueStarts = new int[65];
+    private int numberRecords = 0;
+    private double[] values = new double[256];
+
+    // Step i is records stepStarts[i] to stepStarts[i + 1] - 1; steps from undone onwards can be redone
+    private int[] stepStarts = new int[17];
+    private int numberSteps = 0;
+    private int undone = 0;
+
+    // The step being recorded
+    private CurveEntry openCurve = null;
+    private CurveSnapshot before = null;
+    private boolean open = false;
+
+    /**
+     * Constructor
+     * @param collection
+     */
+    CurveJournal(CurveCollection collection) {
+        this.collection = collection;
+    }
+
+    /**
+     * Starts recording the edits of a curve, unless they already are being recorded
+     * @param curve
+     */
+    public void begin(CurveEntry curve) {
+        if (open && curve == openCurve) {
+            return;
+        }
+        commit();
+        openStep();
+        openCurve = curve;
+        before = curve.getSegmentList().publish();
+    }
+
+    /**
+     * Records that a curve has been added to the collection, as part of the step being recorded.
+     * @param curve
+     */
+    public void curveAdded(CurveEntry curve) {
+        commit();
+        openStep();
+        addRecord(ADD_CURVE, curve, collection.indexOf(curve), 0, 0);
+        openCurve = curve;
+        before = curve.getSegmentList().publish();
+    }
+
+    /**
+     * Records, as a step of its own, that a curve is about to be removed from the collection
+     * @param curve
+     */
+    public void curveRemoved(CurveEntry curve) {
+        commit();
+        openStep();
+        addRecord(REMOVE_CURVE, curve, collection.indexOf(curve), 0, 0);
+        closeStep();
+    }
+
+    /**
+     * Records what has changed since begin() as a step. While the first segment of a new curve is
+     * still being placed the step is left open, so placing a curve is a single step.
+     */
+    public void commit() {
+        commit(false);
+    }
+
+    /**
+     * Records what has changed since begin() as a step
+     * @param force Close the step even if a first segment is still being placed
+     */
+    private void commit(boolean force) {
+        if (!open) {
+            return;
+        }
+        if (openCurve != null) {
+            CurveSnapshot after = openCurve.getSegmentList().publish();
+            if (!force && before.isEmpty() && after.isEmpty() && hasPlacedPoints(after)) {
+                return;
+            }
+            if (after != before) {
+                recordDifferences(openCurve, before, after);
+            }
+        }
+        closeStep();
+    }
+
+    /**
+     * Is there a step that can be undone?
+     * @return boolean
+     */
+    public boolean canUndo() {
+        return (undone > 0 || (open && numberRecords > stepStarts[numberSteps]));
+    }
+
+    /**
+     * Is there a step that can be redone?
+     * @return boolean
+     */
+    public boolean canRedo() {
+        return (undone < numberSteps);
+    }
+
+    /**
+     * Returns the number of steps held
+     * @return int
+     */
+    public int getNumberSteps() {
+        return numberSteps;
+    }
+
+    /**
+     * Returns roughly how many bytes the records take up
+     * @return long
+     */
+    public long getMemoryUsed() {
+        return (kinds.length * 14L) + (values.length * 8L) + (stepStarts.length * 4L);
+    }
+
+    /**
+     * Undoes the last step and returns the curve it changed, or null if there was nothing to undo
+     * @return CurveEntry | null
+     */
+    public CurveEntry undo() {
+        commit(true);
+        if (undone == 0) {
+            return null;
+        }
+        undone--;
+        CurveEntry curve = null;
+        for (int r = stepStarts[undone + 1] - 1; r >= stepStarts[undone]; r--) {
+            curve = apply(r, true);
+        }
+        return curve;
+    }
+
+    /**
+     * Redoes the last step undone and returns the curve it changed, or null if there was nothing to redo
+     * @return CurveEntry | null
+     */
+    public CurveEntry redo() {
+        commit(true);
+        if (undone == numberSteps) {
+            return null;
+        }
+        CurveEntry curve = null;
+        for (int r = stepStarts[undone]; r < stepStarts[undone + 1]; r++) {
+            curve = apply(r, false);
+        }
+        undone++;
+        return curve;
+    }
+
+    /**
+     * Forgets every step
+     */
+    public void clear() {
+        numberRecords = 0;
+        numberSteps = 0;
+        undone = 0;
+        valueStarts[0] = 0;
+        stepStarts[0] = 0;
+        curveTable.clear();
+        curveIds.clear();
+        open = false;
+        openCurve = null;
+        before = null;
+    }
+
+    /**
+     * Are there points placed for a first segment that is not finished?
+     * @param snapshot
+     * @return boolean
+     */
+    private boolean hasPlacedPoints(CurveSnapshot snapshot) {
+        double[][] placed = snapshot.getControlPointCoordinates();
+        return (placed.length > 0 && placed[0].length > 0);
+    }
+
+    /**
+     * Applies a record forwards, or backwards to undo it, and returns the curve it changed
+     * @param r
+     * @param backwards
+     * @return CurveEntry
+     */
+    private CurveEntry apply(int r, boolean backwards) {
+        CurveEntry curve = curveTable.get(curves[r]);
+        BezierSegmentList bezierList = curve.getSegmentList();
+        int v = valueStarts[r];
+
+        switch (kinds[r]) {
+            case MOVE:
+                bezierList.setControlPoint(segments[r], points[r], values[backwards ? v : v + 2], values[backwards ? v + 1 : v + 3]);
+                break;
+            case TRANSLATE:
+                double dx = backwards ? -values[v] : values[v];
+                double dy = backwards ? -values[v + 1] : values[v + 1];
+                for (int j = 0; j < bezierList.getNumberSegments(); j++) {
+                    BezierSegment bezier = bezierList.getSegment(j);
+                    for (int point = 0; point < 4; point++) {
+                        bezierList.setControlPoint(j, point, bezier.getPointX(point) + dx, bezier.getPointY(point) + dy);
+                    }
+                }
+                break;
+            case INSERT:
+            case REMOVE:
+                if ((kinds[r] == INSERT) != backwards) {
+                    bezierList.insertSegment(segments[r], values, v);
+                } else {
+                    bezierList.removeSegment(segments[r]);
+                }
+                break;
+            case ADD_CURVE:
+            case REMOVE_CURVE:
+                if ((kinds[r] == ADD_CURVE) != backwards) {
+                    collection.insert(segments[r], curve);
+                    collection.setActive(curve);
+                } else {
+                    collection.remove(curve);
+                }
+                break;
+        }
+        return curve;
+    }
+
+    /**
+     * Records the changes that turn one snapshot of a curve into another
+     * @param curve
+     * @param oldCurve
+     * @param newCurve
+     */
+    private void recordDifferences(CurveEntry curve, CurveSnapshot oldCurve, CurveSnapshot newCurve) {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        int oldSegments = oldCurve.getNumberSegments();
+        int newSegments = newCurve.getNumberSegments();
+
+        if (oldSegments == newSegments) {
+            if (isTranslation(oldCurve, newCurve)) {
+                double dx = newCurve.getCoordinate(0) - oldCurve.getCoordinate(0);
+                double dy = newCurve.getCoordinate(1) - oldCurve.getCoordinate(1);
+                addRecord(TRANSLATE, curve, 0, 0, 2);
+                values[valueStarts[numberRecords - 1]] = dx;
+                values[valueStarts[numberRecords - 1] + 1] = dy;
+                return;
+            }
+            recordMoves(curve, oldCurve, newCurve, 0, oldSegments);
+            return;
+        }
+
+        // Segments that are the same at the start and the end are left alone, the rest are removed and inserted
+        int common = Math.min(oldSegments, newSegments);
+        int prefix = 0;
+        while (prefix < common && sameSegment(oldCurve, prefix, newCurve, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix && sameSegment(oldCurve, oldSegments - 1 - suffix, newCurve, newSegments - 1 - suffix)) {
+            suffix++;
+        }
+
+        // Removed from the end backwards and inserted from the start forwards, so undo runs each the other way
+        for (int j = oldSegments - suffix - 1; j >= prefix; j--) {
+            addRecord(REMOVE, curve, j, 0, size);
+            copySegment(oldCurve, j);
+        }
+        for (int j = prefix; j < newSegments - suffix; j++) {
+            addRecord(INSERT, curve, j, 0, size);
+            copySegment(newCurve, j);
+        }
+    }
+
+    /**
+     * Records a MOVE for every control point that differs, in segments from to to - 1
+     * @param curve
+     * @param oldCurve
+     * @param newCurve
+     * @param from
+     * @param to
+     */
+    private void recordMoves(CurveEntry curve, CurveSnapshot oldCurve, CurveSnapshot newCurve, int from, int to) {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        for (int j = from; j < to; j++) {
+            for (int point = 0; point < 4; point++) {
+                int i = (j * size) + (2 * point);
+                double oldX = oldCurve.getCoordinate(i);
+                double oldY = oldCurve.getCoordinate(i + 1);
+                double newX = newCurve.getCoordinate(i);
+                double newY = newCurve.getCoordinate(i + 1);
+                if (oldX != newX || oldY != newY) {
+                    addRecord(MOVE, curve, j, point, 4);
+                    int v = valueStarts[numberRecords - 1];
+                    values[v] = oldX;
+                    values[v + 1] = oldY;
+                    values[v + 2] = newX;
+                    values[v + 3] = newY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Has every point moved by the same offset, so that adding or taking away the offset gives
+     * exactly the new or old coordinates?
+     * @param oldCurve
+     * @param newCurve
+     * @return boolean
+     */
+    private boolean isTranslation(CurveSnapshot oldCurve, CurveSnapshot newCurve) {
+        int length = oldCurve.getNumberSegments() * SegmentStore.COORDINATES_PER_SEGMENT;
+        if (length <= SegmentStore.COORDINATES_PER_SEGMENT) {
+            // A single segment is recorded point by point, which is no bigger
+            return false;
+        }
+        double dx = newCurve.getCoordinate(0) - oldCurve.getCoordinate(0);
+        double dy = newCurve.getCoordinate(1) - oldCurve.getCoordinate(1);
+        if (dx == 0 && dy == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i += 2) {
+            double oldX = oldCurve.getCoordinate(i);
+            double oldY = oldCurve.getCoordinate(i + 1);
+            double newX = newCurve.getCoordinate(i);
+            double newY = newCurve.getCoordinate(i + 1);
+            if (oldX + dx != newX || oldY + dy != newY || newX - dx != oldX || newY - dy != oldY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameSegment(CurveSnapshot a, int segmentA, CurveSnapshot b, int segmentB) {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+        for (int k = 0; k < size; k++) {
+            if (a.getCoordinate((segmentA * size) + k) != b.getCoordinate((segmentB * size) + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void copySegment(CurveSnapshot curve, int segment) {
+        int v = valueStarts[numberRecords - 1];
+        for (int k = 0; k < SegmentStore.COORDINATES_PER_SEGMENT; k++) {
+            values[v + k] = curve.getCoordinate((segment * SegmentStore.COORDINATES_PER_SEGMENT) + k);
+        }
+    }
+
+    /**
+     * Starts a new step
+     */
+    private void openStep() {
+        open = true;
+    }
+
+    /**
+     * Ends the step being recorded, keeping it only if anything was recorded
+     */
+    private void closeStep() {
+        open = false;
+        openCurve = null;
+        before = null;
+        if (numberRecords == stepStarts[numberSteps]) {
+            return;
+        }
+
+        if (numberSteps + 2 > stepStarts.length) {
+            stepStarts = Arrays.copyOf(stepStarts, stepStarts.length * 2);
+        }
+        numberSteps++;
+        stepStarts[numberSteps] = numberRecords;
+        undone = numberSteps;
+
+        if (numberSteps > MAXIMUM_STEPS) {
+            dropOldest(MAXIMUM_STEPS / 10);
+        }
+    }
+
+    /**
+     * Drops the oldest steps, a batch at a time so the arrays are not shifted for every step
+     * @param steps
+     */
+    private void dropOldest(int steps) {
+        int records = stepStarts[steps];
+        int valueOffset = valueStarts[records];
+        int keptRecords = numberRecords - records;
+
+        System.arraycopy(kinds, records, kinds, 0, keptRecords);
+        System.arraycopy(curves, records, curves, 0, keptRecords);
+        System.arraycopy(segments, records, segments, 0, keptRecords);
+        System.arraycopy(points, records, points, 0, keptRecords);
+        System.arraycopy(values, valueOffset, values, 0, valueStarts[numberRecords] - valueOffset);
+        for (int r = 0; r <= keptRecords; r++) {
+            valueStarts[r] = valueStarts[r + records] - valueOffset;
+        }
+        for (int s = 0; s <= numberSteps - steps; s++) {
+            stepStarts[s] = stepStarts[s + steps] - records;
+        }
+        numberRecords = keptRecords;
+        numberSteps -= steps;
+        undone -= steps;
+        pruneCurveTable();
+    }
+
+    /**
+     * Drops the curves that no record refers to any more from the curve table, so curves that have been
+     * removed are not kept once their steps have gone, and renumbers the rest
+     */
+    private void pruneCurveTable() {
+        int[] newIds = new int[curveTable.size()];
+        Arrays.fill(newIds, -1);
+        ArrayList<CurveEntry> kept = new ArrayList<CurveEntry>();
+        for (int r = 0; r < numberRecords; r++) {
+            int id = curves[r];
+            if (newIds[id] < 0) {
+                newIds[id] = kept.size();
+                kept.add(curveTable.get(id));
+            }
+            curves[r] = newIds[id];
+        }
+        if (kept.size() == curveTable.size()) {
+            return;
+        }
+
+        curveTable.clear();
+        curveIds.clear();
+        for (CurveEntry curve : kept) {
+            curveIds.put(curve, curveTable.size());
+            curveTable.add(curve);
+        }
+    }
+
+    /**
+     * Returns the number of curves the records refer to
+     * @return int
+     */
+    int getNumberCurves() {
+        return curveTable.size();
+    }
+
+    /**
+     * Adds a record to the step being recorded, with room for its values. Any steps that had been
+     * undone are dropped.
+     * @param kind
+     * @param curve
+     * @param segment Segment index, or the curve's place in the collection
+     * @param point
+     * @param numberValues
+     */
+    private void addRecord(byte kind, CurveEntry curve, int segment, int point, int numberValues) {
+        // A new change means the steps that had been undone can no longer be redone
+        if (undone < numberSteps) {
+            numberSteps = undone;
+            numberRecords = stepStarts[numberSteps];
+            pruneCurveTable();
+        }
+
+        if (numberRecords == kinds.length) {
+            int capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            curves = Arrays.copyOf(curves, capacity);
+            segments = Arrays.copyOf(segments, capacity);
+            points = Arrays.copyOf(points, capacity);
+            valueStarts = Arrays.copyOf(valueStarts, capacity + 1);
+        }
+        int start = valueStarts[numberRecords];
+        if (start + numberValues > values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, start + numberValues));
+        }
+
+        kinds[numberRecords] = kind;
+        curves[numberRecords] = getCurveId(curve);
+        segments[numberRecords] = segment;
+        points[numberRecords] = (byte) point;
+        numberRecords++;
+        valueStarts[numberRecords] = start + numberValues;
+    }
+
+    private int getCurveId(CurveEntry curve) {
+        Integer id = curveIds.get(curve);
+        if (id == null) {
+            id = curveTable.size();
+            curveTable.add(curve);
+            curveIds.put(curve, id);
+        }
+        return id;
+    }
+}
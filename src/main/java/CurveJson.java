@@ -0,0 +1,349 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class: CurveJson
+ * Reads and writes saved curves as JSON, for moving curves between programs. It holds the same
+ * information as a CurveArchive and is lossless: numbers are written with Double.toString(), which
+ * reads back as exactly the same double.
+ *
+ * {"format": "Palaeo Curve", "version": 1, "curves": [
+ *   {"image": "F1.tif", "probeNumber": 256, "adaptiveSampling": false, "adaptiveTolerance": 0.1,
+ *    "adaptiveMaximumDepth": 12, "segments": [[x0, y0, x1, y1, x2, y2, x3, y3], ...]}, ...]}
+ */
+public class CurveJson {
+    public static final String EXTENSION = ".json";
+    private static final String FORMAT = "Palaeo Curve";
+
+    /**
+     * Writes a list of curves as JSON
+     * @param file
+     * @param curves
+     * @throws IOException If a coordinate is not a finite number, or the file can not be written
+     */
+    public static void write(File file, List<CurveRecord> curves) throws IOException {
+        int size = SegmentStore.COORDINATES_PER_SEGMENT;
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("{\"format\": \"" + FORMAT + "\", \"version\": " + CurveArchive.VERSION + ", \"curves\": [");
+            for (int i = 0; i < curves.size(); i++) {
+                CurveRecord curve = curves.get(i);
+                writer.write((i > 0) ? ",\n" : "\n");
+                writer.write("  {\"image\": " + quote(curve.imageId)
+                    + ", \"probeNumber\": " + curve.probeNumber
+                    + ", \"adaptiveSampling\": " + curve.adaptiveSampling
+                    + ", \"adaptiveTolerance\": " + number(curve.adaptiveTolerance)
+                    + ", \"adaptiveMaximumDepth\": " + curve.adaptiveMaximumDepth
+                    + ", \"segments\": [");
+
+                for (int j = 0; j < curve.getNumberSegments(); j++) {
+                    StringBuilder segment = new StringBuilder((j > 0) ? ",\n    [" : "\n    [");
+                    for (int k = 0; k < size; k++) {
+                        if (k > 0) {
+                            segment.append(", ");
+                        }
+                        segment.append(number(curve.coordinates[(j * size) + k]));
+                    }
+                    segment.append(']');
+                    writer.write(segment.toString());
+                }
+                writer.write("]}");
+            }
+            writer.write("\n]}\n");
+        }
+    }
+
+    /**
+     * Reads a list of curves from JSON. Options missing from a curve are given their default values.
+     * @param file
+     * @return List of CurveRecord
+     * @throws IOException If the file can not be read, does not hold curves, or a curve has no segments
+     */
+    public static List<CurveRecord> read(File file) throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Object root = new Parser(text, file.getName()).parseDocument();
+
+        if (!(root instanceof Map) || !FORMAT.equals(((Map<?, ?>) root).get("format"))) {
+            throw new IOException(file.getName() + " does not hold Palaeo Curve curves");
+        }
+        Object version = ((Map<?, ?>) root).get("version");
+        if (version instanceof Double && (Double) version > CurveArchive.VERSION) {
+            throw new IOException(file.getName() + " is version " + version + " which is newer than this plugin can read");
+        }
+
+        List<CurveRecord> curves = new ArrayList<CurveRecord>();
+        for (Object curveValue : getList(root, "curves", file)) {
+            if (!(curveValue instanceof Map)) {
+                throw new IOException(file.getName() + ": curve " + curves.size() + " is not an object");
+            }
+            Map<?, ?> curve = (Map<?, ?>) curveValue;
+
+            OptionsStore options = new OptionsStore();
+            if (curve.get("probeNumber") instanceof Double) {
+                options.setProbeNumber(((Double) curve.get("probeNumber")).intValue());
+            }
+            if (curve.get("adaptiveSampling") instanceof Boolean) {
+                options.setAdaptiveSampling((Boolean) curve.get("adaptiveSampling"));
+            }
+            if (curve.get("adaptiveTolerance") instanceof Double) {
+                options.setAdaptiveTolerance((Double) curve.get("adaptiveTolerance"));
+            }
+            if (curve.get("adaptiveMaximumDepth") instanceof Double) {
+                options.setAdaptiveMaximumDepth(((Double) curve.get("adaptiveMaximumDepth")).intValue());
+            }
+
+            List<?> segments = getList(curve, "segments", file);
+            if (segments.isEmpty()) {
+                throw new IOException(file.getName() + ": curve " + curves.size() + " has no segments");
+            }
+            int size = SegmentStore.COORDINATES_PER_SEGMENT;
+            double[] coordinates = new double[segments.size() * size];
+            for (int j = 0; j < segments.size(); j++) {
+                Object segment = segments.get(j);
+                if (!(segment instanceof List) || ((List<?>) segment).size() != size) {
+                    throw new IOException(file.getName() + ": curve " + curves.size() + " segment " + j + " does not have " + size + " coordinates");
+                }
+                for (int k = 0; k < size; k++) {
+                    Object value = ((List<?>) segment).get(k);
+                    if (!(value instanceof Double)) {
+                        throw new IOException(file.getName() + ": curve " + curves.size() + " segment " + j + " has a coordinate that is not a number");
+                    }
+                    coordinates[(j * size) + k] = (Double) value;
+                }
+            }
+
+            Object image = curve.get("image");
+            curves.add(new CurveRecord((image instanceof String) ? (String) image : null, options, coordinates));
+        }
+        return curves;
+    }
+
+    /**
+     * Returns a list member of a JSON object
+     * @param object
+     * @param name
+     * @param file File for error messages
+     * @return List
+     * @throws IOException If the member is missing or not a list
+     */
+    private static List<?> getList(Object object, String name, File file) throws IOException {
+        Object value = ((Map<?, ?>) object).get(name);
+        if (!(value instanceof List)) {
+            throw new IOException(file.getName() + ": \"" + name + "\" is missing");
+        }
+        return (List<?>) value;
+    }
+
+    /**
+     * Returns a double as a JSON number
+     * @param value
+     * @return String
+     * @throws IOException If the value is not finite, as JSON can not hold it
+     */
+    private static String number(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IOException("Can not save " + value + " as JSON");
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Returns a string as a quoted JSON string
+     * @param value
+     * @return String
+     */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * A small JSON parser. Objects become LinkedHashMap, arrays ArrayList, numbers Double, and
+     * true/false Boolean.
+     */
+    private static class Parser {
+        private String text;
+        private String name;
+        private int position = 0;
+
+        Parser(String text, String name) {
+            this.text = text;
+            this.name = name;
+        }
+
+        Object parseDocument() throws IOException {
+            Object value = parseValue();
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("unexpected text after the end");
+            }
+            return value;
+        }
+
+        private Object parseValue() throws IOException {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw error("unexpected end");
+            }
+
+            char c = text.charAt(position);
+            if (c == '{') {
+                return parseObject();
+            } else if (c == '[') {
+                return parseArray();
+            } else if (c == '"') {
+                return parseString();
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            return parseNumber();
+        }
+
+        private Map<String, Object> parseObject() throws IOException {
+            Map<String, Object> object = new LinkedHashMap<String, Object>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("expected a name");
+                }
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, parseValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> parseArray() throws IOException {
+            List<Object> array = new ArrayList<Object>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(parseValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        private String parseString() throws IOException {
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("bad escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("bad escape");
+                        }
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private Double parseNumber() throws IOException {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return Double.valueOf(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("expected a value");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            return (position < text.length()) ? text.charAt(position) : 0;
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error("expected '" + c + "'");
+            }
+            position++;
+        }
+
+        private IOException error(String message) {
+            return new IOException(name + " at character " + position + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import ij.IJ;
+
+/**
+ * Class: CurveMetrics
+ * Timings and counts for the parts of the tool that run on every mouse movement: the whole
+ * update from request to overlay, the calculation of a frame, drawing the overlay, sampling,
+ * the maximum curvature search and hit testing. Each timing is kept as a histogram with buckets
+ * that double in size, so percentiles can be given without keeping every value.
+ *
+ * The numbers can be read through JMX (see CurveMetricsMBean), logged by double clicking the tool
+ * icon, or logged from a macro with call("CurveMetrics.report"). They are collected unless the
+ * palaeocurve.metrics system property is false, and can be switched on and off through JMX.
+ * When switched off each timing point costs a single read of a volatile flag.
+ *
+ * Usage:
+ * long start = CurveMetrics.start();
+ * ...
+ * CurveMetrics.SAMPLING.stop(start);
+ */
+public class CurveMetrics implements CurveMetricsMBean {
+    // Bucket i holds times below 2^i microseconds, the last bucket holds everything longer
+    static final int BUCKETS = 24;
+
+    static final Timer FRAME = new Timer("Frame latency");
+    static final Timer COMPUTE = new Timer("Compute frame");
+    static final Timer GRAPHICS = new Timer("Update graphics");
+    static final Timer SAMPLING = new Timer("Sampling");
+    static final Timer MAXIMUM_CURVATURE = new Timer("Maximum curvature");
+    static final Timer HIT_TEST = new Timer("Hit test");
+    static final Timer PROFILE = new Timer("Curvature profile");
+    private static final Timer[] TIMERS = {FRAME, COMPUTE, GRAPHICS, SAMPLING, MAXIMUM_CURVATURE, HIT_TEST, PROFILE};
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("palaeocurve.metrics"));
+    private static final LongAdder samplesEvaluated = new LongAdder();
+    private static final AtomicInteger lastRoiCount = new AtomicInteger();
+    private static final AtomicInteger maximumRoiCount = new AtomicInteger();
+    private static final LongAdder roiTotal = new LongAdder();
+    private static final LongAdder overlayCount = new LongAdder();
+
+    private static final CurveMetrics INSTANCE = new CurveMetrics();
+    private static boolean registered = false;
+
+    private CurveMetrics() {
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, once. Failing to register is not an
+     * error, the metrics are still collected and can be logged.
+     */
+    static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(INSTANCE, new ObjectName("org.palaeoware:type=PalaeoCurveTool,name=Metrics"));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another copy of the plugin's classes, e.g. after a plugin reload
+        } catch (JMException | SecurityException e) {
+            if (IJ.debugMode) {
+                IJ.log("Palaeo Curve metrics could not be registered with JMX: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the time to pass to Timer.stop(), or 0 if the metrics are switched off
+     * @return long
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Adds to the number of samples evaluated
+     * @param samples
+     */
+    static void addSamples(int samples) {
+        if (enabled) {
+            samplesEvaluated.add(samples);
+        }
+    }
+
+    /**
+     * Records the number of ROIs on an overlay after it has been updated
+     * @param rois
+     */
+    static void addOverlay(int rois) {
+        if (!enabled) {
+            return;
+        }
+        lastRoiCount.set(rois);
+        maximumRoiCount.accumulateAndGet(rois, Math::max);
+        roiTotal.add(rois);
+        overlayCount.increment();
+    }
+
+    /**
+     * Logs the summary to the ImageJ log window and returns it. Can be called from a macro with
+     * call("CurveMetrics.report").
+     * @return String
+     */
+    public static String report() {
+        String summary = INSTANCE.getSummary();
+        IJ.log(summary);
+        return summary;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public long getFrameCount() {
+        return FRAME.getCount();
+    }
+
+    public double getFrameLatencyMeanMillis() {
+        return FRAME.getMeanMillis();
+    }
+
+    public double getFrameLatency50thMillis() {
+        return FRAME.getPercentileMillis(0.50);
+    }
+
+    public double getFrameLatency95thMillis() {
+        return FRAME.getPercentileMillis(0.95);
+    }
+
+    public double getFrameLatency99thMillis() {
+        return FRAME.getPercentileMillis(0.99);
+    }
+
+    public double getFrameLatencyMaxMillis() {
+        return FRAME.getMaxMillis();
+    }
+
+    public long[] getFrameLatencyHistogram() {
+        return FRAME.getHistogram();
+    }
+
+    public long[] getHistogramBucketLimitsMicros() {
+        long[] limits = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            limits[i] = 1L << i;
+        }
+        limits[BUCKETS - 1] = Long.MAX_VALUE;
+        return limits;
+    }
+
+    public double getComputeMeanMillis() {
+        return COMPUTE.getMeanMillis();
+    }
+
+    public double getCompute95thMillis() {
+        return COMPUTE.getPercentileMillis(0.95);
+    }
+
+    public double getGraphicsMeanMillis() {
+        return GRAPHICS.getMeanMillis();
+    }
+
+    public double getGraphics95thMillis() {
+        return GRAPHICS.getPercentileMillis(0.95);
+    }
+
+    public double getSamplingMeanMillis() {
+        return SAMPLING.getMeanMillis();
+    }
+
+    public double getMaximumCurvatureMeanMillis() {
+        return MAXIMUM_CURVATURE.getMeanMillis();
+    }
+
+    public long getHitTestCount() {
+        return HIT_TEST.getCount();
+    }
+
+    public double getHitTestMeanMicros() {
+        return HIT_TEST.getMeanMillis() * 1000.0;
+    }
+
+    public long getSamplesEvaluated() {
+        return samplesEvaluated.sum();
+    }
+
+    /**
+     * Samples evaluated per second of time spent sampling
+     */
+    public double getSamplesPerSecond() {
+        long nanos = SAMPLING.getTotalNanos();
+        return (nanos > 0) ? samplesEvaluated.sum() * 1e9 / nanos : 0.0;
+    }
+
+    public int getLastRoiCount() {
+        return lastRoiCount.get();
+    }
+
+    public int getMaximumRoiCount() {
+        return maximumRoiCount.get();
+    }
+
+    public double getMeanRoiCount() {
+        long overlays = overlayCount.sum();
+        return (overlays > 0) ? (double) roiTotal.sum() / overlays : 0.0;
+    }
+
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Palaeo Curve metrics" + (enabled ? "" : " (switched off)")
+            + ", " + BezierEvaluator.INSTANCE.getName() + " evaluator\n");
+        for (Timer timer : TIMERS) {
+            summary.append(String.format("  %-18s n=%-8d mean=%.3f ms  p50=%.3f ms  p95=%.3f ms  p99=%.3f ms  max=%.3f ms%n",
+                timer.name, timer.getCount(), timer.getMeanMillis(), timer.getPercentileMillis(0.50),
+                timer.getPercentileMillis(0.95), timer.getPercentileMillis(0.99), timer.getMaxMillis()));
+        }
+        summary.append(String.format("  Samples evaluated  %d (%.0f per second of sampling)%n", getSamplesEvaluated(), getSamplesPerSecond()));
+        summary.append(String.format("  ROIs per overlay   last=%d  mean=%.1f  max=%d", getLastRoiCount(), getMeanRoiCount(), getMaximumRoiCount()));
+        return summary.toString();
+    }
+
+    public void logSummary() {
+        IJ.log(getSummary());
+    }
+
+    public void reset() {
+        for (Timer timer : TIMERS) {
+            timer.reset();
+        }
+        samplesEvaluated.reset();
+        lastRoiCount.set(0);
+        maximumRoiCount.set(0);
+        roiTotal.reset();
+        overlayCount.reset();
+    }
+
+    /**
+     * A histogram of the times taken by one part of the tool. Safe to use from several threads.
+     */
+    static class Timer {
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records the time since start, if start came from CurveMetrics.start() while switched on
+         * @param start
+         */
+        void stop(long start) {
+            if (start != 0L) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Records a time
+         * @param nanos
+         */
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        double getMeanMillis() {
+            long n = count.sum();
+            return (n > 0) ? totalNanos.sum() / (n * 1e6) : 0.0;
+        }
+
+        double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * Returns the upper limit of the bucket the percentile falls in, or the longest time if that is less
+         * @param fraction 0 to 1
+         * @return double
+         */
+        double getPercentileMillis(double fraction) {
+            long[] histogram = getHistogram();
+            long n = 0;
+            for (long value : histogram) {
+                n += value;
+            }
+            if (n == 0) {
+                return 0.0;
+            }
+
+            long rank = (long) Math.ceil(fraction * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= rank && i < BUCKETS - 1) {
+                    return Math.min((1L << i) / 1000.0, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        long[] getHistogram() {
+            long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = buckets.get(i);
+            }
+            return histogram;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+        }
+    }
+}
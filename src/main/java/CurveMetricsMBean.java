@@ -0,0 +1,38 @@
+/**
+ * Interface: CurveMetricsMBean
+ * The timings and counts of CurveMetrics as seen through JMX, for example in JConsole or VisualVM
+ * under org.palaeoware / PalaeoCurveTool. Times are in milliseconds unless named otherwise.
+ */
+public interface CurveMetricsMBean {
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+
+    long getFrameCount();
+    double getFrameLatencyMeanMillis();
+    double getFrameLatency50thMillis();
+    double getFrameLatency95thMillis();
+    double getFrameLatency99thMillis();
+    double getFrameLatencyMaxMillis();
+    long[] getFrameLatencyHistogram();
+    long[] getHistogramBucketLimitsMicros();
+
+    double getComputeMeanMillis();
+    double getCompute95thMillis();
+    double getGraphicsMeanMillis();
+    double getGraphics95thMillis();
+    double getSamplingMeanMillis();
+    double getMaximumCurvatureMeanMillis();
+    long getHitTestCount();
+    double getHitTestMeanMicros();
+
+    long getSamplesEvaluated();
+    double getSamplesPerSecond();
+
+    int getLastRoiCount();
+    int getMaximumRoiCount();
+    double getMeanRoiCount();
+
+    String getSummary();
+    void logSummary();
+    void reset();
+}
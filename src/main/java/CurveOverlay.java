@@ -0,0 +1,260 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.geom.*;
+import java.util.ArrayList;
+import ij.gui.*;
+
+/**
+ * Class: CurveOverlay
+ * Draws a bezier curve and its control points onto a single Overlay that is kept between updates.
+ * The control point ROIs are moved rather than created again, and the handles, tangents and normals
+ * are each drawn as one ShapeRoi, so the number of ROIs does not grow with the probe number.
+ * When the curvature map is on the curve is drawn coloured by its curvature as one ImageRoi
+ * (see CurvatureMap) instead of as a line.
+ */
+public class CurveOverlay {
+    private OptionsStore optionStore;
+    private Overlay overlay = new Overlay();
+    private ArrayList<OvalRoi> controlPointROIs = new ArrayList<OvalRoi>();
+    private int controlPointWidth;
+    private ArrayList<Roi> maximumCurveROIs = new ArrayList<Roi>();
+    private ShapeRoi handleROI = null;
+    private ShapeRoi curveROI = null;
+    private ShapeRoi tangentROI = null;
+    private ShapeRoi normalROI = null;
+    private CurvatureMap curvatureMap = null;
+    private ImageRoi mapROI = null;
+
+    /**
+     * Constructor
+     * @param optionStore
+     */
+    CurveOverlay(OptionsStore optionStore) {
+        this.optionStore = optionStore;
+    }
+
+    /**
+     * Returns the overlay that the curve is drawn on
+     * @return Overlay
+     */
+    public Overlay getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Returns the area of the image the overlay covers, so only that part has to be drawn again
+     * @return Rectangle | null if the overlay is empty
+     */
+    public Rectangle getBounds() {
+        Rectangle bounds = null;
+        for (int i = 0; i < overlay.size(); i++) {
+            Rectangle roiBounds = overlay.get(i).getBounds();
+            if (roiBounds != null) {
+                bounds = (bounds == null) ? new Rectangle(roiBounds) : bounds.union(roiBounds);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Adds the curve's ROIs to another overlay, such as one holding several curves. An active curve is
+     * added as it is drawn on its own overlay; otherwise only the curve and its points of maximum curvature
+     * are added. The ROIs are shared, not copied.
+     * @param target
+     * @param active
+     */
+    public void addTo(Overlay target, boolean active) {
+        if (active) {
+            for (int i = 0; i < overlay.size(); i++) {
+                target.add(overlay.get(i));
+            }
+            return;
+        }
+
+        if (mapROI != null) {
+            target.add(mapROI);
+        } else if (curveROI != null) {
+            target.add(curveROI);
+        }
+        for (Roi maximumCurveROI : maximumCurveROIs) {
+            target.add(maximumCurveROI);
+        }
+    }
+
+    /**
+     * Removes everything from the overlay
+     */
+    public void clear() {
+        overlay.clear();
+        controlPointROIs.clear();
+        maximumCurveROIs.clear();
+        handleROI = null;
+        curveROI = null;
+        tangentROI = null;
+        normalROI = null;
+        curvatureMap = null;
+        mapROI = null;
+    }
+
+    /**
+     * Updates the overlay graphics from a calculated frame
+     * @param frame
+     */
+    public void update(CurveFrame frame) {
+        overlay.clear();
+
+        updateControlPoints(frame.controlPoints);
+        for (OvalRoi controlPointROI : controlPointROIs) {
+            overlay.add(controlPointROI);
+        }
+        if (handleROI != null) {
+            overlay.add(handleROI);
+        }
+
+        curveROI = null;
+        tangentROI = null;
+        normalROI = null;
+        maximumCurveROIs.clear();
+        if (frame.curvePath == null) {
+            curvatureMap = null;
+            mapROI = null;
+            return;
+        }
+
+        if (optionStore.getShowCurvatureMap() && frame.segmentKappa != null) {
+            if (curvatureMap == null) {
+                curvatureMap = new CurvatureMap(optionStore);
+            }
+            mapROI = curvatureMap.update(frame);
+            overlay.add(mapROI);
+        } else {
+            // The map is only kept while it is shown
+            curvatureMap = null;
+            mapROI = null;
+            curveROI = new ShapeRoi(frame.curvePath);
+            curveROI.setStrokeColor(Color.yellow);
+            curveROI.setName("Bezier Curve");
+            overlay.add(curveROI);
+        }
+
+        if (frame.tangentPath != null) {
+            tangentROI = new ShapeRoi(frame.tangentPath);
+            tangentROI.setStrokeColor(Color.green);
+            tangentROI.setName("Tangents");
+            overlay.add(tangentROI);
+        }
+
+        if (frame.normalPath != null) {
+            normalROI = new ShapeRoi(frame.normalPath);
+            normalROI.setStrokeColor(Color.pink);
+            normalROI.setName("Normals");
+            overlay.add(normalROI);
+        }
+
+        if (frame.coordsOfMaximumCurve.size() > 0 && optionStore.getShowMaximumCurvaturePoints()) {
+            int i = 0;
+            for (double[] coord : frame.coordsOfMaximumCurve) {
+                OvalRoi maximumCurveOval = new OvalRoi((coord[0] - 2), (coord[1] - 2), 4, 4);
+                maximumCurveOval.setStrokeColor(optionStore.getMaximumCurvaturePointsStroke());
+                maximumCurveOval.setFillColor(optionStore.getMaximumCurvaturePointsFill());
+                maximumCurveOval.setName("Maximum Curve " + (i + 1));
+                maximumCurveROIs.add(maximumCurveOval);
+
+                String labelText = String.format("%.5g%%", frame.positionOfMaximumCurve.get(i) * 100);
+                TextRoi textROI = new TextRoi((coord[0] + 5), (coord[1] + 5), 10, 24, labelText, new Font("Arial", Font.PLAIN, 10));
+                textROI.setStrokeColor(Color.BLACK);
+                textROI.setFillColor(Color.WHITE);
+                textROI.setName("Maximum Curve Text " + (i + 1));
+                maximumCurveROIs.add(textROI);
+                i++;
+            }
+            for (Roi maximumCurveROI : maximumCurveROIs) {
+                overlay.add(maximumCurveROI);
+            }
+        }
+    }
+
+    /**
+     * Moves the control point ROIs to the control point coordinates, adding or removing ROIs only when
+     * the number of control points has changed. Points are in pairs of the point on the curve (filled red)
+     * followed by its handle (blue), and the handle lines are rebuilt as one path.
+     * @param controlPoints
+     */
+    private void updateControlPoints(double[][] controlPoints) {
+        int pointWidth = optionStore.getControlPointWidth();
+        if (pointWidth != controlPointWidth) {
+            controlPointROIs.clear();
+            controlPointWidth = pointWidth;
+        }
+
+        // Only whole pairs are drawn
+        int numberPoints = controlPoints.length - (controlPoints.length % 2);
+        while (controlPointROIs.size() > numberPoints) {
+            controlPointROIs.remove(controlPointROIs.size() - 1);
+        }
+
+        Path2D.Double handlePath = new Path2D.Double();
+        for (int xx = 0; xx < numberPoints; xx++) {
+            double[] point = controlPoints[xx];
+            double left = point[0] - (pointWidth / 2.0);
+            double top = point[1] - (pointWidth / 2.0);
+
+            if (xx < controlPointROIs.size()) {
+                controlPointROIs.get(xx).setLocation(left, top);
+            } else {
+                OvalRoi controlPointOval = new OvalRoi(left, top, pointWidth, pointWidth);
+                if (xx % 2 == 0) {
+                    // Control Point 1 (on curve)
+                    controlPointOval.setFillColor(Color.red);
+                    controlPointOval.setStrokeColor(Color.red);
+                } else {
+                    // Control Point 2 (the handle)
+                    controlPointOval.setStrokeColor(Color.blue);
+                }
+                controlPointOval.setName("Control Point " + xx);
+                controlPointROIs.add(controlPointOval);
+            }
+
+            if (xx % 2 == 0) {
+                handlePath.moveTo(point[0], point[1]);
+            } else {
+                handlePath.lineTo(point[0], point[1]);
+            }
+        }
+
+        handleROI = null;
+        if (numberPoints > 0) {
+            handleROI = new ShapeRoi(handlePath);
+            handleROI.setStrokeColor(Color.blue);
+            handleROI.setName("Handle Lines");
+        }
+    }
+
+    /**
+     * Returns a single path holding a line from every sample along either its tangent or its normal.
+     * This does not touch the overlay, so can be called from the compute thread.
+     * @param sampledCurve
+     * @param tangents True for tangents, false for normals
+     * @param scaleFactor Length of the lines
+     * @return Path2D.Double
+     */
+    static Path2D.Double getSampleLines(SampledCurve sampledCurve, boolean tangents, double scaleFactor) {
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, sampledCurve.getSampleCount() * 2);
+        for (int k = 0; k < sampledCurve.getSampleCount(); k++) {
+            double x = sampledCurve.getX(k);
+            double y = sampledCurve.getY(k);
+            double directionX = tangents ? sampledCurve.getTangentX(k) : sampledCurve.getNormalX(k);
+            double directionY = tangents ? sampledCurve.getTangentY(k) : sampledCurve.getNormalY(k);
+
+            // Skip samples where the direction is undefined
+            if (Double.isNaN(directionX) || Double.isNaN(directionY)) {
+                continue;
+            }
+
+            path.moveTo(x, y);
+            path.lineTo(x + (directionX * scaleFactor), y + (directionY * scaleFactor));
+        }
+        return path;
+    }
+}
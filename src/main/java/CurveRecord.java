@@ -0,0 +1,85 @@
+/**
+ * Class: CurveRecord
+ * One saved curve: the image it was drawn on, the sampling options it was drawn with, and the
+ * control point coordinates of its segments packed eight per segment (x0, y0, x1, y1, x2, y2, x3, y3).
+ * This is what CurveArchive and CurveJson read and write.
+ */
+public class CurveRecord {
+    String imageId;
+    int probeNumber;
+    boolean adaptiveSampling;
+    double adaptiveTolerance;
+    int adaptiveMaximumDepth;
+    double[] coordinates;
+
+    /**
+     * Constructor
+     * @param imageId Name of the image the curve belongs to | null
+     * @param optionStore Options the curve was drawn with
+     * @param coordinates Packed control point coordinates
+     */
+    public CurveRecord(String imageId, OptionsStore optionStore, double[] coordinates) {
+        this.imageId = (imageId != null) ? imageId : "";
+        this.probeNumber = optionStore.getProbeNumber();
+        this.adaptiveSampling = optionStore.getAdaptiveSampling();
+        this.adaptiveTolerance = optionStore.getAdaptiveTolerance();
+        this.adaptiveMaximumDepth = optionStore.getAdaptiveMaximumDepth();
+        this.coordinates = coordinates;
+    }
+
+    /**
+     * Constructor from the segments of a curve
+     * @param imageId Name of the image the curve belongs to | null
+     * @param optionStore Options the curve was drawn with
+     * @param bezierList
+     */
+    public CurveRecord(String imageId, OptionsStore optionStore, BezierSegmentList bezierList) {
+        this(imageId, optionStore, bezierList.getSegmentCoordinates());
+    }
+
+    /**
+     * Returns the name of the image the curve belongs to, empty if not known
+     * @return String
+     */
+    public String getImageId() {
+        return imageId;
+    }
+
+    /**
+     * Returns the number of segments
+     * @return int
+     */
+    public int getNumberSegments() {
+        return coordinates.length / SegmentStore.COORDINATES_PER_SEGMENT;
+    }
+
+    /**
+     * Returns the packed control point coordinates
+     * @return double[]
+     */
+    public double[] getCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * Sets the saved sampling options on an options store
+     * @param optionStore
+     */
+    public void applyOptions(OptionsStore optionStore) {
+        optionStore.setProbeNumber(probeNumber);
+        optionStore.setAdaptiveSampling(adaptiveSampling);
+        optionStore.setAdaptiveTolerance(adaptiveTolerance);
+        optionStore.setAdaptiveMaximumDepth(adaptiveMaximumDepth);
+    }
+
+    /**
+     * Builds the curve as a new BezierSegmentList
+     * @param optionStore
+     * @return BezierSegmentList
+     */
+    public BezierSegmentList createSegmentList(OptionsStore optionStore) {
+        BezierSegmentList bezierList = new BezierSegmentList(optionStore);
+        bezierList.addSegments(coordinates);
+        return bezierList;
+    }
+}
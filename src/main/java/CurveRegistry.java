@@ -0,0 +1,144 @@
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import ij.ImageListener;
+import ij.ImagePlus;
+
+/**
+ * Class: CurveRegistry
+ * Holds the curves of each image, so every image window has its own curves and switching between
+ * windows shows each image's own. The curves of a stack are kept for each position (see StackCurves),
+ * and the curves of the position being viewed are the ones returned by get(). Images are held weakly
+ * and the curves of an image are removed when it is closed, so curves are never kept for images that
+ * have gone. The analysis of the curves
+ * of every image is kept in one CurveCache, so memory stays within its limit however many images
+ * are open, while switching back to a recently used image does not sample its curves again.
+ *
+ * The registry is told when an image is updated; if the position shown of an image with curves has
+ * changed, for example by scrolling through the slices, the position listener is called so the
+ * overlay can be replaced by the new position's curves.
+ */
+public class CurveRegistry implements ImageListener {
+    private final OptionsStore optionsStore;
+    private final CurveCache cache;
+    private final Map<ImagePlus, StackCurves> images = new WeakHashMap<ImagePlus, StackCurves>();
+    private volatile Consumer<ImagePlus> positionListener = null;
+
+    /**
+     * Constructor. Listens for images being closed and updated until dispose() is called, so the
+     * tool makes one registry and hands it on to any instance that replaces it.
+     * @param optionsStore
+     */
+    CurveRegistry(OptionsStore optionsStore) {
+        this.optionsStore = optionsStore;
+        this.cache = new CurveCache(CurveCache.DEFAULT_MAXIMUM_SAMPLES);
+        ImagePlus.addImageListener(this);
+    }
+
+    /**
+     * Returns the curves of the position of an image being viewed, creating an empty collection the first time
+     * @param imp
+     * @return CurveCollection
+     */
+    public CurveCollection get(ImagePlus imp) {
+        StackCurves stack = getStack(imp);
+        int stackIndex = imp.getCurrentSlice();
+        stack.setShownIndex(stackIndex);
+        return stack.get(stackIndex);
+    }
+
+    /**
+     * Returns the curves of the position of an image being viewed, if it has any
+     * @param imp
+     * @return CurveCollection | null
+     */
+    public CurveCollection find(ImagePlus imp) {
+        StackCurves stack = findStack(imp);
+        return (stack != null) ? stack.find(imp.getCurrentSlice()) : null;
+    }
+
+    /**
+     * Returns the curves of every position of an image, creating them the first time
+     * @param imp
+     * @return StackCurves
+     */
+    public synchronized StackCurves getStack(ImagePlus imp) {
+        StackCurves stack = images.get(imp);
+        if (stack == null) {
+            stack = new StackCurves(optionsStore, cache, imp.getNChannels(), imp.getNSlices(), imp.getNFrames());
+            images.put(imp, stack);
+        }
+        return stack;
+    }
+
+    /**
+     * Returns the curves of every position of an image, if it has any
+     * @param imp
+     * @return StackCurves | null
+     */
+    public synchronized StackCurves findStack(ImagePlus imp) {
+        return images.get(imp);
+    }
+
+    /**
+     * Removes the curves of an image
+     * @param imp
+     */
+    public synchronized void remove(ImagePlus imp) {
+        StackCurves stack = images.remove(imp);
+        if (stack != null) {
+            stack.clear();
+        }
+    }
+
+    /**
+     * Returns the number of images with curves
+     * @return int
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Sets what is called, on the thread that updated the image, when the position shown of an
+     * image with curves changes
+     * @param listener
+     */
+    public void setPositionListener(Consumer<ImagePlus> listener) {
+        positionListener = listener;
+    }
+
+    /**
+     * Returns the cache the analysis of every image's curves is kept in
+     * @return CurveCache
+     */
+    public CurveCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Stops listening for images being closed and removes every image's curves
+     */
+    public synchronized void dispose() {
+        ImagePlus.removeImageListener(this);
+        for (StackCurves stack : images.values()) {
+            stack.clear();
+        }
+        images.clear();
+    }
+
+    public void imageOpened(ImagePlus imp) {
+    }
+
+    public void imageClosed(ImagePlus imp) {
+        remove(imp);
+    }
+
+    public void imageUpdated(ImagePlus imp) {
+        StackCurves stack = findStack(imp);
+        Consumer<ImagePlus> listener = positionListener;
+        if (stack != null && listener != null && stack.setShownIndex(imp.getCurrentSlice())) {
+            listener.accept(imp);
+        }
+    }
+}
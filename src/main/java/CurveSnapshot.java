@@ -0,0 +1,135 @@
+/**
+ * Class: CurveSnapshot
+ * An unchanging copy of the control points of a BezierSegmentList at one moment, published by the
+ * list with BezierSegmentList.publish(). The coordinates are packed eight per segment in the order
+ * x0, y0, x1, y1, x2, y2, x3, y3. As nothing in a snapshot can change, any number of threads can read
+ * it while the list goes on being edited. To sample or measure a snapshot, copy it into a list of the
+ * thread's own with BezierSegmentList.setSegments(), which only moves the points that differ.
+ *
+ * A snapshot taken while the whole curve is being moved records the version of the snapshot the move
+ * started from and how far it has moved since, so a thread holding the samples of an earlier snapshot of
+ * the same move can shift them by the difference instead of sampling the curve again (see getTranslationFrom()).
+ */
+public class CurveSnapshot {
+    static final CurveSnapshot EMPTY = new CurveSnapshot(new double[0], new double[0][], 0);
+
+    private final double[] coordinates;
+    private final double[][] placedPoints;
+    private final int version;
+    private final int translationBase;
+    private final double translationX;
+    private final double translationY;
+
+    /**
+     * Constructor. The arrays are kept, not copied, so must not be changed afterwards.
+     * @param coordinates Packed control point coordinates
+     * @param placedPoints Points placed so far for a first segment that is not finished, when there are no segments
+     * @param version Version of the list the snapshot was taken from
+     */
+    CurveSnapshot(double[] coordinates, double[][] placedPoints, int version) {
+        this(coordinates, placedPoints, version, -1, 0.0, 0.0);
+    }
+
+    /**
+     * Constructor for a snapshot of a curve that has only been moved as a whole since an earlier snapshot
+     * @param coordinates Packed control point coordinates
+     * @param placedPoints
+     * @param version
+     * @param translationBase Version of the snapshot the move started from, -1 if it has not been moved
+     * @param translationX Distance moved in X since that snapshot
+     * @param translationY Distance moved in Y since that snapshot
+     */
+    CurveSnapshot(double[] coordinates, double[][] placedPoints, int version, int translationBase, double translationX, double translationY) {
+        this.coordinates = coordinates;
+        this.placedPoints = placedPoints;
+        this.version = version;
+        this.translationBase = translationBase;
+        this.translationX = translationX;
+        this.translationY = translationY;
+    }
+
+    /**
+     * Returns how far the curve has moved as a whole since an earlier snapshot of the same list, if
+     * only moving the curve has happened in between
+     * @param earlier
+     * @return double[] X and Y distance | null if the curve has changed in any other way
+     */
+    public double[] getTranslationFrom(CurveSnapshot earlier) {
+        if (translationBase < 0 || earlier == null || earlier.getNumberSegments() != getNumberSegments()) {
+            return null;
+        }
+        if (earlier.version == translationBase) {
+            return new double[] {translationX, translationY};
+        }
+        if (earlier.translationBase == translationBase) {
+            return new double[] {translationX - earlier.translationX, translationY - earlier.translationY};
+        }
+        return null;
+    }
+
+    /**
+     * Returns the version of the list the snapshot was taken from. This changes every time the list
+     * is edited, so two snapshots of the same list with the same version hold the same curve.
+     * @return int
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of segments held
+     * @return int
+     */
+    public int getNumberSegments() {
+        return coordinates.length / SegmentStore.COORDINATES_PER_SEGMENT;
+    }
+
+    /**
+     * Are there no segments held?
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return (coordinates.length == 0);
+    }
+
+    /**
+     * Returns one packed coordinate
+     * @param i
+     * @return double
+     */
+    double getCoordinate(int i) {
+        return coordinates[i];
+    }
+
+    /**
+     * Returns a copy of the packed coordinates
+     * @return double[]
+     */
+    public double[] getCoordinates() {
+        return coordinates.clone();
+    }
+
+    /**
+     * Returns the coordinates for the control points, in the same form and order as
+     * BezierSegmentList.getControlPointCoordinates()
+     * @return double[][]
+     */
+    public double[][] getControlPointCoordinates() {
+        if (isEmpty()) {
+            double[][] points = new double[placedPoints.length][];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = placedPoints[i].clone();
+            }
+            return points;
+        }
+
+        // Each segment gives point0, point1, point3 then point2, so the handles are drawn from the end points
+        int[] order = {0, 1, 3, 2};
+        double[][] points = new double[coordinates.length / 2][];
+        for (int i = 0; i < points.length; i++) {
+            int point = (i & ~3) + order[i & 3];
+            points[i] = new double[] {coordinates[2 * point], coordinates[(2 * point) + 1]};
+        }
+        return points;
+    }
+}
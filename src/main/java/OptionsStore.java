@@ -6,6 +6,9 @@ import java.awt.Color;
 public class OptionsStore {
     int controlPointWidth;
     int probeNumber;
+    boolean adaptiveSampling;
+    double adaptiveTolerance;
+    int adaptiveMaximumDepth;
     boolean showTangents;
     boolean showNormals;
     double tangentScaleFactor;
@@ -13,6 +16,10 @@ public class OptionsStore {
     boolean showMaximumCurvaturePoints;
     Color maximumCurvaturePointsStroke;
     Color maximumCurvaturePointsFill;
+    boolean showCurvatureProfile;
+    boolean showCurvatureMap;
+    double curvatureMapMaximum;
+    int curvatureMapWidth;
 
     /**
      * Contructor
@@ -35,6 +42,15 @@ public class OptionsStore {
         // calculated for bezier curve segment. Default = 100
         probeNumber = 256;
 
+        // Adaptive sampling is used instead of the fixed probe number
+        // when turned on. Each segment is split in half until every piece 
+        // is within adaptiveTolerance pixels of a straight line, or has been 
+        // split adaptiveMaximumDepth times, so straight sections get few 
+        // points and tight bends get many.
+        adaptiveSampling = false;
+        adaptiveTolerance = 0.1;
+        adaptiveMaximumDepth = 12;
+
         // These are used for testing the tangents and normals
         // by daring them on screen. Recommend reducing the 
         // probeNumber to below 50 if using these settings, 
@@ -50,6 +66,21 @@ public class OptionsStore {
         showMaximumCurvaturePoints = true;
         maximumCurvaturePointsStroke = Color.RED;
         maximumCurvaturePointsFill = Color.RED;
+
+        // Turn on to keep the curvature of every sample for the
+        // curvature profile plot of the active curve
+        showCurvatureProfile = false;
+
+        // Turn on to draw the curve coloured by its curvature instead
+        // of as a yellow line. Curvature is 1 / the radius of the bend in
+        // image pixels (not the calibrated unit), so 0.1 is a radius of 10
+        // pixels whatever the length of the handles. Curvature from 0 to
+        // curvatureMapMaximum goes through the colour table, anything
+        // higher has the last colour. The curve is drawn curvatureMapWidth
+        // pixels wide.
+        showCurvatureMap = false;
+        curvatureMapMaximum = 0.1;
+        curvatureMapWidth = 3;
     }
 
     /**
@@ -88,6 +119,36 @@ public class OptionsStore {
         probeNumber = num;
     }
 
+    public boolean getAdaptiveSampling()
+    {
+        return adaptiveSampling;
+    }
+
+    public void setAdaptiveSampling(boolean bool)
+    {
+        adaptiveSampling = bool;
+    }
+
+    public double getAdaptiveTolerance()
+    {
+        return adaptiveTolerance;
+    }
+
+    public void setAdaptiveTolerance(double val)
+    {
+        adaptiveTolerance = val;
+    }
+
+    public int getAdaptiveMaximumDepth()
+    {
+        return adaptiveMaximumDepth;
+    }
+
+    public void setAdaptiveMaximumDepth(int num)
+    {
+        adaptiveMaximumDepth = num;
+    }
+
     public boolean getShowTangents()
     {
         return showTangents;
@@ -158,4 +219,44 @@ public class OptionsStore {
     {
         maximumCurvaturePointsFill = color;
     }
+
+    public boolean getShowCurvatureProfile()
+    {
+        return showCurvatureProfile;
+    }
+
+    public void setShowCurvatureProfile(boolean bool)
+    {
+        showCurvatureProfile = bool;
+    }
+
+    public boolean getShowCurvatureMap()
+    {
+        return showCurvatureMap;
+    }
+
+    public void setShowCurvatureMap(boolean bool)
+    {
+        showCurvatureMap = bool;
+    }
+
+    public double getCurvatureMapMaximum()
+    {
+        return curvatureMapMaximum;
+    }
+
+    public void setCurvatureMapMaximum(double val)
+    {
+        curvatureMapMaximum = val;
+    }
+
+    public int getCurvatureMapWidth()
+    {
+        return curvatureMapWidth;
+    }
+
+    public void setCurvatureMapWidth(int width)
+    {
+        curvatureMapWidth = width;
+    }
 }
@@ -0,0 +1,35 @@
+import ij.*;
+import ij.plugin.PlugIn;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The Palaeo_Curve_Batch plugin class. Measures every saved curve definition in a folder,
+ * see CurveBatchRunner.
+ */
+public class Palaeo_Curve_Batch implements PlugIn {
+
+	/**
+	 * Headless entry point, the same as CurveBatchRunner.main()
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		CurveBatchRunner.main(args);
+	}
+
+	public void run(String arg) {
+		String folder = IJ.getDirectory("Choose a folder of curve definitions");
+		if (folder == null)
+			return;
+
+		File results = new File(folder, "Palaeo_Curve_Results.csv");
+		try {
+			int measured = new CurveBatchRunner(new OptionsStore(), 0).run(new File(folder), results);
+			IJ.log("Palaeo Curve measured " + measured + " curves, results written to " + results.getPath());
+		} catch (IOException e) {
+			IJ.error("Palaeo Curve Batch", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -1,12 +1,20 @@
 import ij.*;
-import ij.process.*;
 import ij.gui.*;
+import ij.io.FileInfo;
 import ij.plugin.tool.PlugInTool;
 import java.awt.*;
-import java.awt.geom.*;
-import java.util.ArrayList;
 import java.awt.event.*;
-import java.awt.Font;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * The Palaeo_Curve_Tool plugin class
@@ -14,13 +22,12 @@ import java.awt.Font;
 public class Palaeo_Curve_Tool extends PlugInTool {
 	
 	private OptionsStore optionsStore;
-	private BezierSegmentList bezierList;
+	private CurveRegistry registry;
 	private BezierControlPoint bezierPoint;
-	double[][][] coordsForT;
-	double[][][] coordsTangents;
-	double[][][] coordsNormals;
-	double[][] kappaValues;
-	double[][] tValues;
+	private CurveComputeScheduler scheduler;
+	private CurvatureProfile profile;
+	// The tool on the toolbar, for macros
+	private static Palaeo_Curve_Tool instance;
 
 	/**
 	 * Main method added for debuging and testing
@@ -31,19 +38,36 @@ public class Palaeo_Curve_Tool extends PlugInTool {
 
 		IJ.setDebugMode(true);
 
-		// open an image (if needed)
-		ImagePlus image = IJ.openImage("D:\\F1.large.jpg");
-		image.show();
+		// open the image given on the command line, or ask for one
+		ImagePlus image = (args.length > 0) ? IJ.openImage(args[0]) : IJ.openImage();
+		if (image != null)
+			image.show();
 
 		IJ.log("Palaeo Curve plugin has been programically called...");
 		IJ.runPlugIn("Palaeo_Curve_Tool", "");
 	}
 
 	public Palaeo_Curve_Tool() {
-        if (IJ.versionLessThan("1.46f")) ;
+		// Shows a message if ImageJ is too old
+		IJ.versionLessThan("1.46f");
 
-		this.optionsStore = new OptionsStore();
-		this.bezierList = new BezierSegmentList(optionsStore);
+		Palaeo_Curve_Tool previous = instance;
+		if (previous != null) {
+			// Adding the tool to the toolbar again replaces the one there. Carry on with its curves,
+			// options and compute thread, so a registry's image listener is only ever added once.
+			this.optionsStore = previous.optionsStore;
+			this.registry = previous.registry;
+			this.scheduler = previous.scheduler;
+			this.profile = previous.profile;
+		} else {
+			this.optionsStore = new OptionsStore();
+			this.registry = new CurveRegistry(optionsStore);
+			this.scheduler = new CurveComputeScheduler();
+		}
+		// Show the curves of the new position when scrolling through a stack
+		this.registry.setPositionListener(imp -> EventQueue.invokeLater(() -> showPosition(imp)));
+		CurveMetrics.register();
+		instance = this;
 	}
 
 	public String getToolIcon() {
@@ -64,39 +88,66 @@ public class Palaeo_Curve_Tool extends PlugInTool {
 
 	public void showOptionsDialog() {
 		IJ.log("Palaeo Curve Options has been called...");
+		CurveMetrics.report();
 	}
 
     public void mouseDragged(ImagePlus imp, MouseEvent e) {
+		CurveEntry active = registry.get(imp).getActive();
+		if (active == null)
+			return;
+
+		BezierSegmentList bezierList = active.getSegmentList();
 		ImageCanvas ic = imp.getCanvas();
 		double x = ic.offScreenXD(e.getX());
 		double y = ic.offScreenYD(e.getY());
 		if (bezierList.isEmpty())
 			bezierList.cursorPos(x, y);
 		else {
-			if (bezierPoint == null)
-				bezierList.dragTo(imp.getOverlay(), x, y);
-			else
+			if (bezierPoint == null) {
+				CurveOverlay curveOverlay = active.getCurveOverlay();
+				Rectangle before = curveOverlay.getBounds();
+				bezierList.dragTo(curveOverlay.getOverlay(), x, y);
+				// The overlay has been moved already, so show it without waiting for the new frame,
+				// drawing again only where the curve was and where it is now
+				Rectangle after = curveOverlay.getBounds();
+				if (before == null || after == null)
+					imp.draw();
+				else {
+					Rectangle area = before.union(after);
+					int margin = 2 + (int)Math.ceil(2.0 / ic.getMagnification());
+					area.grow(margin, margin);
+					imp.draw(area.x, area.y, area.width, area.height);
+				}
+			} else
 				bezierPoint.setPoint(x, y);
 		}
 		update(imp);
 	}
         
 	public void mouseClicked(ImagePlus imp, MouseEvent e) {
-		if (!bezierList.isEmpty()) {
+		CurveCollection curves = registry.get(imp);
+		CurveEntry active = curves.getActive();
+		if (active != null && !active.getSegmentList().isEmpty()) {
 			// Look for a control point if we find it then
 			// set as the current control point
 			ImageCanvas ic = imp.getCanvas();
 			double x = ic.offScreenXD(e.getX());
 			double y = ic.offScreenYD(e.getY());
-			bezierPoint = bezierList.insideControlPoint(x,y);
+			bezierPoint = findControlPoint(curves, x, y);
+			if (bezierPoint != null)
+				return;
  			
-			// Otherwise remove the curve
-			if (bezierPoint == null && e.isAltDown()) {
-				Overlay overlay = imp.getOverlay();
-				if (overlay==null) return;
-				
-				overlay.clear();
-				bezierList = new BezierSegmentList(optionsStore);
+			// Otherwise remove the active curve, leaving the others
+			if (e.isAltDown()) {
+				scheduler.cancel(imp);
+				curves.getJournal().curveRemoved(active);
+				curves.remove(active);
+				update(imp);
+			}
+			// or, clicking away from every curve, deselect it so the next click starts a new curve
+			else if (curves.findCurve(x, y) == null) {
+				curves.setActive(null);
+				update(imp);
 			}
 		}
 	}
@@ -106,13 +157,35 @@ public class Palaeo_Curve_Tool extends PlugInTool {
 		double x = ic.offScreenXD(e.getX());
 		double y = ic.offScreenYD(e.getY());
 
+		// Pressing on a curve that is not active selects it, anywhere else with no active curve starts a new one
+		CurveCollection curves = registry.get(imp);
+		CurveEntry active = curves.getActive();
+		if (active == null || !active.getSegmentList().isEmpty()) {
+			CurveEntry selected = (active == null || findControlPoint(curves, x, y) == null) ? curves.findCurve(x, y) : null;
+			if (selected != null && selected != active) {
+				curves.setActive(selected);
+				curves.getJournal().begin(selected);
+				bezierPoint = null;
+				selected.getSegmentList().cursorPos(x, y);
+				update(imp);
+				return;
+			}
+			if (active == null) {
+				active = curves.addNew();
+				curves.getJournal().curveAdded(active);
+			}
+		}
+
+		// Everything done from here until the mouse is released is one step to undo
+		curves.getJournal().begin(active);
+		BezierSegmentList bezierList = active.getSegmentList();
 		if (bezierList.isEmpty()) {
 			bezierList.setNewBezierControlPoint(x, y);
 			update(imp);
 			return;
 		} 
         
-		bezierPoint = bezierList.insideControlPoint(x,y);
+		bezierPoint = findControlPoint(curves, x, y);
 		if (bezierPoint == null) {
 			bezierList.cursorPos(x, y);
 			return;
@@ -143,6 +216,12 @@ public class Palaeo_Curve_Tool extends PlugInTool {
 	}
 
 	public void mouseReleased(ImagePlus imp, MouseEvent e){
+		CurveCollection curves = registry.get(imp);
+		CurveEntry active = curves.getActive();
+		if (active == null)
+			return;
+
+		BezierSegmentList bezierList = active.getSegmentList();
 		ImageCanvas ic = imp.getCanvas();
 		double x = ic.offScreenXD(e.getX());
 		double y = ic.offScreenYD(e.getY());        
@@ -156,163 +235,533 @@ public class Palaeo_Curve_Tool extends PlugInTool {
 			}
 			bezierPoint = null;
 		}
+		curves.getJournal().commit();
 	}
 
 	/**
-	 * Does the update of the curve and calcualtions
+	 * Undoes the last edit of the curves at the position of the image being viewed
 	 * @param imp
+	 * @return boolean False if there was nothing to undo
 	 */
-	private void update(ImagePlus imp)
-	{
-		Path2D.Double curvePath = bezierList.getCurvePath();
-		ArrayList<double[]> coordsOfMaximumCurve = new ArrayList<double[]>();
-		ArrayList<Double> tOfMaximumCurve = new ArrayList<Double>();
-
-		if (curvePath != null) {
-			// Update these calculated values now, so we don't have to do it again later
-			coordsForT = bezierList.getCurveCoordinates();
-			coordsTangents = bezierList.getCurveTangents();
-			coordsNormals = bezierList.getCurveNormals();
-			kappaValues = bezierList.getCurveKappas();
-			tValues = bezierList.getCurveTValues();
-
-			// For debugging...
-			/*for(int j = 0; j < coordsForT.length; j++)
-			{
-				IJ.log("Segment: " + j);
-				for(int k = 0; k < coordsForT[j].length; k++)
-				{
-					IJ.log("- x:" + coordsForT[j][k][0] + " y:" + coordsForT[j][k][1] + 
-					" | Tangent x:" + coordsTangents[j][k][0] + " y:" + coordsTangents[j][k][1] +
-					" | Normal x:" + coordsNormals[j][k][0] + " y:" + coordsNormals[j][k][1] +
-					" | Kappa:" + kappaValues[j][k]);
-				}
-			}*/
-
-			// Find coordinate(s) that has the most curvature and mark...
-			double currentHighestKappa = 0.01;
-			for(int j = 0; j < kappaValues.length; j++)
-			{
-				for(int k = 0; k < kappaValues[j].length; k++)
-				{
-					double kappa = doubleAbs(kappaValues[j][k]);
-					if(kappa > currentHighestKappa) 
-					{
-						currentHighestKappa = kappa;
-						coordsOfMaximumCurve.clear();
-						coordsOfMaximumCurve.add(coordsForT[j][k]);
-						tOfMaximumCurve.clear();
-						tOfMaximumCurve.add(tValues[j][k]/kappaValues.length);
-
-					} else if (kappa == currentHighestKappa) {
-						coordsOfMaximumCurve.add(coordsForT[j][k]);
-						tOfMaximumCurve.add(tValues[j][k]/kappaValues.length);
-					}
-				}
-			}
+	public boolean undo(ImagePlus imp) {
+		return replay(imp, true);
+	}
+
+	/**
+	 * Redoes the last edit undone of the curves at the position of the image being viewed
+	 * @param imp
+	 * @return boolean False if there was nothing to redo
+	 */
+	public boolean redo(ImagePlus imp) {
+		return replay(imp, false);
+	}
+
+	/**
+	 * Undoes the last curve edit on the current image. Can be called from a macro with
+	 * call("Palaeo_Curve_Tool.undoEdit"), for example from a macro with a keyboard shortcut.
+	 * @return String "true" if an edit was undone
+	 */
+	public static String undoEdit() {
+		return onEventThread("false", () -> {
+			ImagePlus imp = WindowManager.getCurrentImage();
+			return String.valueOf(instance != null && imp != null && instance.undo(imp));
+		});
+	}
+
+	/**
+	 * Redoes the last curve edit undone on the current image. Can be called from a macro with
+	 * call("Palaeo_Curve_Tool.redoEdit").
+	 * @return String "true" if an edit was redone
+	 */
+	public static String redoEdit() {
+		return onEventThread("false", () -> {
+			ImagePlus imp = WindowManager.getCurrentImage();
+			return String.valueOf(instance != null && imp != null && instance.redo(imp));
+		});
+	}
+
+	/**
+	 * Runs a macro call on the event thread, where the curves are edited, and waits for its result.
+	 * Macros run on a thread of their own, which must not edit the curves while the mouse handlers do.
+	 * @param interrupted Result if the macro is interrupted while waiting
+	 * @param call
+	 * @return String
+	 */
+	private static String onEventThread(String interrupted, Supplier<String> call) {
+		if (EventQueue.isDispatchThread())
+			return call.get();
+
+		String[] result = {interrupted};
+		try {
+			EventQueue.invokeAndWait(() -> result[0] = call.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
 		}
-		
-		updateGraphics(imp, coordsOfMaximumCurve, tOfMaximumCurve);
+		return result[0];
 	}
 
 	/**
-	 * Adds/Updates the overlay graphics
+	 * Fits curves to the selection on an image, or if there is none and the image is binary to the
+	 * outline of every object in it, and adds them to the curves at the position being viewed. Each
+	 * curve added can be undone on its own.
 	 * @param imp
+	 * @param tolerance Largest distance allowed between the outline and the curve, in pixels
+	 * @return int Number of curves added
 	 */
-    private void updateGraphics(ImagePlus imp, ArrayList<double[]> coordsOfMaximumCurve, ArrayList<Double> tOfMaximumCurve) {
-		Overlay overlay = new Overlay();
-		double[][] coor = bezierList.getControlPointCoordinates();
-		double pointWidth = optionsStore.getControlPointWidth();
-		for (int xx = 0; xx < coor.length; xx+=2) {
-			double[] point0 = coor[xx];
-			double[] point1 = coor[(xx + 1)];
-
-			// Control Point 1 (on curve)
-			OvalRoi controlPointAOval = new OvalRoi((point0[0] - (pointWidth/2)), (point0[1] - (pointWidth/2)), pointWidth, pointWidth);
-			controlPointAOval.setFillColor(Color.red);
-			controlPointAOval.setStrokeColor(Color.red);
-			controlPointAOval.setName("Control Point " + xx);
-			overlay.add(controlPointAOval);
-
-			// Control Point 2 and line (the handle)
-			OvalRoi controlPointBOval = new OvalRoi((point1[0] - (pointWidth/2)), (point1[1] - (pointWidth/2)), pointWidth, pointWidth);
-			controlPointBOval.setStrokeColor(Color.blue);
-			controlPointBOval.setName("Control Point " + (xx + 1));
-			overlay.add(controlPointBOval);
-
-			Line controlPointHandleLine = new Line(point0[0], point0[1], point1[0], point1[1]);
-			controlPointHandleLine.setStrokeColor(Color.blue);
-			controlPointHandleLine.setName("Handle Line " + xx);
-			overlay.add(controlPointHandleLine);
- 		}
-		
-		Path2D.Double curvePath = bezierList.getCurvePath();
-		if (curvePath != null) {
-			ShapeRoi curveROI = new ShapeRoi(curvePath);
-			curveROI.setStrokeColor(Color.yellow);
-			curveROI.setName("Bezier Curve");
-			overlay.add(curveROI);
-
-			if(optionsStore.getShowTangents() || optionsStore.getShowNormals()) {
-				// Draw tagent and normal overlays
-				for(int j = 0; j < coordsForT.length; j++)
-				{
-					for(int k = 0; k < coordsForT[j].length; k++)
-					{
-						if(optionsStore.getShowTangents()) {
-							Line tangentLine = new Line(
-								coordsForT[j][k][0], 
-								coordsForT[j][k][1], 
-								coordsForT[j][k][0] + (coordsTangents[j][k][0] * optionsStore.getTangentsScaleFactor()), 
-								coordsForT[j][k][1] + (coordsTangents[j][k][1] * optionsStore.getTangentsScaleFactor())
-							);
-							tangentLine.setStrokeColor(Color.green);
-							tangentLine.setName("Tangent " + j + "-" + k);
-							overlay.add(tangentLine);
-						}
-
-						if(optionsStore.getShowNormals()) {
-							Line normalLine = new Line(
-								coordsForT[j][k][0], 
-								coordsForT[j][k][1], 
-								coordsForT[j][k][0] + (coordsNormals[j][k][0] * optionsStore.getNormalsScaleFactor()), 
-								coordsForT[j][k][1] + (coordsNormals[j][k][1] * optionsStore.getNormalsScaleFactor())
-							);
-							normalLine.setStrokeColor(Color.pink);
-							normalLine.setName("Normal " + j + "-" + k);
-							overlay.add(normalLine);
-						}
-					}
-				}
+	public int fitCurves(ImagePlus imp, double tolerance) {
+		return addCurves(imp, fit(imp, tolerance));
+	}
+
+	/**
+	 * Fits curves to the selection on an image, or if there is none and the image is binary to the
+	 * outline of every object in it. Only reads the image, so can be called from any thread.
+	 * @param imp
+	 * @param tolerance Largest distance allowed between the outline and the curve, in pixels
+	 * @return BezierSegmentList[] No curves if there is nothing to fit to
+	 */
+	private BezierSegmentList[] fit(ImagePlus imp, double tolerance) {
+		Roi roi = imp.getRoi();
+		if (roi != null)
+			return BezierFitter.fitRois(optionsStore, new Roi[] {roi}, tolerance);
+		else if (imp.getProcessor().isBinary())
+			return BezierFitter.fitMask(optionsStore, imp.getProcessor(), tolerance);
+		return new BezierSegmentList[0];
+	}
+
+	/**
+	 * Adds fitted or loaded curves to the curves at the position being viewed, each as a step of its own, and
+	 * makes the last the active curve. Runs on the event thread.
+	 * @param imp
+	 * @param fitted
+	 * @return int Number of curves added
+	 */
+	private int addCurves(ImagePlus imp, BezierSegmentList[] fitted) {
+		CurveCollection curves = registry.get(imp);
+		int added = 0;
+		for (BezierSegmentList bezierList : fitted) {
+			if (bezierList.isEmpty())
+				continue;
+			CurveEntry curve = curves.add(bezierList);
+			curves.getJournal().curveAdded(curve);
+			curves.getJournal().commit();
+			curves.setActive(curve);
+			added++;
+		}
+		if (added > 0) {
+			bezierPoint = null;
+			update(imp);
+		}
+		return added;
+	}
+
+	/**
+	 * Fits curves to the selection or binary objects of the current image. Can be called from a
+	 * macro with call("Palaeo_Curve_Tool.fitSelection", "1.5").
+	 * @param tolerance In pixels
+	 * @return String Number of curves added
+	 */
+	public static String fitSelection(String tolerance) {
+		ImagePlus imp = WindowManager.getCurrentImage();
+		Palaeo_Curve_Tool tool = instance;
+		if (tool == null || imp == null)
+			return "0";
+		// The fitting is done on the macro's thread, only adding the curves has to be on the event thread
+		BezierSegmentList[] fitted = tool.fit(imp, Double.parseDouble(tolerance));
+		return onEventThread("0", () -> String.valueOf(tool.addCurves(imp, fitted)));
+	}
+
+	/**
+	 * Opens the curvature profile plot of the active curve of an image, which is then kept up to date
+	 * as the curves are edited until it is closed
+	 * @param imp
+	 */
+	public void showProfile(ImagePlus imp) {
+		if (profile == null) {
+			profile = new CurvatureProfile();
+			optionsStore.setShowCurvatureProfile(true);
+		}
+		// The profile is only kept by frames calculated once it is wanted
+		CurveCollection curves = registry.get(imp);
+		curves.invalidate();
+		update(imp);
+	}
+
+	/**
+	 * Opens the curvature profile plot for the current image. Can be called from a macro with
+	 * call("Palaeo_Curve_Tool.showCurvatureProfile").
+	 * @return String "true" if there is an image to show it for
+	 */
+	public static String showCurvatureProfile() {
+		return onEventThread("false", () -> {
+			ImagePlus imp = WindowManager.getCurrentImage();
+			if (instance == null || imp == null)
+				return "false";
+			instance.showProfile(imp);
+			return "true";
+		});
+	}
+
+	/**
+	 * Turns drawing the curves coloured by their curvature on or off. Can be called from a macro with
+	 * call("Palaeo_Curve_Tool.showCurvatureMap", "true").
+	 * @param show "true" to turn it on
+	 * @return String "true" if there is an image to show it on
+	 */
+	public static String showCurvatureMap(String show) {
+		return onEventThread("false", () -> {
+			ImagePlus imp = WindowManager.getCurrentImage();
+			if (instance == null || imp == null)
+				return "false";
+			instance.optionsStore.setShowCurvatureMap(Boolean.parseBoolean(show));
+			instance.registry.get(imp).invalidate();
+			instance.update(imp);
+			return "true";
+		});
+	}
+
+	/**
+	 * Writes every probe point of the curves at the position of an image being viewed to a CSV file, or
+	 * a TSV file if its name ends with .tsv or .txt. The curves are sampled on every core from their
+	 * last snapshots, so they can go on being edited.
+	 * @param imp
+	 * @param path
+	 * @return int Number of curves written
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public int exportSamples(ImagePlus imp, String path) throws IOException, InterruptedException {
+		CurveCollection curves = registry.find(imp);
+		if (curves == null)
+			return 0;
+
+		int written = 0;
+		try (Writer writer = openExport(path);
+			SampleExporter exporter = new SampleExporter(writer, getDelimiter(path), Runtime.getRuntime().availableProcessors())) {
+			for (CurveEntry curve : curves.getCurves()) {
+				CurveSnapshot snapshot = curve.getSegmentList().getSnapshot();
+				if (snapshot.isEmpty())
+					continue;
+				written++;
+				exporter.write("Curve " + written, snapshot, optionsStore);
 			}
+		}
+		return written;
+	}
 
-			if(coordsOfMaximumCurve.size() > 0 && optionsStore.getShowMaximumCurvaturePoints()){
-				int i = 0;
-				for (double[] coord : coordsOfMaximumCurve) {
-					OvalRoi controlPointBOval = new OvalRoi((coord[0] - 2), (coord[1] - 2), 4, 4);
-					controlPointBOval.setStrokeColor(optionsStore.getMaximumCurvaturePointsStroke());
-					controlPointBOval.setFillColor(optionsStore.getMaximumCurvaturePointsFill());
-					controlPointBOval.setName("Maximum Curve " + (i + 1));
-					overlay.add(controlPointBOval);
-					
-					String labelText = String.format("%.5g%%", tOfMaximumCurve.get(i)*100);
-					TextRoi textROI = new TextRoi((coord[0] + 5), (coord[1] + 5), 10, 24, labelText, new Font("Arial", Font.PLAIN, 10));
-					textROI.setStrokeColor(Color.BLACK);
-					textROI.setFillColor(Color.WHITE);
-					textROI.setName("Maximum Curve Text " + (i + 1));
-					overlay.add(textROI);
-					i++;
-				}
+	/**
+	 * Writes the probe points of the curves at the position of the current image being viewed. Can be
+	 * called from a macro with call("Palaeo_Curve_Tool.exportSamples", "/path/samples.csv").
+	 * @param path
+	 * @return String Number of curves written
+	 */
+	public static String exportSamples(String path) {
+		ImagePlus imp = WindowManager.getCurrentImage();
+		if (instance == null || imp == null)
+			return "0";
+		try {
+			return String.valueOf(instance.exportSamples(imp, path));
+		} catch (IOException e) {
+			IJ.error("Palaeo Curve Export", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "0";
+	}
+
+	/**
+	 * Writes every probe point of the curves on every position of a stack to a file, as exportSamples()
+	 * does for one position. The curves are named by their position, and the slices are sampled in parallel.
+	 * @param imp
+	 * @param path
+	 * @return boolean False if the image has no curves
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public boolean exportStackSamples(ImagePlus imp, String path) throws IOException, InterruptedException {
+		StackCurves stack = registry.findStack(imp);
+		if (stack == null)
+			return false;
+
+		try (Writer writer = openExport(path);
+			SampleExporter exporter = new SampleExporter(writer, getDelimiter(path), Runtime.getRuntime().availableProcessors())) {
+			exporter.writeStack(stack, optionsStore);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the probe points of the curves on every position of the current image. Can be called from
+	 * a macro with call("Palaeo_Curve_Tool.exportStackSamples", "/path/samples.csv").
+	 * @param path
+	 * @return String "true" if the image has curves
+	 */
+	public static String exportStackSamples(String path) {
+		ImagePlus imp = WindowManager.getCurrentImage();
+		if (instance == null || imp == null)
+			return "false";
+		try {
+			return String.valueOf(instance.exportStackSamples(imp, path));
+		} catch (IOException e) {
+			IJ.error("Palaeo Curve Export", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "false";
+	}
+
+	/**
+	 * Saves the curves at the position of an image being viewed, so they can be loaded again or measured
+	 * by Palaeo_Curve_Batch. The format is picked by the file name: a curve archive (.pcurves), JSON
+	 * (.json), or a curve definition (.curve), which holds only the active curve. The curves are saved
+	 * from their last snapshots, so can be called from any thread.
+	 * @param imp
+	 * @param path
+	 * @return int Number of curves saved
+	 * @throws IOException If the file can not be written or the format is not known
+	 */
+	public int saveCurves(ImagePlus imp, String path) throws IOException {
+		CurveCollection curves = registry.find(imp);
+		if (curves == null)
+			return 0;
+
+		File file = new File(path);
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(CurveFile.EXTENSION)) {
+			CurveEntry active = curves.getActive();
+			CurveSnapshot snapshot = (active != null) ? active.getSegmentList().getSnapshot() : null;
+			if (snapshot == null || snapshot.isEmpty())
+				return 0;
+			BezierSegmentList bezierList = new BezierSegmentList(optionsStore);
+			bezierList.setSegments(snapshot);
+			CurveFile.write(bezierList, file);
+			return 1;
+		}
+
+		// Named by the image's file, so the batch runner finds it next to the curves
+		FileInfo info = imp.getOriginalFileInfo();
+		String imageId = (info != null && info.fileName != null && !info.fileName.isEmpty()) ? info.fileName : imp.getTitle();
+		List<CurveRecord> records = new ArrayList<CurveRecord>();
+		for (CurveEntry curve : curves.getCurves()) {
+			CurveSnapshot snapshot = curve.getSegmentList().getSnapshot();
+			if (!snapshot.isEmpty())
+				records.add(new CurveRecord(imageId, optionsStore, snapshot.getCoordinates()));
+		}
+		if (records.isEmpty())
+			return 0;
+
+		if (name.endsWith(CurveArchive.EXTENSION))
+			CurveArchive.write(file, records);
+		else if (name.endsWith(CurveJson.EXTENSION))
+			CurveJson.write(file, records);
+		else
+			throw new IOException(file.getName() + " is not a " + CurveArchive.EXTENSION + ", " + CurveJson.EXTENSION + " or " + CurveFile.EXTENSION + " file");
+		return records.size();
+	}
+
+	/**
+	 * Saves the curves at the position of the current image being viewed. Can be called from a macro
+	 * with call("Palaeo_Curve_Tool.saveCurves", "/path/curves.pcurves").
+	 * @param path
+	 * @return String Number of curves saved
+	 */
+	public static String saveCurves(String path) {
+		ImagePlus imp = WindowManager.getCurrentImage();
+		if (instance == null || imp == null)
+			return "0";
+		try {
+			return String.valueOf(instance.saveCurves(imp, path));
+		} catch (IOException e) {
+			IJ.error("Palaeo Curve Save", e.getMessage());
+		}
+		return "0";
+	}
+
+	/**
+	 * Reads the curves in a curve archive (.pcurves), JSON (.json) or curve definition (.curve) file.
+	 * Only reads the file, so can be called from any thread.
+	 * @param path
+	 * @return BezierSegmentList[]
+	 * @throws IOException If the file can not be read or the format is not known
+	 */
+	private BezierSegmentList[] readCurves(String path) throws IOException {
+		File file = new File(path);
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(CurveFile.EXTENSION))
+			return new BezierSegmentList[] {CurveFile.read(file, optionsStore)};
+
+		List<CurveRecord> records = new ArrayList<CurveRecord>();
+		if (name.endsWith(CurveArchive.EXTENSION)) {
+			try (CurveArchive archive = CurveArchive.open(file)) {
+				for (int i = 0; i < archive.size(); i++)
+					records.add(archive.read(i));
 			}
+		} else if (name.endsWith(CurveJson.EXTENSION)) {
+			records = CurveJson.read(file);
+		} else {
+			throw new IOException(file.getName() + " is not a " + CurveArchive.EXTENSION + ", " + CurveJson.EXTENSION + " or " + CurveFile.EXTENSION + " file");
 		}
 
+		BezierSegmentList[] curves = new BezierSegmentList[records.size()];
+		for (int i = 0; i < curves.length; i++)
+			curves[i] = records.get(i).createSegmentList(optionsStore);
+		return curves;
+	}
+
+	/**
+	 * Adds the curves saved in a file to the curves at the position of the current image being viewed,
+	 * each as a step that can be undone. The curves are sampled with the tool's options, not the ones
+	 * they were saved with. Can be called from a macro with
+	 * call("Palaeo_Curve_Tool.loadCurves", "/path/curves.pcurves").
+	 * @param path
+	 * @return String Number of curves added
+	 */
+	public static String loadCurves(String path) {
+		ImagePlus imp = WindowManager.getCurrentImage();
+		Palaeo_Curve_Tool tool = instance;
+		if (tool == null || imp == null)
+			return "0";
+		BezierSegmentList[] loaded;
+		try {
+			loaded = tool.readCurves(path);
+		} catch (IOException e) {
+			IJ.error("Palaeo Curve Load", e.getMessage());
+			return "0";
+		}
+		return onEventThread("0", () -> String.valueOf(tool.addCurves(imp, loaded)));
+	}
+
+	/**
+	 * Opens a file to export samples to
+	 * @param path
+	 * @return Writer
+	 * @throws IOException
+	 */
+	private static Writer openExport(String path) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the delimiter for an export file, a tab for .tsv and .txt files and a comma otherwise
+	 * @param path
+	 * @return char
+	 */
+	private static char getDelimiter(String path) {
+		String name = path.toLowerCase();
+		return (name.endsWith(".tsv") || name.endsWith(".txt")) ? '\t' : ',';
+	}
+
+	/**
+	 * Undoes or redoes a step of the journal, makes the curve it changed the active curve and
+	 * updates the overlay
+	 * @param imp
+	 * @param undo
+	 * @return boolean
+	 */
+	private boolean replay(ImagePlus imp, boolean undo) {
+		CurveCollection curves = registry.find(imp);
+		if (curves == null)
+			return false;
+
+		CurveEntry curve = undo ? curves.getJournal().undo() : curves.getJournal().redo();
+		if (curve == null)
+			return false;
+
+		bezierPoint = null;
+		if (curves.indexOf(curve) >= 0)
+			curves.setActive(curve);
+		update(imp);
+		return true;
+	}
+
+	/**
+	 * Asks for the image's curves and calculations to be updated. A snapshot of every curve is published and
+	 * the work is done on them on the compute thread, so the curves can go on being edited without
+	 * waiting. Only curves that have changed are calculated again. Only the newest request for each
+	 * image is kept, so fast mouse movement does not queue up stale updates, while an update of
+	 * another image, such as a new stack position being shown, is not lost.
+	 * @param imp
+	 */
+	private void update(ImagePlus imp)
+	{
+		final CurveCollection curves = registry.get(imp);
+		final CurveCollection.Request request = curves.publish();
+		final long requested = CurveMetrics.start();
+		scheduler.submit(imp, () -> CurveCollection.analyse(request), frames -> {
+			updateGraphics(imp, curves, request, frames);
+			CurveMetrics.FRAME.stop(requested);
+		});
+	}
+
+	/**
+	 * Shows the curves of the position of a stack being viewed, or none if nothing has been drawn
+	 * there, without creating curves for positions that are only looked at
+	 * @param imp
+	 */
+	private void showPosition(ImagePlus imp)
+	{
+		bezierPoint = null;
+		if (registry.find(imp) == null)
+			imp.setOverlay(null);
+		else
+			update(imp);
+	}
+
+	/**
+	 * Returns the control point of the active curve at the coordinate, if there is one
+	 * @param curves
+	 * @param x
+	 * @param y
+	 * @return BezierControlPoint | null
+	 */
+	private BezierControlPoint findControlPoint(CurveCollection curves, double x, double y)
+	{
+		CurveEntry active = curves.getActive();
+		if (active == null)
+			return null;
+
+		long start = CurveMetrics.start();
+		BezierControlPoint point = active.getSegmentList().insideControlPoint(x, y);
+		CurveMetrics.HIT_TEST.stop(start);
+		return point;
+	}
+
+	/**
+	 * Adds/Updates the overlay graphics. Runs on the event thread.
+	 * @param imp
+	 * @param curves
+	 * @param request
+	 * @param frames
+	 */
+	private void updateGraphics(ImagePlus imp, CurveCollection curves, CurveCollection.Request request, CurveFrame[] frames) {
+		long start = CurveMetrics.start();
+		Overlay overlay = curves.draw(request, frames);
+
 		// Set the overlay
 		imp.setOverlay(overlay);
-	}
+		CurveMetrics.GRAPHICS.stop(start);
+		CurveMetrics.addOverlay(overlay.size());
 
-	private double doubleAbs(double val) {
-		if(val < 0)
-			return val * -1;
-		return val;
+		// Once the profile window is closed the profile is no longer kept
+		CurveEntry active = curves.getActive();
+		if (profile != null && active != null && !profile.update(active.getDrawnFrame())) {
+			profile = null;
+			optionsStore.setShowCurvatureProfile(false);
+		}
+
+		// Curves calculated before the profile or map was turned on, such as on another image, have to be calculated again
+		if (optionsStore.getShowCurvatureProfile() || optionsStore.getShowCurvatureMap()) {
+			for (CurveEntry curve : curves.getCurves()) {
+				CurveFrame frame = curve.getDrawnFrame();
+				if (frame != null && frame.curvePath != null && frame.segmentKappa == null) {
+					curves.invalidate();
+					update(imp);
+					return;
+				}
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ij.measure.ResultsTable;
+
+/**
+ * Class: SampleExporter
+ * Writes the value of every probe point of a curve (t, coordinates, tangent, normal and kappa) as
+ * CSV or TSV rows, without building the full getCurveCoordinates(), getCurveTangents() etc. arrays.
+ * Each segment is sampled a block of probe points at a time straight into a small reused
+ * SampledCurve, so memory use stays the same whatever the probe number or number of curves.
+ *
+ * With more than one thread the blocks are sampled and formatted on a pool of workers, and written
+ * in the order they were added, so the output is byte for byte the same as with a single thread.
+ * Only a fixed number of blocks are in flight at once. The same goes for writeStack(), so the slices
+ * of a stack are sampled in parallel.
+ */
+public class SampleExporter implements Closeable {
+    // Largest number of probe points sampled and formatted at once
+    static final int BLOCK_SIZE = 1024;
+
+    private static final String[] COLUMNS = {"Curve", "Segment", "Probe", "t", "X", "Y", "Tangent X", "Tangent Y", "Normal X", "Normal Y", "Kappa"};
+
+    private Writer writer;
+    private char delimiter;
+    private ExecutorService executor = null;
+    private int maximumInFlight;
+    private ArrayDeque<Future<String>> inFlight = new ArrayDeque<Future<String>>();
+    private ThreadLocal<SampledCurve> blocks = ThreadLocal.withInitial(() -> {
+        SampledCurve block = new SampledCurve();
+        block.ensureCapacity(BLOCK_SIZE);
+        return block;
+    });
+
+    /**
+     * Constructor. The column headings are written straight away.
+     * @param writer Where the rows are written. Is not closed by the exporter.
+     * @param delimiter ',' for CSV or '\t' for TSV
+     * @param threads Number of worker threads, 1 to do everything on the calling thread
+     * @throws IOException
+     */
+    public SampleExporter(Writer writer, char delimiter, int threads) throws IOException {
+        this.writer = writer;
+        this.delimiter = delimiter;
+        this.maximumInFlight = threads * 2;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Palaeo Curve export");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                header.append(delimiter);
+            }
+            header.append(COLUMNS[i]);
+        }
+        writer.write(header.append('\n').toString());
+    }
+
+    /**
+     * Adds the probe points of every segment of a curve. Rows are written in segment and probe order.
+     * Blocks of the curve can still be in flight after this returns, so with more than one thread
+     * the workers sample a copy of the segments, and the curve can be changed straight away.
+     * @param curveName
+     * @param bezierList
+     * @param probeNumber
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void write(String curveName, BezierSegmentList bezierList, int probeNumber) throws IOException, InterruptedException {
+        writeSegments(curveName, (executor == null) ? bezierList : bezierList.copy(), probeNumber);
+    }
+
+    /**
+     * Adds the probe points of every segment of a curve snapshot, which can be taken from a curve that
+     * is being edited on another thread
+     * @see write(String, BezierSegmentList, int)
+     * @param curveName
+     * @param snapshot
+     * @param optionsStore Gives the probe number
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void write(String curveName, CurveSnapshot snapshot, OptionsStore optionsStore) throws IOException, InterruptedException {
+        // A list of its own for each curve, as the blocks in flight still read the previous one
+        BezierSegmentList bezierList = new BezierSegmentList(optionsStore);
+        bezierList.setSegments(snapshot);
+        writeSegments(curveName, bezierList, optionsStore.getProbeNumber());
+    }
+
+    /**
+     * Samples a curve that nothing else will change, a block at a time
+     * @param curveName
+     * @param bezierList
+     * @param probeNumber
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void writeSegments(String curveName, BezierSegmentList bezierList, int probeNumber) throws IOException, InterruptedException {
+        String name = escape(curveName);
+        double[] tValues = BezierSegment.getProbeTValues(probeNumber);
+
+        for (int j = 0; j < bezierList.getNumberSegments(); j++) {
+            BezierSegment bezier = bezierList.getSegment(j);
+            // The workers only read the coefficients, so they are worked out here first
+            bezier.updateCoefficients();
+
+            for (int from = 0; from < probeNumber; from += BLOCK_SIZE) {
+                int segment = j;
+                int start = from;
+                int end = Math.min(from + BLOCK_SIZE, probeNumber);
+
+                if (executor == null) {
+                    writer.write(formatBlock(name, segment, bezier, tValues, start, end));
+                    continue;
+                }
+
+                // Wait for the oldest block to be written before starting another
+                if (inFlight.size() >= maximumInFlight) {
+                    writeOldest();
+                }
+                inFlight.addLast(executor.submit(() -> formatBlock(name, segment, bezier, tValues, start, end)));
+            }
+        }
+    }
+
+    /**
+     * Adds the probe points of the curves on every position of a stack that has any, in stack order and
+     * named by their position. Each curve is sampled from the snapshot it was last drawn from, so the
+     * curves can go on being edited, and positions without curves are not looked at.
+     * @param stack
+     * @param optionsStore Gives the probe number
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void writeStack(StackCurves stack, OptionsStore optionsStore) throws IOException, InterruptedException {
+        for (Map.Entry<Integer, CurveCollection> position : stack.getPositions().entrySet()) {
+            List<CurveEntry> curves = position.getValue().getCurves();
+            for (int i = 0; i < curves.size(); i++) {
+                CurveSnapshot snapshot = curves.get(i).getSegmentList().getSnapshot();
+                if (!snapshot.isEmpty()) {
+                    write(stack.getCurveName(position.getKey(), i), snapshot, optionsStore);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes any blocks still in flight and stops the worker threads. The writer is flushed but not closed.
+     */
+    public void close() throws IOException {
+        try {
+            while (!inFlight.isEmpty()) {
+                writeOldest();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export was interrupted");
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Waits for the oldest block and writes it
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void writeOldest() throws IOException, InterruptedException {
+        try {
+            writer.write(inFlight.removeFirst().get());
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Samples and formats the rows for tValues[from] to tValues[to - 1] of a segment
+     * @param name Escaped curve name
+     * @param segment
+     * @param bezier
+     * @param tValues
+     * @param from
+     * @param to
+     * @return String
+     */
+    private String formatBlock(String name, int segment, BezierSegment bezier, double[] tValues, int from, int to) {
+        SampledCurve block = blocks.get();
+        bezier.sample(block, 0, tValues, from, to);
+
+        StringBuilder rows = new StringBuilder((to - from) * 200);
+        for (int k = 0; k < to - from; k++) {
+            rows.append(name).append(delimiter)
+                .append(segment).append(delimiter)
+                .append(from + k).append(delimiter)
+                .append(block.t[k]).append(delimiter)
+                .append(block.x[k]).append(delimiter)
+                .append(block.y[k]).append(delimiter)
+                .append(block.tangentX[k]).append(delimiter)
+                .append(block.tangentY[k]).append(delimiter)
+                .append(block.normalX[k]).append(delimiter)
+                .append(block.normalY[k]).append(delimiter)
+                .append(block.kappa[k]).append('\n');
+        }
+        return rows.toString();
+    }
+
+    /**
+     * Makes a curve name safe to write as one value
+     * @param value
+     * @return String
+     */
+    private String escape(String value) {
+        if (delimiter == '\t') {
+            return value.replace('\t', ' ').replace('\n', ' ');
+        }
+        if (value.indexOf(delimiter) < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Adds a row to an ImageJ ResultsTable for every probe point of a curve, a block at a time
+     * @param table
+     * @param curveName
+     * @param bezierList
+     * @param probeNumber
+     */
+    public static void addToTable(ResultsTable table, String curveName, BezierSegmentList bezierList, int probeNumber) {
+        SampledCurve block = new SampledCurve();
+        block.ensureCapacity(BLOCK_SIZE);
+        double[] tValues = BezierSegment.getProbeTValues(probeNumber);
+
+        for (int j = 0; j < bezierList.getNumberSegments(); j++) {
+            BezierSegment bezier = bezierList.getSegment(j);
+            for (int from = 0; from < probeNumber; from += BLOCK_SIZE) {
+                int to = Math.min(from + BLOCK_SIZE, probeNumber);
+                bezier.sample(block, 0, tValues, from, to);
+
+                for (int k = 0; k < to - from; k++) {
+                    table.incrementCounter();
+                    table.addValue(COLUMNS[0], curveName);
+                    table.addValue(COLUMNS[1], j);
+                    table.addValue(COLUMNS[2], from + k);
+                    table.addValue(COLUMNS[3], block.t[k]);
+                    table.addValue(COLUMNS[4], block.x[k]);
+                    table.addValue(COLUMNS[5], block.y[k]);
+                    table.addValue(COLUMNS[6], block.tangentX[k]);
+                    table.addValue(COLUMNS[7], block.tangentY[k]);
+                    table.addValue(COLUMNS[8], block.normalX[k]);
+                    table.addValue(COLUMNS[9], block.normalY[k]);
+                    table.addValue(COLUMNS[10], block.kappa[k]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import java.util.Arrays;
+
+/**
+ * Class: SampledCurve
+ * Holds the sampled geometry of a whole bezier curve as a set of flat primitive channels.
+ * Every channel is indexed by the same sample index, with the samples for segment k stored
+ * between getSegmentStart(k) (inclusive) and getSegmentEnd(k) (exclusive). The arrays are
+ * only grown, never shrunk, so one instance can be reused for every update of a curve.
+ * The segment and version each block of samples was taken from is kept, so only segments
+ * that have changed since the last update need to be sampled again. Segments can hold
+ * different numbers of samples when adaptive sampling is used.
+ */
+public class SampledCurve {
+    int segmentCount;
+    int sampleCount;
+    int probeNumber;
+    boolean adaptive;
+    double adaptiveTolerance;
+    int adaptiveMaximumDepth;
+    int[] segmentOffsets = new int[1];
+    BezierSegment[] segments = new BezierSegment[0];
+    int[] segmentVersions = new int[0];
+    double[] segmentMaximumKappa = new double[0];
+    double[] segmentErrorBound = new double[0];
+    int resampledCount; // Samples worked out by the last update, rather than kept from before
+    int updateCount; // Number of updates, each segment records the one it was last sampled by
+    int[] segmentUpdates = new int[0];
+    private SampledCurve spare = null; // Second set of arrays used when samples need to move
+    double[] t = new double[0];
+    double[] x = new double[0];
+    double[] y = new double[0];
+    double[] firstDerivativeX = new double[0];
+    double[] firstDerivativeY = new double[0];
+    double[] secondDerivativeX = new double[0];
+    double[] secondDerivativeY = new double[0];
+    double[] tangentX = new double[0];
+    double[] tangentY = new double[0];
+    double[] normalX = new double[0];
+    double[] normalY = new double[0];
+    double[] kappa = new double[0];
+
+    /**
+     * Clears the curve for the given number of segments. All segments are marked as needing
+     * to be sampled again.
+     * @param numberSegments
+     */
+    void reset(int numberSegments) {
+        segmentCount = numberSegments;
+        sampleCount = 0;
+
+        if (segments.length < numberSegments) {
+            segments = new BezierSegment[numberSegments];
+            segmentVersions = new int[numberSegments];
+            segmentMaximumKappa = new double[numberSegments];
+            segmentErrorBound = new double[numberSegments];
+            segmentUpdates = new int[numberSegments];
+        }
+        Arrays.fill(segments, null);
+
+        // No samples are held, so every offset is marked as out of date
+        segmentOffsets = getOffsets(segmentOffsets, numberSegments);
+        Arrays.fill(segmentOffsets, -1);
+        segmentOffsets[0] = 0;
+    }
+
+    /**
+     * Makes sure there is room in every channel for the given number of samples. Samples held are not kept
+     * if the channels have to grow.
+     * @param numberSamples
+     */
+    void ensureCapacity(int numberSamples) {
+        if (t.length < numberSamples) {
+            t = new double[numberSamples];
+            x = new double[numberSamples];
+            y = new double[numberSamples];
+            firstDerivativeX = new double[numberSamples];
+            firstDerivativeY = new double[numberSamples];
+            secondDerivativeX = new double[numberSamples];
+            secondDerivativeY = new double[numberSamples];
+            tangentX = new double[numberSamples];
+            tangentY = new double[numberSamples];
+            normalX = new double[numberSamples];
+            normalY = new double[numberSamples];
+            kappa = new double[numberSamples];
+        }
+    }
+
+    /**
+     * Returns the spare curve, whose arrays are used to lay the samples out again when the number of samples
+     * in a segment changes. Its offsets are sized for the given number of segments.
+     * @param numberSegments
+     * @return SampledCurve
+     */
+    SampledCurve getSpare(int numberSegments) {
+        if (spare == null) {
+            spare = new SampledCurve();
+        }
+        spare.segmentOffsets = getOffsets(spare.segmentOffsets, numberSegments);
+        return spare;
+    }
+
+    /**
+     * Returns an offsets array with room for the given number of segments, reusing the old one if possible
+     * @param offsets
+     * @param numberSegments
+     * @return int[]
+     */
+    private static int[] getOffsets(int[] offsets, int numberSegments) {
+        if (offsets.length < numberSegments + 1) {
+            return new int[numberSegments + 1];
+        }
+        return offsets;
+    }
+
+    /**
+     * Copies the samples of a segment into another curve
+     * @param target
+     * @param segment
+     * @param offset Index in the target to copy the first sample to
+     */
+    void copySegmentTo(SampledCurve target, int segment, int offset) {
+        int start = segmentOffsets[segment];
+        int length = segmentOffsets[segment + 1] - start;
+        System.arraycopy(t, start, target.t, offset, length);
+        System.arraycopy(x, start, target.x, offset, length);
+        System.arraycopy(y, start, target.y, offset, length);
+        System.arraycopy(firstDerivativeX, start, target.firstDerivativeX, offset, length);
+        System.arraycopy(firstDerivativeY, start, target.firstDerivativeY, offset, length);
+        System.arraycopy(secondDerivativeX, start, target.secondDerivativeX, offset, length);
+        System.arraycopy(secondDerivativeY, start, target.secondDerivativeY, offset, length);
+        System.arraycopy(tangentX, start, target.tangentX, offset, length);
+        System.arraycopy(tangentY, start, target.tangentY, offset, length);
+        System.arraycopy(normalX, start, target.normalX, offset, length);
+        System.arraycopy(normalY, start, target.normalY, offset, length);
+        System.arraycopy(kappa, start, target.kappa, offset, length);
+    }
+
+    /**
+     * Swaps the sample channels and offsets with those of the spare curve, once the samples have been
+     * laid out again in it. The segment records stay with this curve.
+     * @param numberSamples Number of samples now held
+     */
+    void swapWithSpare(int numberSamples) {
+        int[] offsets = segmentOffsets; segmentOffsets = spare.segmentOffsets; spare.segmentOffsets = offsets;
+        double[] channel;
+        channel = t; t = spare.t; spare.t = channel;
+        channel = x; x = spare.x; spare.x = channel;
+        channel = y; y = spare.y; spare.y = channel;
+        channel = firstDerivativeX; firstDerivativeX = spare.firstDerivativeX; spare.firstDerivativeX = channel;
+        channel = firstDerivativeY; firstDerivativeY = spare.firstDerivativeY; spare.firstDerivativeY = channel;
+        channel = secondDerivativeX; secondDerivativeX = spare.secondDerivativeX; spare.secondDerivativeX = channel;
+        channel = secondDerivativeY; secondDerivativeY = spare.secondDerivativeY; spare.secondDerivativeY = channel;
+        channel = tangentX; tangentX = spare.tangentX; spare.tangentX = channel;
+        channel = tangentY; tangentY = spare.tangentY; spare.tangentY = channel;
+        channel = normalX; normalX = spare.normalX; spare.normalX = channel;
+        channel = normalY; normalY = spare.normalY; spare.normalY = channel;
+        channel = kappa; kappa = spare.kappa; spare.kappa = channel;
+        sampleCount = numberSamples;
+    }
+
+    /**
+     * Does the block of samples for the segment index still hold the current state of the bezier segment?
+     * @param segment
+     * @param bezier
+     * @return boolean
+     */
+    boolean isSegmentCurrent(int segment, BezierSegment bezier) {
+        return (segments[segment] == bezier && segmentVersions[segment] == bezier.getVersion());
+    }
+
+    /**
+     * Records that the block of samples for the segment index has been taken from the bezier segment
+     * and updates the cached maximum kappa of the segment.
+     * @param segment
+     * @param bezier
+     * @param errorBound Error bound of the samples, NaN if not known
+     */
+    void setSegmentSampled(int segment, BezierSegment bezier, double errorBound) {
+        segments[segment] = bezier;
+        segmentVersions[segment] = bezier.getVersion();
+        segmentUpdates[segment] = updateCount;
+        segmentErrorBound[segment] = errorBound;
+
+        double maximum = 0.0;
+        for (int i = segmentOffsets[segment]; i < segmentOffsets[segment + 1]; i++) {
+            double value = Math.abs(kappa[i]);
+            if (value > maximum) {
+                maximum = value;
+            }
+        }
+        segmentMaximumKappa[segment] = maximum;
+    }
+
+    /**
+     * Returns the number of segments held
+     * @return int
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Returns the total number of samples held over all segments
+     * @return int
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Returns the number of samples that were worked out by the last update. Samples of segments that
+     * had not changed are not counted.
+     * @return int
+     */
+    public int getResampledCount() {
+        return resampledCount;
+    }
+
+    /**
+     * Moves every sample by a distance. Only the positions change when a curve is moved, the derivatives,
+     * tangents, normals and kappa do not.
+     * @param dx
+     * @param dy
+     */
+    void translate(double dx, double dy) {
+        for (int i = 0; i < sampleCount; i++) {
+            x[i] += dx;
+            y[i] += dy;
+        }
+    }
+
+    /**
+     * Was the segment sampled by the last update, rather than kept from before?
+     * @param segment
+     * @return boolean
+     */
+    public boolean isSegmentResampled(int segment) {
+        return segmentUpdates[segment] == updateCount;
+    }
+
+    /**
+     * Returns the index of the first sample belonging to the segment
+     * @param segment
+     * @return int
+     */
+    public int getSegmentStart(int segment) {
+        return segmentOffsets[segment];
+    }
+
+    /**
+     * Returns the index one past the last sample belonging to the segment
+     * @param segment
+     * @return int
+     */
+    public int getSegmentEnd(int segment) {
+        return segmentOffsets[segment + 1];
+    }
+
+    /**
+     * Returns the largest absolute kappa of all the samples in a segment
+     * @param segment
+     * @return double
+     */
+    public double getSegmentMaximumKappa(int segment) {
+        return segmentMaximumKappa[segment];
+    }
+
+    /**
+     * Returns the largest distance of the curve from the straight lines joining the samples, over
+     * all the segments. This is only known for adaptive sampling, otherwise NaN is returned.
+     * @return double
+     */
+    public double getErrorBound() {
+        if (!adaptive) {
+            return Double.NaN;
+        }
+
+        double errorBound = 0.0;
+        for (int i = 0; i < segmentCount; i++) {
+            if (segmentErrorBound[i] > errorBound) {
+                errorBound = segmentErrorBound[i];
+            }
+        }
+        return errorBound;
+    }
+
+    /**
+     * Returns the t value (0.0-1.0 within its segment) of a sample
+     * @param i
+     * @return double
+     */
+    public double getT(int i) {
+        return t[i];
+    }
+
+    /**
+     * Returns the X coordinate of a sample
+     * @param i
+     * @return double
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Returns the Y coordinate of a sample
+     * @param i
+     * @return double
+     */
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Returns the X component of the first derivative of a sample
+     * @param i
+     * @return double
+     */
+    public double getFirstDerivativeX(int i) {
+        return firstDerivativeX[i];
+    }
+
+    /**
+     * Returns the Y component of the first derivative of a sample
+     * @param i
+     * @return double
+     */
+    public double getFirstDerivativeY(int i) {
+        return firstDerivativeY[i];
+    }
+
+    /**
+     * Returns the X component of the second derivative of a sample
+     * @param i
+     * @return double
+     */
+    public double getSecondDerivativeX(int i) {
+        return secondDerivativeX[i];
+    }
+
+    /**
+     * Returns the Y component of the second derivative of a sample
+     * @param i
+     * @return double
+     */
+    public double getSecondDerivativeY(int i) {
+        return secondDerivativeY[i];
+    }
+
+    /**
+     * Returns the X component of the unit tangent of a sample
+     * @param i
+     * @return double
+     */
+    public double getTangentX(int i) {
+        return tangentX[i];
+    }
+
+    /**
+     * Returns the Y component of the unit tangent of a sample
+     * @param i
+     * @return double
+     */
+    public double getTangentY(int i) {
+        return tangentY[i];
+    }
+
+    /**
+     * Returns the X component of the unit normal of a sample
+     * @param i
+     * @return double
+     */
+    public double getNormalX(int i) {
+        return normalX[i];
+    }
+
+    /**
+     * Returns the Y component of the unit normal of a sample
+     * @param i
+     * @return double
+     */
+    public double getNormalY(int i) {
+        return normalY[i];
+    }
+
+    /**
+     * Returns kappa (curvature) of a sample
+     * @param i
+     * @return double
+     */
+    public double getKappa(int i) {
+        return kappa[i];
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Class: SegmentStore
+ * Holds the segments of a curve, in order from start to end, in a growable array so the number of
+ * segments is known straight away and any segment can be reached by its index. The control point
+ * coordinates of all the segments are packed into one double[], eight values per segment in the
+ * order x0, y0, x1, y1, x2, y2, x3, y3, at the same index as the segment. Both arrays double in size
+ * when full, so adding a segment is amortised O(1) at the end and a single array shift elsewhere.
+ */
+public class SegmentStore {
+    static final int COORDINATES_PER_SEGMENT = 8;
+
+    private int count = 0;
+    private BezierSegment[] segments = new BezierSegment[4];
+    private double[] coordinates = new double[4 * COORDINATES_PER_SEGMENT];
+    private int modifications = 0; // Stepped by every change to the segments or their coordinates
+
+    /**
+     * Returns the number of segments held
+     * @return int
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Are there no segments held?
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return (count == 0);
+    }
+
+    /**
+     * Returns the segment at the index
+     * @param index
+     * @return BezierSegment
+     */
+    public BezierSegment get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Segment " + index + " of " + count);
+        }
+        return segments[index];
+    }
+
+    /**
+     * Returns the first segment
+     * @return BezierSegment | null
+     */
+    public BezierSegment getFirst() {
+        return (count == 0) ? null : segments[0];
+    }
+
+    /**
+     * Returns the last segment
+     * @return BezierSegment | null
+     */
+    public BezierSegment getLast() {
+        return (count == 0) ? null : segments[count - 1];
+    }
+
+    /**
+     * Returns a count that changes every time a segment is added, removed or has a control point moved
+     * @return int
+     */
+    public int getModifications() {
+        return modifications;
+    }
+
+    /**
+     * Called when the coordinates of a segment held have been changed
+     */
+    void modified() {
+        modifications++;
+    }
+
+    /**
+     * Returns a copy of the packed coordinates of all the segments
+     * @return double[]
+     */
+    public double[] getCoordinates() {
+        double[] copy = new double[count * COORDINATES_PER_SEGMENT];
+        System.arraycopy(coordinates, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Adds a segment to the end
+     * @param bezier
+     */
+    void add(BezierSegment bezier) {
+        insert(count, bezier);
+    }
+
+    /**
+     * Inserts a segment at the index, moving the segments from the index onwards up by one. The
+     * coordinates of the segment are copied into the packed array.
+     * @param index
+     * @param bezier
+     */
+    void insert(int index, BezierSegment bezier) {
+        if (index < 0 || index > count) {
+            throw new IndexOutOfBoundsException("Segment " + index + " of " + count);
+        }
+
+        boolean grown = false;
+        if (count == segments.length) {
+            BezierSegment[] newSegments = new BezierSegment[segments.length * 2];
+            double[] newCoordinates = new double[newSegments.length * COORDINATES_PER_SEGMENT];
+            System.arraycopy(segments, 0, newSegments, 0, count);
+            System.arraycopy(coordinates, 0, newCoordinates, 0, count * COORDINATES_PER_SEGMENT);
+            segments = newSegments;
+            coordinates = newCoordinates;
+            grown = true;
+        }
+
+        System.arraycopy(segments, index, segments, index + 1, count - index);
+        System.arraycopy(coordinates, index * COORDINATES_PER_SEGMENT, coordinates,
+            (index + 1) * COORDINATES_PER_SEGMENT, (count - index) * COORDINATES_PER_SEGMENT);
+        bezier.copyCoordinatesTo(coordinates, index * COORDINATES_PER_SEGMENT);
+        segments[index] = bezier;
+        count++;
+        modifications++;
+
+        // Every segment whose place in the arrays has changed is told where it now is
+        for (int i = grown ? 0 : index; i < count; i++) {
+            segments[i].attach(this, coordinates, i);
+        }
+    }
+
+    /**
+     * Removes the segment at the index, moving the segments after it down by one. The removed segment
+     * keeps a copy of its coordinates.
+     * @param index
+     * @return BezierSegment The removed segment
+     */
+    BezierSegment remove(int index) {
+        BezierSegment bezier = get(index);
+        bezier.detach();
+
+        System.arraycopy(segments, index + 1, segments, index, count - index - 1);
+        System.arraycopy(coordinates, (index + 1) * COORDINATES_PER_SEGMENT, coordinates,
+            index * COORDINATES_PER_SEGMENT, (count - index - 1) * COORDINATES_PER_SEGMENT);
+        count--;
+        segments[count] = null;
+        modifications++;
+
+        for (int i = index; i < count; i++) {
+            segments[i].attach(this, coordinates, i);
+        }
+
+        return bezier;
+    }
+}
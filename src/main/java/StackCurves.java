@@ -0,0 +1,117 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class: StackCurves
+ * The curves of one image, kept separately for every position (channel, slice and frame) of a stack
+ * or hyperstack, so each slice of a CT stack or focus series has its own curves. Positions are held
+ * by stack index, and a position only gets a CurveCollection once curves are drawn on it, so nothing
+ * is created or calculated up front however many slices there are. A single image has one position.
+ */
+public class StackCurves {
+    private final OptionsStore optionsStore;
+    private final CurveCache cache;
+    private final int nChannels;
+    private final int nSlices;
+    private final int nFrames;
+    private final TreeMap<Integer, CurveCollection> positions = new TreeMap<Integer, CurveCollection>();
+    private int shownIndex = 0;
+
+    /**
+     * Constructor
+     * @param optionsStore
+     * @param cache
+     * @param nChannels Number of channels of the image
+     * @param nSlices Number of slices of the image
+     * @param nFrames Number of frames of the image
+     */
+    StackCurves(OptionsStore optionsStore, CurveCache cache, int nChannels, int nSlices, int nFrames) {
+        this.optionsStore = optionsStore;
+        this.cache = cache;
+        this.nChannels = Math.max(nChannels, 1);
+        this.nSlices = Math.max(nSlices, 1);
+        this.nFrames = Math.max(nFrames, 1);
+    }
+
+    /**
+     * Returns the curves at a stack index, creating an empty collection the first time
+     * @param stackIndex 1 based, as ImagePlus.getCurrentSlice()
+     * @return CurveCollection
+     */
+    public synchronized CurveCollection get(int stackIndex) {
+        CurveCollection collection = positions.get(stackIndex);
+        if (collection == null) {
+            collection = new CurveCollection(optionsStore, cache);
+            positions.put(stackIndex, collection);
+        }
+        return collection;
+    }
+
+    /**
+     * Returns the curves at a stack index, if there are any
+     * @param stackIndex
+     * @return CurveCollection | null
+     */
+    public synchronized CurveCollection find(int stackIndex) {
+        return positions.get(stackIndex);
+    }
+
+    /**
+     * Returns the curves of every position that has any, in stack order
+     * @return Map<Integer, CurveCollection> Keyed by stack index
+     */
+    public synchronized Map<Integer, CurveCollection> getPositions() {
+        TreeMap<Integer, CurveCollection> used = new TreeMap<Integer, CurveCollection>();
+        for (Map.Entry<Integer, CurveCollection> position : positions.entrySet()) {
+            if (position.getValue().size() > 0) {
+                used.put(position.getKey(), position.getValue());
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Records the stack index being shown
+     * @param stackIndex
+     * @return boolean True if it is not the one shown before
+     */
+    synchronized boolean setShownIndex(int stackIndex) {
+        boolean changed = (stackIndex != shownIndex);
+        shownIndex = stackIndex;
+        return changed;
+    }
+
+    /**
+     * Returns the channel, slice and frame of a stack index, each 1 based
+     * @param stackIndex
+     * @return int[]
+     */
+    public int[] getPosition(int stackIndex) {
+        int i = stackIndex - 1;
+        return new int[] {(i % nChannels) + 1, ((i / nChannels) % nSlices) + 1, (i / (nChannels * nSlices)) + 1};
+    }
+
+    /**
+     * Returns a name for a curve at a stack index, such as "Slice 12 Curve 2", or "C2 Z12 T1 Curve 2"
+     * for a hyperstack with more than one channel or frame
+     * @param stackIndex
+     * @param curve 0 based
+     * @return String
+     */
+    public String getCurveName(int stackIndex, int curve) {
+        int[] position = getPosition(stackIndex);
+        boolean hyperstack = (nChannels > 1 || nFrames > 1);
+        String place = hyperstack ? ("C" + position[0] + " Z" + position[1] + " T" + position[2]) : ("Slice " + position[1]);
+        return place + " Curve " + (curve + 1);
+    }
+
+    /**
+     * Removes the curves of every position
+     */
+    public synchronized void clear() {
+        for (CurveCollection collection : positions.values()) {
+            collection.clear();
+        }
+        positions.clear();
+    }
+}
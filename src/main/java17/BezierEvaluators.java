@@ -0,0 +1,27 @@
+/**
+ * Class: BezierEvaluators
+ * Picks the BezierEvaluator to use. This is the version for JDK 17 and later in the multi-release
+ * JAR. The Vector API one is used when the jdk.incubator.vector module has been added to the JVM
+ * (--add-modules jdk.incubator.vector) and the palaeocurve.vector system property is not false.
+ * Otherwise the scalar one is used. VectorBezierEvaluatorTest checks the two give the same results.
+ */
+class BezierEvaluators {
+    /**
+     * Returns the evaluator to use
+     * @return BezierEvaluator
+     */
+    static BezierEvaluator create() {
+        if ("false".equalsIgnoreCase(System.getProperty("palaeocurve.vector"))
+            || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return new BezierEvaluator();
+        }
+
+        try {
+            // Loaded by name, so this class can be loaded without the module
+            return (BezierEvaluator) Class.forName("VectorBezierEvaluator").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // The module is there but not a version this was built for
+            return new BezierEvaluator();
+        }
+    }
+}
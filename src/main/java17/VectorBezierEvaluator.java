@@ -0,0 +1,62 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Class: VectorBezierEvaluator
+ * Evaluates a segment several t values at a time with the JDK Vector API, using the widest vectors
+ * the CPU has. The operations are done in the same order as the scalar BezierEvaluator, without
+ * fused multiply-adds, so the results are the same. The t values left over at the end that do not
+ * fill a whole vector are done by the scalar code.
+ */
+class VectorBezierEvaluator extends BezierEvaluator {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    void evaluate(double xA, double xB, double xC, double xD, double yA, double yB, double yC, double yD,
+        double[] tValues, int from, int to, SampledCurve curve, int offset)
+    {
+        double xA3 = 3*xA, xB2 = 2*xB, xA6 = 6*xA;
+        double yA3 = 3*yA, yB2 = 2*yB, yA6 = 6*yA;
+
+        int end = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < end; i += SPECIES.length()) {
+            int k = offset + i - from;
+            DoubleVector t = DoubleVector.fromArray(SPECIES, tValues, i);
+            t.intoArray(curve.t, k);
+
+            t.mul(xA).add(xB).mul(t).add(xC).mul(t).add(xD).intoArray(curve.x, k);
+            t.mul(yA).add(yB).mul(t).add(yC).mul(t).add(yD).intoArray(curve.y, k);
+
+            DoubleVector dx = t.mul(xA3).add(xB2).mul(t).add(xC);
+            DoubleVector dy = t.mul(yA3).add(yB2).mul(t).add(yC);
+            DoubleVector ddx = t.mul(xA6).add(xB2);
+            DoubleVector ddy = t.mul(yA6).add(yB2);
+            dx.intoArray(curve.firstDerivativeX, k);
+            dy.intoArray(curve.firstDerivativeY, k);
+            ddx.intoArray(curve.secondDerivativeX, k);
+            ddy.intoArray(curve.secondDerivativeY, k);
+
+            DoubleVector speedSquared = dx.mul(dx).add(dy.mul(dy));
+            DoubleVector d = speedSquared.sqrt();
+            DoubleVector tangentX = dx.div(d);
+            DoubleVector tangentY = dy.div(d);
+            tangentX.intoArray(curve.tangentX, k);
+            tangentY.intoArray(curve.tangentY, k);
+            tangentY.neg().intoArray(curve.normalX, k);
+            tangentX.intoArray(curve.normalY, k);
+
+            // See BezierSegment.getKappa(), which is NaN where the first derivative is zero
+            DoubleVector kappa = dx.mul(ddy).sub(ddx.mul(dy)).div(speedSquared.mul(d));
+            VectorMask<Double> undefined = speedSquared.eq(0.0);
+            kappa.blend(Double.NaN, undefined).intoArray(curve.kappa, k);
+        }
+
+        super.evaluate(xA, xB, xC, xD, yA, yB, yC, yD, tValues, end, to, curve, offset + end - from);
+    }
+}
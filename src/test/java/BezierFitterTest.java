@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks fitted curves pass within the tolerance of every point of known outlines, with few segments
+ */
+public class BezierFitterTest {
+    // Samples taken along each segment to find the distance from a point to the curve
+    private static final int NUMBER_SAMPLES = 2000;
+
+    @Test
+    public void ellipseIsFittedWithinTolerance() {
+        int n = 400;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            double angle = (2 * Math.PI * i) / n;
+            x[i] = 300 + (200 * Math.cos(angle));
+            y[i] = 200 + (80 * Math.sin(angle));
+        }
+        for (double tolerance : new double[] {0.25, 1.0, 4.0}) {
+            BezierSegmentList bezierList = BezierFitter.fit(new OptionsStore(), x, y, n, true, tolerance);
+            checkFit(bezierList, x, y, n, tolerance);
+
+            // Closed, so the curve ends where it starts
+            double[] coordinates = bezierList.getSegmentCoordinates();
+            assertEquals(coordinates[0], coordinates[coordinates.length - 2], 0.0);
+            assertEquals(coordinates[1], coordinates[coordinates.length - 1], 0.0);
+            assertTrue("segments for tolerance " + tolerance, bezierList.getNumberSegments() <= 16);
+        }
+    }
+
+    @Test
+    public void openCurveWithCornerIsFittedWithinTolerance() {
+        // A wave, then a right angle, then a straight run
+        int n = 500;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (i < 300) {
+                x[i] = i;
+                y[i] = 50 * Math.sin(i / 30.0);
+            } else {
+                x[i] = 299;
+                y[i] = (50 * Math.sin(299 / 30.0)) + (i - 299);
+            }
+        }
+        double tolerance = 0.5;
+        BezierSegmentList bezierList = BezierFitter.fit(new OptionsStore(), x, y, n, false, tolerance);
+        checkFit(bezierList, x, y, n, tolerance);
+
+        // Open, so the curve runs from the first point to the last
+        double[] coordinates = bezierList.getSegmentCoordinates();
+        assertEquals(x[0], coordinates[0], 0.0);
+        assertEquals(y[0], coordinates[1], 0.0);
+        assertEquals(x[n - 1], coordinates[coordinates.length - 2], 0.0);
+        assertEquals(y[n - 1], coordinates[coordinates.length - 1], 0.0);
+        assertTrue(bezierList.getNumberSegments() <= 20);
+    }
+
+    /**
+     * Checks the segments join and every point is within the tolerance of the curve
+     * @param bezierList
+     * @param x
+     * @param y
+     * @param n
+     * @param tolerance
+     */
+    private static void checkFit(BezierSegmentList bezierList, double[] x, double[] y, int n, double tolerance) {
+        int numberSegments = bezierList.getNumberSegments();
+        assertTrue(numberSegments > 0);
+        for (int j = 1; j < numberSegments; j++) {
+            assertEquals(bezierList.getSegment(j - 1).getPointX(3), bezierList.getSegment(j).getPointX(0), 0.0);
+            assertEquals(bezierList.getSegment(j - 1).getPointY(3), bezierList.getSegment(j).getPointY(0), 0.0);
+        }
+
+        double[] curveX = new double[(numberSegments * NUMBER_SAMPLES) + 1];
+        double[] curveY = new double[curveX.length];
+        for (int j = 0; j < numberSegments; j++) {
+            BezierSegment bezier = bezierList.getSegment(j);
+            for (int i = 0; i <= NUMBER_SAMPLES; i++) {
+                double t = (double) i / NUMBER_SAMPLES;
+                curveX[(j * NUMBER_SAMPLES) + i] = bezier.getXCoordinate(t);
+                curveY[(j * NUMBER_SAMPLES) + i] = bezier.getYCoordinate(t);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            double closest = Double.MAX_VALUE;
+            for (int k = 0; k < curveX.length; k++) {
+                double dx = curveX[k] - x[i];
+                double dy = curveY[k] - y[i];
+                closest = Math.min(closest, (dx * dx) + (dy * dy));
+            }
+            // Allow for the distance between the samples of the curve
+            assertTrue("point " + i + " is " + Math.sqrt(closest) + " from the curve", Math.sqrt(closest) <= tolerance + 0.05);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks the cached power basis coefficients, evaluated with Horner's rule, and the single pass
+ * sampling kernel against the Bernstein form of the cubic bezier and its derivatives.
+ */
+public class BezierSegmentTest {
+    // Largest difference allowed, relative to the largest control point coordinate
+    private static final double TOLERANCE = 1e-12;
+    private static final int NUMBER_SEGMENTS = 200;
+
+    @Test
+    public void hornerMatchesBernstein() {
+        Random random = new Random(2);
+        OptionsStore options = new OptionsStore();
+        for (int s = 0; s < NUMBER_SEGMENTS; s++) {
+            double[] p = randomPoints(random);
+            BezierSegment bezier = newSegment(options, p);
+            for (int i = 0; i <= 100; i++) {
+                double t = i / 100.0;
+                check("x", p, bernstein(p, 0, t), bezier.getXCoordinate(t));
+                check("y", p, bernstein(p, 1, t), bezier.getYCoordinate(t));
+                check("x'", p, firstDerivative(p, 0, t), bezier.getFirstDeriativeXCoordinate(t));
+                check("y'", p, firstDerivative(p, 1, t), bezier.getFirstDeriativeYCoordinate(t));
+                check("x''", p, secondDerivative(p, 0, t), bezier.getSecondDeriativeXCoordinate(t));
+                check("y''", p, secondDerivative(p, 1, t), bezier.getSecondDeriativeYCoordinate(t));
+            }
+        }
+    }
+
+    @Test
+    public void sampleMatchesBernstein() {
+        Random random = new Random(3);
+        OptionsStore options = new OptionsStore();
+        int probeNumber = 67;
+        for (int s = 0; s < NUMBER_SEGMENTS; s++) {
+            double[] p = randomPoints(random);
+            BezierSegment bezier = newSegment(options, p);
+            SampledCurve curve = new SampledCurve();
+            curve.ensureCapacity(probeNumber);
+            bezier.sample(curve, 0, probeNumber);
+            for (int i = 0; i < probeNumber; i++) {
+                double t = curve.getT(i);
+                check("x", p, bernstein(p, 0, t), curve.getX(i));
+                check("y", p, bernstein(p, 1, t), curve.getY(i));
+                check("x'", p, firstDerivative(p, 0, t), curve.getFirstDerivativeX(i));
+                check("y'", p, firstDerivative(p, 1, t), curve.getFirstDerivativeY(i));
+                check("x''", p, secondDerivative(p, 0, t), curve.getSecondDerivativeX(i));
+                check("y''", p, secondDerivative(p, 1, t), curve.getSecondDerivativeY(i));
+            }
+        }
+    }
+
+    @Test
+    public void coefficientsFollowMovedPoints() {
+        OptionsStore options = new OptionsStore();
+        double[] p = {0, 0, 10, 20, 30, 20, 40, 0};
+        BezierSegment bezier = newSegment(options, p);
+        bezier.getXCoordinate(0.5);
+
+        bezier.getControlPoint(1).movePoint(-15, 35);
+        p[2] = -15;
+        p[3] = 35;
+        check("x", p, bernstein(p, 0, 0.3), bezier.getXCoordinate(0.3));
+        check("y", p, bernstein(p, 1, 0.3), bezier.getYCoordinate(0.3));
+        check("y'", p, firstDerivative(p, 1, 0.3), bezier.getFirstDeriativeYCoordinate(0.3));
+    }
+
+    @Test
+    public void kappaIsCurvatureOfParabola() {
+        // A parabola y = x^2 / (2r) as a degree elevated quadratic has a curvature of 1/r at its vertex,
+        // however long the handles are
+        OptionsStore options = new OptionsStore();
+        for (double radius : new double[] {5, 50, 2000}) {
+            for (double halfWidth : new double[] {1, 20, 400}) {
+                double h = (halfWidth * halfWidth) / (2 * radius);
+                double[] p = {-halfWidth, h, -halfWidth / 3, -h / 3, halfWidth / 3, -h / 3, halfWidth, h};
+                BezierSegment bezier = newSegment(options, p);
+                assertEquals(1.0 / radius, bezier.getCurveKappa(0.5), 1e-12 / radius);
+                assertEquals(1.0 / radius, bezier.getMaximumKappa(), 1e-9 / radius);
+                assertEquals(0.5, bezier.getMaximumKappaT(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void sharedMaximumIsReportedOnce() {
+        // Two halves of a parabola meeting at its vertex, where both segments have their maximum
+        Random random = new Random(6);
+        OptionsStore options = new OptionsStore();
+        for (int c = 0; c < 1000; c++) {
+            double radius = 5 + (random.nextDouble() * 200);
+            double halfWidth = 5 + (random.nextDouble() * 300);
+            double offsetX = (random.nextDouble() * 2000) - 500;
+            double offsetY = (random.nextDouble() * 2000) - 500;
+            double h = (halfWidth * halfWidth) / (2 * radius);
+            double[] left = {-halfWidth, h, -2 * halfWidth / 3, h / 3, -halfWidth / 3, 0, 0, 0};
+            double[] right = {0, 0, halfWidth / 3, 0, 2 * halfWidth / 3, h / 3, halfWidth, h};
+            double[] coordinates = new double[16];
+            for (int i = 0; i < 8; i++) {
+                double offset = (i % 2 == 0) ? offsetX : offsetY;
+                coordinates[i] = left[i] + offset;
+                coordinates[8 + i] = right[i] + offset;
+            }
+            BezierSegmentList bezierList = new BezierSegmentList(options);
+            bezierList.addSegments(coordinates);
+
+            double[][] points = bezierList.getMaximumCurvaturePoints(BezierSegmentList.MINIMUM_KAPPA);
+            assertEquals("maxima of curve " + c, 1, points.length);
+            assertEquals(offsetX, points[0][0], 1e-4);
+            assertEquals(offsetY, points[0][1], 1e-4);
+        }
+    }
+
+    @Test
+    public void sampledKappaMatchesCurvature() {
+        Random random = new Random(4);
+        OptionsStore options = new OptionsStore();
+        int probeNumber = 67;
+        for (int s = 0; s < NUMBER_SEGMENTS; s++) {
+            double[] p = randomPoints(random);
+            BezierSegment bezier = newSegment(options, p);
+            SampledCurve curve = new SampledCurve();
+            curve.ensureCapacity(probeNumber);
+            bezier.sample(curve, 0, probeNumber);
+            for (int i = 0; i < probeNumber; i++) {
+                double t = curve.getT(i);
+                double dx = firstDerivative(p, 0, t);
+                double dy = firstDerivative(p, 1, t);
+                double speed = Math.sqrt((dx * dx) + (dy * dy));
+                double expected = ((dx * secondDerivative(p, 1, t)) - (secondDerivative(p, 0, t) * dy)) / (speed * speed * speed);
+                assertEquals("kappa", expected, curve.getKappa(i), 1e-9 * Math.abs(expected));
+            }
+        }
+    }
+
+    @Test
+    public void translatedSamplesMatchResample() {
+        Random random = new Random(6);
+        for (boolean adaptive : new boolean[] {false, true}) {
+            OptionsStore options = new OptionsStore();
+            options.setAdaptiveSampling(adaptive);
+            for (int c = 0; c < 20; c++) {
+                double[] coordinates = new double[4 * SegmentStore.COORDINATES_PER_SEGMENT];
+                for (int j = 0; j < 4; j++) {
+                    System.arraycopy(randomPoints(random), 0, coordinates, j * SegmentStore.COORDINATES_PER_SEGMENT, 8);
+                }
+                BezierSegmentList bezierList = new BezierSegmentList(options);
+                bezierList.addSegments(coordinates);
+                CurveSnapshot before = bezierList.publish();
+
+                // The list the samples are taken from off the event thread, as in CurveEntry.analyse()
+                BezierSegmentList analysisList = new BezierSegmentList(options);
+                analysisList.setSegments(before);
+                SampledCurve moved = analysisList.sampleCurve(null);
+
+                for (int drag = 0; drag < 5; drag++) {
+                    bezierList.translate(random.nextGaussian() * 20, random.nextGaussian() * 20);
+                }
+                CurveSnapshot after = bezierList.publish();
+                double[] translation = after.getTranslationFrom(before);
+                analysisList.setTranslatedSegments(after, moved, translation[0], translation[1]);
+                moved = analysisList.sampleCurve(moved);
+                assertEquals("segments sampled again", 0, moved.getResampledCount());
+
+                BezierSegmentList fresh = new BezierSegmentList(options);
+                fresh.addSegments(after.getCoordinates());
+                SampledCurve expected = fresh.sampleCurve(null);
+                assertEquals(expected.getSampleCount(), moved.getSampleCount());
+                for (int i = 0; i < expected.getSampleCount(); i++) {
+                    assertEquals("t", expected.getT(i), moved.getT(i), 0.0);
+                    assertEquals("x", expected.getX(i), moved.getX(i), 1e-9);
+                    assertEquals("y", expected.getY(i), moved.getY(i), 1e-9);
+                    assertEquals("tangent x", expected.getTangentX(i), moved.getTangentX(i), 1e-9);
+                    assertEquals("tangent y", expected.getTangentY(i), moved.getTangentY(i), 1e-9);
+                    assertEquals("kappa", expected.getKappa(i), moved.getKappa(i), 1e-9 * Math.max(1.0, Math.abs(expected.getKappa(i))));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a segment through eight packed coordinates
+     * @param options
+     * @param p x0, y0, x1, y1, x2, y2, x3, y3
+     * @return BezierSegment
+     */
+    static BezierSegment newSegment(OptionsStore options, double[] p) {
+        return new BezierSegment(options, p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7]);
+    }
+
+    /**
+     * Returns control points spread over an image sized area
+     * @param random
+     * @return double[]
+     */
+    static double[] randomPoints(Random random) {
+        double[] p = new double[8];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = (random.nextDouble() * 2000.0) - 500.0;
+        }
+        return p;
+    }
+
+    private static double bernstein(double[] p, int axis, double t) {
+        double u = 1.0 - t;
+        return (u * u * u * p[axis]) + (3 * u * u * t * p[2 + axis]) + (3 * u * t * t * p[4 + axis]) + (t * t * t * p[6 + axis]);
+    }
+
+    private static double firstDerivative(double[] p, int axis, double t) {
+        double u = 1.0 - t;
+        return (3 * u * u * (p[2 + axis] - p[axis])) + (6 * u * t * (p[4 + axis] - p[2 + axis])) + (3 * t * t * (p[6 + axis] - p[4 + axis]));
+    }
+
+    private static double secondDerivative(double[] p, int axis, double t) {
+        double u = 1.0 - t;
+        return (6 * u * (p[4 + axis] - (2 * p[2 + axis]) + p[axis])) + (6 * t * (p[6 + axis] - (2 * p[4 + axis]) + p[2 + axis]));
+    }
+
+    private static void check(String name, double[] p, double expected, double actual) {
+        double scale = 1.0;
+        for (double coordinate : p) {
+            scale = Math.max(scale, Math.abs(coordinate));
+        }
+        assertEquals(name, expected, actual, TOLERANCE * scale);
+    }
+}
@@ -0,0 +1,98 @@
+import static org.junit.Assert.assertEquals;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a waiting request is only dropped for a later request or a cancel of the same key
+ */
+public class CurveComputeSchedulerTest {
+    private CurveComputeScheduler scheduler;
+    private List<String> published;
+
+    @Before
+    public void createScheduler() {
+        scheduler = new CurveComputeScheduler();
+        published = new ArrayList<String>();
+    }
+
+    @After
+    public void shutdownScheduler() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void laterRequestReplacesOnlySameKey() throws Exception {
+        Object imageA = new Object();
+        Object imageB = new Object();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Hold the compute thread, so the next requests wait
+        scheduler.submit(imageA, () -> {
+            running.countDown();
+            release.await();
+            return "A1";
+        }, published::add);
+        running.await();
+
+        scheduler.submit(imageA, () -> "A2", published::add);
+        scheduler.submit(imageB, () -> "B1", published::add);
+        scheduler.submit(imageA, () -> "A3", published::add);
+        release.countDown();
+
+        assertEquals("[A1, A3, B1]", waitForPublished(3));
+    }
+
+    @Test
+    public void cancelOnlyDropsItsKey() throws Exception {
+        Object imageA = new Object();
+        Object imageB = new Object();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.submit(new Object(), () -> {
+            running.countDown();
+            release.await();
+            return "hold";
+        }, result -> { });
+        running.await();
+
+        scheduler.submit(imageA, () -> "A", published::add);
+        scheduler.submit(imageB, () -> "B", published::add);
+        scheduler.cancel(imageA);
+        release.countDown();
+
+        assertEquals("[B]", waitForPublished(1));
+    }
+
+    /**
+     * Waits for results to be published on the event thread, and for anything else already queued
+     * @param count
+     * @return String The results published, sorted
+     * @throws Exception
+     */
+    private String waitForPublished(int count) throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < end) {
+            EventQueue.invokeAndWait(() -> { });
+            // Results are added on the event thread, which has finished with them after invokeAndWait
+            if (published.size() >= count) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        // Let anything that should not have been published show up
+        Thread.sleep(50);
+        EventQueue.invokeAndWait(() -> { });
+        List<String> sorted = new ArrayList<String>(published);
+        Collections.sort(sorted);
+        return sorted.toString();
+    }
+}
@@ -0,0 +1,61 @@
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks a curve is found near a point when, and only when, the point is within the tolerance of it
+ */
+public class CurveEntryTest {
+    private static final double TOLERANCE = 3.0;
+    // Samples taken along each segment for the distance to the curve itself
+    private static final int NUMBER_SAMPLES = 2000;
+
+    @Test
+    public void isNearMatchesDistanceToCurve() {
+        Random random = new Random(8);
+        for (boolean adaptive : new boolean[] {false, true}) {
+            OptionsStore options = new OptionsStore();
+            options.setAdaptiveSampling(adaptive);
+            BezierSegmentList bezierList = new BezierSegmentList(options);
+            bezierList.addSegments(new double[] {50, 50, 80, 150, 160, 20, 200, 100, 200, 100, 240, 180, 300, 40, 350, 120});
+            CurveEntry curve = new CurveEntry(options, bezierList);
+            assertFalse(curve.isNear(200, 100, TOLERANCE));
+            curve.draw(curve.analyse(bezierList.publish(), 0));
+
+            for (int i = 0; i < 5000; i++) {
+                double x = 30 + (random.nextDouble() * 340);
+                double y = 30 + (random.nextDouble() * 140);
+                double distance = getDistance(bezierList, x, y);
+                // Close to the edge the line through the samples can be either side of the curve
+                if (distance < TOLERANCE - 0.05) {
+                    assertTrue(x + ", " + y + " is " + distance + " from the curve", curve.isNear(x, y, TOLERANCE));
+                } else if (distance > TOLERANCE + 0.05) {
+                    assertFalse(x + ", " + y + " is " + distance + " from the curve", curve.isNear(x, y, TOLERANCE));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the distance from a point to the curve, to within the spacing of the samples
+     * @param bezierList
+     * @param x
+     * @param y
+     * @return double
+     */
+    private static double getDistance(BezierSegmentList bezierList, double x, double y) {
+        double closest = Double.MAX_VALUE;
+        for (int j = 0; j < bezierList.getNumberSegments(); j++) {
+            BezierSegment bezier = bezierList.getSegment(j);
+            for (int i = 0; i <= NUMBER_SAMPLES; i++) {
+                double t = (double) i / NUMBER_SAMPLES;
+                double dx = bezier.getXCoordinate(t) - x;
+                double dy = bezier.getYCoordinate(t) - y;
+                closest = Math.min(closest, (dx * dx) + (dy * dy));
+            }
+        }
+        return Math.sqrt(closest);
+    }
+}
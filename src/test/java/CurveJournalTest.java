@@ -0,0 +1,279 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks undo and redo of every kind of edit the journal records give back exactly the curves there
+ * were, and that the journal lets go of curves once no step that can be undone or redone refers to them
+ */
+public class CurveJournalTest {
+    private OptionsStore options;
+    private CurveCollection collection;
+    private CurveJournal journal;
+
+    @Before
+    public void createCollection() {
+        options = new OptionsStore();
+        collection = new CurveCollection(options);
+        journal = collection.getJournal();
+    }
+
+    @Test
+    public void randomEditsUndoAndRedoExactly() {
+        Random random = new Random(9);
+        List<String> history = new ArrayList<String>();
+        history.add(getState());
+
+        for (int step = 0; step < 400; step++) {
+            CurveEntry active = collection.getActive();
+            if (active == null) {
+                active = collection.addNew();
+                journal.curveAdded(active);
+                active.getSegmentList().addSegments(randomCurve(random, 1 + random.nextInt(4)));
+                journal.commit();
+                history.add(getState());
+                continue;
+            }
+
+            BezierSegmentList bezierList = active.getSegmentList();
+            int numberSegments = bezierList.getNumberSegments();
+            BezierSegment bezier = bezierList.getSegment(random.nextInt(numberSegments));
+            int edit = random.nextInt(10);
+            if (edit == 9) {
+                // Alt-click removal
+                journal.curveRemoved(active);
+                collection.remove(active);
+                history.add(getState());
+                continue;
+            }
+
+            journal.begin(active);
+            if (edit < 4) {
+                BezierControlPoint point = bezier.getControlPoint(random.nextInt(4));
+                point.setPoint(point.getX() + (random.nextGaussian() * 5), point.getY() + (random.nextGaussian() * 5));
+            } else if (edit < 6) {
+                bezierList.translate(random.nextInt(21) - 10, random.nextInt(21) - 10);
+                bezierList.translate(random.nextGaussian(), random.nextGaussian());
+            } else if (edit < 8) {
+                bezierList.clonePoint(bezier.point3);
+            } else if (numberSegments > 1) {
+                bezierList.removePoint(bezier.point3);
+            }
+            journal.commit();
+            String state = getState();
+            if (!state.equals(history.get(history.size() - 1))) {
+                history.add(state);
+            }
+        }
+
+        assertEquals(history.size() - 1, journal.getNumberSteps());
+        for (int i = history.size() - 2; i >= 0; i--) {
+            journal.undo();
+            assertEquals("undo to step " + i, history.get(i), getState());
+        }
+        assertNull(journal.undo());
+        for (int i = 1; i < history.size(); i++) {
+            journal.redo();
+            assertEquals("redo to step " + i, history.get(i), getState());
+        }
+        assertNull(journal.redo());
+    }
+
+    @Test
+    public void movedPointIsUndone() {
+        CurveEntry curve = addCurve();
+        journal.begin(curve);
+        curve.getSegmentList().getSegment(0).getControlPoint(2).setPoint(35, 45);
+        journal.commit();
+
+        journal.undo();
+        assertEquals("[0.0, 0.0, 10.0, 20.0, 30.0, 20.0, 40.0, 0.0]", Arrays.toString(curve.getSegmentList().getSegmentCoordinates()));
+        journal.redo();
+        assertEquals(35.0, curve.getSegmentList().getSegment(0).getPointX(2), 0.0);
+        assertEquals(45.0, curve.getSegmentList().getSegment(0).getPointY(2), 0.0);
+    }
+
+    @Test
+    public void translationIsRecordedAsOneOffset() {
+        CurveEntry curve = collection.add(new BezierSegmentList(options));
+        double[] coordinates = randomCurve(new Random(3), 50);
+        curve.getSegmentList().addSegments(coordinates);
+        journal.curveAdded(curve);
+        journal.commit();
+        long memory = journal.getMemoryUsed();
+
+        journal.begin(curve);
+        curve.getSegmentList().translate(8, -4);
+        curve.getSegmentList().translate(-3, 1);
+        journal.commit();
+        // Recording every point moved would need room for 800 coordinates
+        assertEquals(memory, journal.getMemoryUsed());
+
+        journal.undo();
+        assertEquals(Arrays.toString(coordinates), Arrays.toString(curve.getSegmentList().getSegmentCoordinates()));
+        journal.redo();
+        assertEquals(coordinates[0] + 5, curve.getSegmentList().getSegment(0).getPointX(0), 0.0);
+        assertEquals(coordinates[1] - 3, curve.getSegmentList().getSegment(0).getPointY(0), 0.0);
+    }
+
+    @Test
+    public void insertedAndRemovedSegmentsAreUndone() {
+        CurveEntry curve = collection.add(new BezierSegmentList(options));
+        BezierSegmentList bezierList = curve.getSegmentList();
+        bezierList.addSegments(randomCurve(new Random(4), 5));
+        journal.curveAdded(curve);
+        journal.commit();
+        String start = getState();
+
+        // A segment added in the middle, so there is a prefix and a suffix left alone
+        journal.begin(curve);
+        bezierList.clonePoint(bezierList.getSegment(2).point3);
+        journal.commit();
+        assertEquals(6, bezierList.getNumberSegments());
+        String inserted = getState();
+
+        journal.begin(curve);
+        bezierList.removePoint(bezierList.getSegment(1).point3);
+        journal.commit();
+        assertEquals(5, bezierList.getNumberSegments());
+        String removed = getState();
+
+        journal.undo();
+        assertEquals(inserted, getState());
+        journal.undo();
+        assertEquals(start, getState());
+        journal.redo();
+        journal.redo();
+        assertEquals(removed, getState());
+    }
+
+    @Test
+    public void placingACurveIsOneStep() {
+        CurveEntry curve = collection.addNew();
+        journal.curveAdded(curve);
+        BezierSegmentList bezierList = curve.getSegmentList();
+        double[][] clicks = {{10, 10}, {20, 5}, {60, 10}, {50, 30}};
+        for (double[] click : clicks) {
+            journal.begin(curve);
+            bezierList.setNewBezierControlPoint(click[0], click[1]);
+            journal.commit();
+        }
+        assertEquals(1, bezierList.getNumberSegments());
+        assertEquals(1, journal.getNumberSteps());
+
+        assertSame(curve, journal.undo());
+        assertEquals(-1, collection.indexOf(curve));
+        assertSame(curve, journal.redo());
+        assertEquals(0, collection.indexOf(curve));
+        assertEquals(1, bezierList.getNumberSegments());
+    }
+
+    @Test
+    public void removedCurveGoesBackInItsPlace() {
+        CurveEntry first = addCurve();
+        CurveEntry middle = addCurve();
+        CurveEntry last = addCurve();
+
+        journal.curveRemoved(middle);
+        collection.remove(middle);
+        assertEquals(1, collection.indexOf(last));
+
+        assertSame(middle, journal.undo());
+        assertEquals(1, collection.indexOf(middle));
+        assertSame(middle, collection.getActive());
+        journal.redo();
+        assertEquals(-1, collection.indexOf(middle));
+        assertEquals(0, collection.indexOf(first));
+    }
+
+    @Test
+    public void trimmedStepsReleaseRemovedCurves() {
+        CurveEntry last = null;
+        for (int i = 0; i < CurveJournal.MAXIMUM_STEPS * 2; i++) {
+            last = addCurve();
+            journal.curveRemoved(last);
+            collection.remove(last);
+        }
+
+        // Two steps for each curve, so only the curves of the steps still held are kept
+        assertTrue(journal.getNumberSteps() <= CurveJournal.MAXIMUM_STEPS);
+        assertTrue(journal.getNumberCurves() <= (journal.getNumberSteps() / 2) + 1);
+
+        // The ids of the curves kept still lead to the right curves
+        assertSame(last, journal.undo());
+        assertEquals(0, collection.indexOf(last));
+        journal.undo();
+        assertEquals(-1, collection.indexOf(last));
+    }
+
+    @Test
+    public void discardedRedoStepsReleaseCurves() {
+        CurveEntry kept = addCurve();
+        CurveEntry undone = addCurve();
+        assertEquals(2, journal.getNumberCurves());
+
+        journal.undo();
+        assertEquals(-1, collection.indexOf(undone));
+
+        // A new edit means the added curve can no longer be redone
+        journal.begin(kept);
+        kept.getSegmentList().setControlPoint(0, 1, 50, 60);
+        journal.commit();
+        assertEquals(1, journal.getNumberCurves());
+
+        assertSame(kept, journal.undo());
+        assertEquals(10.0, kept.getSegmentList().getSegment(0).getPointX(1), 0.0);
+    }
+
+    /**
+     * Returns the coordinates of every curve in the collection, in order
+     * @return String
+     */
+    private String getState() {
+        StringBuilder state = new StringBuilder();
+        for (CurveEntry curve : collection.getCurves()) {
+            state.append(Arrays.toString(curve.getSegmentList().getSegmentCoordinates())).append('|');
+        }
+        return state.toString();
+    }
+
+    /**
+     * Returns the coordinates of a curve of joined segments, on whole and half pixels
+     * @param random
+     * @param numberSegments
+     * @return double[]
+     */
+    private static double[] randomCurve(Random random, int numberSegments) {
+        double[] coordinates = new double[numberSegments * SegmentStore.COORDINATES_PER_SEGMENT];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = random.nextInt(1000) / 2.0;
+        }
+        for (int j = 1; j < numberSegments; j++) {
+            int base = j * SegmentStore.COORDINATES_PER_SEGMENT;
+            coordinates[base] = coordinates[base - 2];
+            coordinates[base + 1] = coordinates[base - 1];
+        }
+        return coordinates;
+    }
+
+    /**
+     * Adds a one segment curve to the collection as a step
+     * @return CurveEntry
+     */
+    private CurveEntry addCurve() {
+        BezierSegmentList bezierList = new BezierSegmentList(options);
+        bezierList.addSegments(new double[] {0, 0, 10, 20, 30, 20, 40, 0});
+        CurveEntry curve = collection.add(bezierList);
+        journal.curveAdded(curve);
+        journal.commit();
+        return curve;
+    }
+}
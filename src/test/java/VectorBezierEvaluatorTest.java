@@ -0,0 +1,94 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the Vector API evaluator from the JDK 17 layer of the multi-release JAR gives the same
+ * results as the scalar one. Skipped when the layer or the jdk.incubator.vector module is not
+ * there, which is always the case below JDK 17 (see the vector profile in the pom).
+ */
+public class VectorBezierEvaluatorTest {
+    // Largest difference allowed, relative to the size of the value where that is more than 1
+    private static final double TOLERANCE = 1e-12;
+    // Enough t values for a part vector at the end on any vector width
+    private static final int NUMBER_T_VALUES = 67;
+
+    private BezierEvaluator vector;
+
+    @Before
+    public void createVectorEvaluator() {
+        try {
+            vector = (BezierEvaluator) Class.forName("VectorBezierEvaluator").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            vector = null;
+        }
+    }
+
+    @Test
+    public void matchesScalarAtCusp() {
+        assumeTrue("Vector API evaluator not available", vector != null);
+        // x(t) = y(t) = (2t - 1)^3, where the first derivative is zero at t = 0.5
+        compare(new double[] {8, -12, 6, -1, 8, -12, 6, -1});
+    }
+
+    @Test
+    public void matchesScalarOnRandomSegments() {
+        assumeTrue("Vector API evaluator not available", vector != null);
+        Random random = new Random(5);
+        for (int s = 0; s < 200; s++) {
+            double[] p = BezierSegmentTest.randomPoints(random);
+            compare(getCoefficients(p));
+        }
+    }
+
+    /**
+     * Evaluates a segment with both evaluators and checks every channel
+     * @param c xA, xB, xC, xD, yA, yB, yC, yD
+     */
+    private void compare(double[] c) {
+        double[] tValues = new double[NUMBER_T_VALUES];
+        for (int i = 0; i < tValues.length; i++) {
+            tValues[i] = (double) i / (tValues.length - 1);
+        }
+        SampledCurve a = new SampledCurve();
+        SampledCurve b = new SampledCurve();
+        a.ensureCapacity(tValues.length);
+        b.ensureCapacity(tValues.length);
+        new BezierEvaluator().evaluate(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], tValues, 0, tValues.length, a, 0);
+        vector.evaluate(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], tValues, 0, tValues.length, b, 0);
+
+        String[] names = {"t", "x", "y", "x'", "y'", "x''", "y''", "tangent x", "tangent y", "normal x", "normal y", "kappa"};
+        double[][] channelsA = {a.t, a.x, a.y, a.firstDerivativeX, a.firstDerivativeY, a.secondDerivativeX,
+            a.secondDerivativeY, a.tangentX, a.tangentY, a.normalX, a.normalY, a.kappa};
+        double[][] channelsB = {b.t, b.x, b.y, b.firstDerivativeX, b.firstDerivativeY, b.secondDerivativeX,
+            b.secondDerivativeY, b.tangentX, b.tangentY, b.normalX, b.normalY, b.kappa};
+        for (int channel = 0; channel < channelsA.length; channel++) {
+            for (int i = 0; i < tValues.length; i++) {
+                double expected = channelsA[channel][i];
+                String name = names[channel] + " at t = " + tValues[i];
+                // assertEquals treats two NaNs as equal, and a NaN and a number as different
+                assertEquals(name, expected, channelsB[channel][i], TOLERANCE * Math.max(1.0, Math.abs(expected)));
+            }
+        }
+    }
+
+    /**
+     * Returns the power basis coefficients of a segment through eight packed coordinates
+     * @param p x0, y0, x1, y1, x2, y2, x3, y3
+     * @return double[] xA, xB, xC, xD, yA, yB, yC, yD
+     */
+    private static double[] getCoefficients(double[] p) {
+        double[] c = new double[8];
+        for (int axis = 0; axis < 2; axis++) {
+            double p0 = p[axis], p1 = p[2 + axis], p2 = p[4 + axis], p3 = p[6 + axis];
+            c[4 * axis] = -p0 + (3 * p1) - (3 * p2) + p3;
+            c[(4 * axis) + 1] = (3 * p0) - (6 * p1) + (3 * p2);
+            c[(4 * axis) + 2] = (3 * p1) - (3 * p0);
+            c[(4 * axis) + 3] = p0;
+        }
+        return c;
+    }
+}